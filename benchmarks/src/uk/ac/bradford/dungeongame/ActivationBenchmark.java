@@ -0,0 +1,80 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Benchmark of a whole turn on a big level against the number of monsters on
+ * it. The player stands still and can't die, so the monsters near it keep
+ * attacking while the others stay where they are. With activation only the
+ * monsters near the player move and the time of a turn should hardly change
+ * with the population; without it every monster moves every turn.
+ * @author sberk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ActivationBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int monsters;
+
+    @Param({"true", "false"})
+    public boolean activation;
+
+    private GameEngine engine;
+
+    @Setup(Level.Trial)
+    public void createLevel() {
+        EngineFixture fixture = new EngineFixture("400x400", 10, 0.05, 123);
+        engine = fixture.engine;
+        engine.activation.setEnabled(activation);
+        engine.immortality = true;
+        engine.immortalityTurns = Integer.MAX_VALUE;
+        // spawnMonsters is slow for thousands of monsters, so they are placed here
+        TileType[][] tiles = engine.tiles;
+        boolean[][] taken = new boolean[tiles.length][tiles[0].length];
+        taken[engine.player.getX()][engine.player.getY()] = true;
+        Random random = new Random(7);
+        Entity[] placed = new Entity[monsters];
+        for (int i = 0; i < monsters; i++) {
+            int x;
+            int y;
+            do {
+                x = random.nextInt(tiles.length);
+                y = random.nextInt(tiles[0].length);
+            } while (tiles[x][y] != TileType.FLOOR || taken[x][y]);
+            taken[x][y] = true;
+            placed[i] = new Entity(engine.monstersMaxHealth, engine.monstersDmg, 0.1, x, y, Entity.EntityType.MONSTER);
+        }
+        engine.monsters = placed;
+        for (int i = 0; i < 100; i++) {
+            engine.doTurn(); // lets the monsters near the player gather around it
+        }
+    }
+
+    /**
+     * One turn with the player standing still
+     */
+    @Benchmark
+    public int turn() {
+        engine.doTurn();
+        return engine.activation.getActiveCount();
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the GameEngine hot paths on seeded levels. Every benchmark is
+ * run for each combination of map size, number of monsters and wall density.
+ * Benchmarks that change the level (spawning, moving, turns) restore the level
+ * before every call, outside of the measured time.
+ * @author sberk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    /**
+     * Parameters shared by all benchmarks. Each state below builds its own
+     * fixture from them.
+     */
+    @State(Scope.Thread)
+    public abstract static class Params {
+
+        @Param({"25x18", "100x100", "400x400"})
+        public String mapSize;
+
+        @Param({"10", "40"})
+        public int monsterCount;
+
+        @Param({"0.05", "0.25"})
+        public double wallChance;
+
+        @Param({"123"})
+        public long seed;
+
+        EngineFixture fixture;
+
+        @Setup(Level.Trial)
+        public void createFixture() {
+            fixture = new EngineFixture(mapSize, monsterCount, wallChance, seed);
+        }
+    }
+
+    /**
+     * State for benchmarks which only read the level
+     */
+    @State(Scope.Thread)
+    public static class Settled extends Params {
+
+        @Setup(Level.Iteration)
+        public void restore() {
+            fixture.restore();
+        }
+    }
+
+    /**
+     * State for benchmarks which change the level, restored before every call
+     */
+    @State(Scope.Thread)
+    public static class Fresh extends Params {
+
+        @Setup(Level.Invocation)
+        public void restore() {
+            fixture.restore();
+        }
+    }
+
+    @Benchmark
+    public GameEngine.TileType[][] generateLevel(Settled p) {
+        return p.fixture.engine.generateLevel();
+    }
+
+    @Benchmark
+    public ArrayList<Point> getSpawns(Settled p) {
+        return p.fixture.engine.getSpawns();
+    }
+
+    @Benchmark
+    public Entity[] spawnMonsters(Fresh p) {
+        return p.fixture.engine.spawnMonsters();
+    }
+
+    @Benchmark
+    public Entity[] moveMonsters(Fresh p) {
+        p.fixture.engine.moveMonsters();
+        return p.fixture.engine.monsters;
+    }
+
+    @Benchmark
+    public Entity[] doTurn(Fresh p) {
+        p.fixture.engine.doTurn();
+        return p.fixture.engine.monsters;
+    }
+
+    @Benchmark
+    public PlayerUtilities movePlayer(Fresh p) {
+        GameEngine engine = p.fixture.engine;
+        engine.movePlayerSides(1);
+        engine.movePlayerUD(1);
+        engine.movePlayerSides(-1);
+        engine.movePlayerUD(-1);
+        return engine.player;
+    }
+}
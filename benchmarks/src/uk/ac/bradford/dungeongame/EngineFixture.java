@@ -0,0 +1,95 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+/**
+ * The EngineFixture class builds a seeded GameEngine without a window for the
+ * benchmarks and can put it back into the state it had right after creation,
+ * so benchmarks that change the level always start from the same situation.
+ * @author sberk
+ */
+class EngineFixture {
+
+    final GameEngine engine;
+    final int width;
+    final int height;
+    final int monsterCount;
+    final double wallChance;
+
+    private final GameEngine.TileType[][] startTiles;
+    private final ArrayList<Point> startSpawns;
+    private final int[][] startMonsters;
+    private final int playerX;
+    private final int playerY;
+
+    /**
+     * Creates a level with the given parameters and places a Knight in it
+     * @param mapSize size of the level written as WIDTHxHEIGHT, e.g. 25x18
+     * @param monsterCount number of monsters on the level
+     * @param wallChance chance of a tile being a wall
+     * @param seed seed of the engine's random number generator
+     */
+    EngineFixture(String mapSize, int monsterCount, double wallChance, long seed) {
+        String[] size = mapSize.split("x");
+        this.width = Integer.parseInt(size[0]);
+        this.height = Integer.parseInt(size[1]);
+        this.monsterCount = monsterCount;
+        this.wallChance = wallChance;
+        engine = new GameEngine(null, width, height, new GameRandom(seed));
+        applyValues();
+        engine.startGame(); // generates the level again with the fixture's values
+        engine.player = engine.spawnPlayer();
+        startTiles = copy(engine.tiles);
+        startSpawns = new ArrayList<Point>(engine.spawns);
+        startMonsters = new int[engine.monsters.length][];
+        for (int i = 0; i < startMonsters.length; i++) {
+            startMonsters[i] = new int[]{engine.monsters[i].getX(), engine.monsters[i].getY()};
+        }
+        playerX = engine.player.getX();
+        playerY = engine.player.getY();
+    }
+
+    /**
+     * Puts the engine back into the state it had after the fixture was created:
+     * tiles, spawn points, monsters, the player and the game values.
+     */
+    void restore() {
+        applyValues();
+        for (int i = 0; i < width; i++) {
+            System.arraycopy(startTiles[i], 0, engine.tiles[i], 0, height);
+        }
+        engine.fov.clear(); // the tiles were changed behind the engine's back
+        engine.blocked.clear();
+        engine.spawns = new ArrayList<Point>(startSpawns);
+        Entity[] monsters = new Entity[startMonsters.length];
+        for (int i = 0; i < monsters.length; i++) {
+            monsters[i] = new Entity(engine.monstersMaxHealth, engine.monstersDmg, 0.1,
+                    startMonsters[i][0], startMonsters[i][1], Entity.EntityType.MONSTER);
+        }
+        engine.monsters = monsters;
+        engine.player = new PlayerUtilities(100, 100, 5, 0.1, 0.1, 3, playerX, playerY, Entity.EntityType.PLAYER);
+    }
+
+    /**
+     * Sets the game values the level generation and monster spawning depend
+     * on. spawnMonsters creates depth + 2 monsters.
+     */
+    private void applyValues() {
+        engine.wallChance = wallChance;
+        engine.depth = monsterCount - 2;
+        engine.playerClass = 1;
+        engine.monstersMaxHealth = 9 + engine.depth;
+        engine.monstersDmg = engine.depth;
+        engine.immortality = false;
+        engine.oneHitKill = false;
+    }
+
+    private static GameEngine.TileType[][] copy(GameEngine.TileType[][] tiles) {
+        GameEngine.TileType[][] copy = new GameEngine.TileType[tiles.length][];
+        for (int i = 0; i < tiles.length; i++) {
+            copy[i] = tiles[i].clone();
+        }
+        return copy;
+    }
+}
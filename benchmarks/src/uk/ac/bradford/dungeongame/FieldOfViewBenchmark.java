@@ -0,0 +1,93 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Benchmarks of the field of view update done after every turn. Walking
+ * around a small area hits the cache, jumping to random floor tiles of a big
+ * map misses it and scans the four quadrants every time. Both should cost the
+ * same on every map size, as only tiles within the view radius are scanned.
+ * @author sberk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FieldOfViewBenchmark {
+
+    @Param({"25x18", "100x100", "1000x1000"})
+    public String mapSize;
+
+    @Param({"0.05", "0.25"})
+    public double wallChance;
+
+    private TileType[][] tiles;
+    private FieldOfView fov;
+    private int[] walk;
+    private int[] jumps;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createLevel() {
+        EngineFixture fixture = new EngineFixture(mapSize, 10, wallChance, 123);
+        tiles = fixture.engine.tiles;
+        fov = new FieldOfView(GameEngine.VIEW_RADIUS);
+        // a loop around the player's spawn, four tiles each way
+        int px = fixture.engine.player.getX();
+        int py = fixture.engine.player.getY();
+        walk = new int[32];
+        for (int i = 0; i < walk.length; i++) {
+            int step = i % 16;
+            int dx = step < 4 ? step : step < 8 ? 4 : step < 12 ? 12 - step : 0;
+            int dy = step < 4 ? 0 : step < 8 ? step - 4 : step < 12 ? 4 : 16 - step;
+            walk[i] = Math.floorMod(px + dx, tiles.length) * 65536 + Math.floorMod(py + dy, tiles[0].length);
+        }
+        Random random = new Random(7);
+        jumps = new int[4096];
+        for (int i = 0; i < jumps.length; i++) {
+            int x;
+            int y;
+            do {
+                x = random.nextInt(tiles.length);
+                y = random.nextInt(tiles[0].length);
+            } while (tiles[x][y] == TileType.WALL);
+            jumps[i] = x * 65536 + y;
+        }
+    }
+
+    /**
+     * Walking around a small area, answered from the cache
+     */
+    @Benchmark
+    public boolean walk() {
+        int p = walk[next++ & (walk.length - 1)];
+        fov.update(tiles, p >>> 16, p & 0xFFFF);
+        return fov.isVisible(p >>> 16, p & 0xFFFF);
+    }
+
+    /**
+     * Jumping to random floor tiles, mostly worked out from scratch on big maps
+     */
+    @Benchmark
+    public boolean jump() {
+        int p = jumps[next++ & (jumps.length - 1)];
+        fov.update(tiles, p >>> 16, p & 0xFFFF);
+        return fov.isVisible(p >>> 16, p & 0xFFFF);
+    }
+}
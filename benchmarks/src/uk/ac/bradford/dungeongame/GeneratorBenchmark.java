@@ -0,0 +1,63 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Benchmark of the level generators in levels per second at several map
+ * sizes, for choosing a generator per performance tier. Run it with the GC
+ * profiler (the jmhGenerators task) to also get the bytes allocated per level.
+ * @author sberk
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratorBenchmark {
+
+    @Param({"classic", "bsp", "caves"})
+    public String generator;
+
+    @Param({"25x18", "100x100", "400x400", "1000x1000"})
+    public String mapSize;
+
+    @Param({"0.05", "0.25"})
+    public double wallChance;
+
+    private LevelGenerator levelGenerator;
+    private int width;
+    private int height;
+    private GameRandom rng;
+    private final Balance balance = new Balance();
+
+    @Setup(Level.Trial)
+    public void createGenerator() {
+        levelGenerator = LevelGenerator.forName(generator);
+        String[] size = mapSize.split("x");
+        width = Integer.parseInt(size[0]);
+        height = Integer.parseInt(size[1]);
+        rng = new GameRandom(123);
+    }
+
+    /**
+     * One level laid out by the generator, without stairs and chest
+     */
+    @Benchmark
+    public TileType[][] generate() {
+        return levelGenerator.generate(width, height, rng, wallChance, balance);
+    }
+}
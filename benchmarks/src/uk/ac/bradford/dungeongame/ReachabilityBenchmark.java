@@ -0,0 +1,99 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * Benchmark of finding every tile the player can walk to from its spawn,
+ * going over the edges of the map as the player does. The flood over the bit
+ * sets of BlockedCells is compared with a breadth first search over the
+ * TileType array, which tests the tile types of every neighbour.
+ * @author sberk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReachabilityBenchmark {
+
+    @Param({"25x18", "100x100", "1000x1000"})
+    public String mapSize;
+
+    @Param({"0.05", "0.25"})
+    public double wallChance;
+
+    private TileType[][] tiles;
+    private BlockedCells blocked;
+    private int x;
+    private int y;
+    private int[] queue;
+    private boolean[] reached;
+
+    @Setup(Level.Trial)
+    public void createLevel() {
+        EngineFixture fixture = new EngineFixture(mapSize, 10, wallChance, 123);
+        tiles = fixture.engine.tiles;
+        blocked = new BlockedCells();
+        blocked.sync(tiles);
+        x = fixture.engine.player.getX();
+        y = fixture.engine.player.getY();
+        queue = new int[fixture.width * fixture.height];
+        reached = new boolean[queue.length];
+    }
+
+    /**
+     * Flood over the bit sets, 64 tiles at a time
+     */
+    @Benchmark
+    public int bitSets() {
+        return blocked.countReachable(x, y, true);
+    }
+
+    /**
+     * Breadth first search over the tiles, one tile at a time
+     */
+    @Benchmark
+    public int tiles() {
+        int width = tiles.length;
+        int height = tiles[0].length;
+        Arrays.fill(reached, false);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = x * height + y;
+        reached[x * height + y] = true;
+        while (head < tail) {
+            int c = queue[head++];
+            int cx = c / height;
+            int cy = c % height;
+            tail = visit(Math.floorMod(cx + 1, width), cy, tail);
+            tail = visit(Math.floorMod(cx - 1, width), cy, tail);
+            tail = visit(cx, Math.floorMod(cy + 1, height), tail);
+            tail = visit(cx, Math.floorMod(cy - 1, height), tail);
+        }
+        return tail;
+    }
+
+    private int visit(int cx, int cy, int tail) {
+        int c = cx * tiles[0].length + cy;
+        if (!reached[c] && !BlockedCells.isSolid(tiles[cx][cy])) {
+            reached[c] = true;
+            queue[tail++] = c;
+        }
+        return tail;
+    }
+}
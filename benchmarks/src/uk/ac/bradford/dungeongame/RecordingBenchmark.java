@@ -0,0 +1,100 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of seeking in a long recording. Each trial records a session of
+ * random moves on a seeded level with the given keyframe interval and prints
+ * the size of the file. The player is healed when low, so the session lasts
+ * the whole number of steps.
+ * @author sberk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordingBenchmark {
+
+    @Param({"50000"})
+    public int steps;
+
+    @Param({"16", "64", "256", "1024"})
+    public int keyframeInterval;
+
+    @Param({"123"})
+    public long seed;
+
+    private EngineFixture fixture;
+    private Path file;
+    private Recording recording;
+    private Random random;
+    private int step;
+
+    @Setup(Level.Trial)
+    public void record() throws IOException {
+        fixture = new EngineFixture("25x18", 10, 0.05, seed);
+        file = Files.createTempFile("session", ".dgr");
+        RecordingWriter writer = new RecordingWriter(file, keyframeInterval);
+        Random moves = new Random(seed);
+        GameEngine engine = fixture.engine;
+        writer.step(engine);
+        for (int i = 1; i < steps; i++) {
+            if (engine.player == null) {
+                fixture.restore();
+            } else if (engine.player.getHealth() < 30) {
+                engine.player.changeHealth(engine.player.getMaxHealth());
+            }
+            InputJournal.apply(engine, (byte) (InputJournal.LEFT + moves.nextInt(4)));
+            writer.step(engine);
+        }
+        writer.close();
+        long size = Files.size(file);
+        System.out.printf("%n%d steps, keyframe every %d: %d bytes, %.1f bytes/step%n",
+                steps, keyframeInterval, size, (double) size / steps);
+        recording = new Recording(file);
+        random = new Random(seed);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Seeks to a random step, as when dragging a replay slider
+     */
+    @Benchmark
+    public GameEngine seekRandom() throws IOException {
+        recording.seek(fixture.engine, random.nextInt(steps));
+        return fixture.engine;
+    }
+
+    /**
+     * Seeks to the following step, as when playing a replay
+     */
+    @Benchmark
+    public GameEngine seekNext() throws IOException {
+        step = step + 1 < steps ? step + 1 : 0;
+        recording.seek(fixture.engine, step);
+        return fixture.engine;
+    }
+}
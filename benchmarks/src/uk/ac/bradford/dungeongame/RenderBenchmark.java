@@ -0,0 +1,102 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of drawing one frame with Canvas.paintComponent (dungeon, sidebar,
+ * health and armour bars) into an offscreen image, without a display. It is run
+ * for several map sizes and monster counts, with and without HUD messages being
+ * shown. Only the tiles in the camera's view are drawn, so a frame of a big map
+ * should cost about the same as a frame of a map that fills the view. Zoom
+ * steps other than 0 draw with the camera zoomed in (positive) or out. Run it
+ * with the GC profiler (the jmhRender task does) to get the bytes allocated per
+ * frame next to the time per frame.
+ * @author sberk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    @Param({"25x18", "100x100", "1000x1000"})
+    public String mapSize;
+
+    @Param({"10", "40"})
+    public int monsterCount;
+
+    /**
+     * true to set the flags of several HUD messages before every frame, false
+     * to draw frames without any message
+     */
+    @Param({"false", "true"})
+    public boolean hudMessages;
+
+    @Param({"0"})
+    public int zoomSteps;
+
+    private EngineFixture fixture;
+    private Canvas canvas;
+    private BufferedImage frame;
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void createCanvas() {
+        System.setProperty("java.awt.headless", "true");
+        fixture = new EngineFixture(mapSize, monsterCount, 0.05, 123);
+        fixture.engine.playerClassName = "Knight";
+        canvas = new Canvas();
+        canvas.engine = fixture.engine;
+        canvas.assetsReady.join();
+        for (int i = 0; i < Math.abs(zoomSteps); i++) {
+            if (zoomSteps > 0) {
+                canvas.camera.zoomIn();
+            } else {
+                canvas.camera.zoomOut();
+            }
+        }
+        canvas.setSize(1030, 615);
+        canvas.update(fixture.engine.tiles, fixture.engine.player, fixture.engine.monsters);
+        frame = new BufferedImage(1030, 615, BufferedImage.TYPE_INT_RGB);
+        graphics = frame.createGraphics();
+    }
+
+    @Setup(Level.Invocation)
+    public void showMessages() {
+        if (hudMessages) {
+            fixture.engine.lastDamageToMonster = -5;
+            fixture.engine.criticalHit = true;
+            fixture.engine.lastDamageToPlayer = -2;
+            fixture.engine.receivedHealthPotion = true;
+            fixture.engine.monsterDropCoin = true;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void disposeGraphics() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintComponent() {
+        canvas.paintComponent(graphics);
+        return frame;
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the score store with as many runs as a simulation farm
+ * produces. Each trial fills a new store with random runs before measuring.
+ * @author sberk
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScoreStoreBenchmark {
+
+    @Param({"1000000"})
+    public int runs;
+
+    @Param({"10", "100"})
+    public int k;
+
+    private Path file;
+    private ScoreStore store;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void fill() throws IOException {
+        file = Files.createTempFile("scores", ".dat");
+        store = new ScoreStore(file);
+        random = new Random(123);
+        for (int i = 0; i < runs; i++) {
+            store.add(randomRun());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        store.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".idx"));
+    }
+
+    private ScoreRecord randomRun() {
+        return new ScoreRecord(1 + random.nextInt(3), random.nextLong(), random.nextInt(100000),
+                1 + random.nextInt(20), random.nextInt(200), random.nextInt(5000));
+    }
+
+    /**
+     * Leaderboard of all classes
+     */
+    @Benchmark
+    public List<ScoreRecord> topAll() throws IOException {
+        return store.top(0, k);
+    }
+
+    /**
+     * Leaderboard of one class
+     */
+    @Benchmark
+    public List<ScoreRecord> topClass() throws IOException {
+        return store.top(2, k);
+    }
+
+    /**
+     * Adding a finished run
+     */
+    @Benchmark
+    public void add() throws IOException {
+        store.add(randomRun());
+    }
+}
@@ -0,0 +1,128 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * The AssetLoader class loads the image files used by the game. Images are looked
+ * up on the classpath first (so the game also works from a jar or when launched
+ * from another directory) and then in the assets folder of the working directory.
+ * Decoding is done in parallel on a small pool of daemon threads and every decoded
+ * image is cached, so asking for the same file twice does not read it again.
+ * @author sberk
+ */
+class AssetLoader {
+
+    /**
+     * Folder that holds the images, both on the classpath and on disk
+     */
+    static final String ASSET_FOLDER = "assets/";
+
+    /**
+     * cache stores every image that has already been decoded, keyed by file name
+     */
+    private static final ConcurrentHashMap<String, BufferedImage> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Pool used to decode images in parallel. Threads are daemons so they never
+     * keep the game running after the window is closed.
+     */
+    private static final ExecutorService pool = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "asset-loader-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private AssetLoader() {
+    }
+
+    /**
+     * Starts decoding all given images in parallel. The returned future completes
+     * when every image was loaded, images which could not be found are left out
+     * of the map and reported on the console.
+     * @param names file names of the images inside the assets folder
+     * @return future holding a map from file name to decoded image
+     */
+    static CompletableFuture<Map<String, BufferedImage>> loadAllAsync(String... names) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CompletableFuture<BufferedImage>[] futures = new CompletableFuture[names.length];
+        for (int i = 0; i < names.length; i++) {
+            final String name = names[i];
+            futures[i] = CompletableFuture.supplyAsync(() -> load(name), pool);
+        }
+        return CompletableFuture.allOf(futures).thenApply(done -> {
+            Map<String, BufferedImage> images = new HashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                BufferedImage image = futures[i].join();
+                if (image != null) {
+                    images.put(names[i], image);
+                }
+            }
+            return images;
+        });
+    }
+
+    /**
+     * Returns a decoded image, reading it only the first time it is requested.
+     * @param name file name of the image inside the assets folder
+     * @return the decoded image or null if it could not be loaded
+     */
+    static BufferedImage load(String name) {
+        BufferedImage image = cache.get(name);
+        if (image == null) {
+            image = read(name);
+            if (image != null) {
+                BufferedImage previous = cache.putIfAbsent(name, image);
+                if (previous != null) {
+                    image = previous;
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Reads a single image from the classpath, falling back to the assets folder
+     * in the working directory.
+     * @param name file name of the image
+     * @return the decoded image or null if it could not be loaded
+     */
+    private static BufferedImage read(String name) {
+        try {
+            InputStream in = AssetLoader.class.getResourceAsStream("/" + ASSET_FOLDER + name);
+            if (in != null) {
+                try {
+                    return ImageIO.read(in);
+                } finally {
+                    in.close();
+                }
+            }
+            File file = new File(ASSET_FOLDER + name);
+            if (file.isFile()) {
+                return ImageIO.read(file);
+            }
+            System.out.println("Missing image: " + ASSET_FOLDER + name);
+        } catch (IOException e) {
+            System.out.println("Exception loading image " + name + ": " + e.getMessage());
+            e.printStackTrace(System.out);
+        }
+        return null;
+    }
+}
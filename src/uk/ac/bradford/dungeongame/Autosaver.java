@@ -0,0 +1,133 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Autosaver class saves the game in the background. On the game thread the
+ * engine only captures a snapshot of its state into byte buffers, which takes a
+ * few microseconds plus well under one for every floor the player has left, as
+ * the packed floors are shared with the snapshot instead of copied; a
+ * background thread writes the newest snapshot to a temporary file, forces it
+ * to disk and renames it over the autosave file, so the autosave is never half
+ * written. Snapshots taken while the writer is busy replace each other and at
+ * most one file is forced to disk per MIN_SYNC_INTERVAL_MS, so fast input
+ * never waits for the disk.
+ * @author sberk
+ */
+public class Autosaver {
+
+    /**
+     * The game is saved every this many turns, and on every new level
+     */
+    public static final int TURN_INTERVAL = 25;
+
+    /**
+     * Minimum time between two writes forced to disk
+     */
+    static final long MIN_SYNC_INTERVAL_MS = 1000;
+
+    /**
+     * Time taken on the game thread to capture a snapshot, and time taken by
+     * the background thread to write one
+     */
+    static final LatencyHistogram CAPTURE = new LatencyHistogram("autosaveCapture");
+    static final LatencyHistogram WRITE = new LatencyHistogram("autosaveWrite");
+
+    private final Path file;
+    private final Path temp;
+
+    /**
+     * The newest snapshot which was not written yet, null if there is none
+     */
+    private final AtomicReference<ByteBuffer[]> pending = new AtomicReference<>();
+
+    private final Thread writer;
+
+    /**
+     * Creates an autosaver and starts its background thread
+     * @param file the file the game is saved to
+     */
+    public Autosaver(Path file) {
+        this.file = file;
+        this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "autosave-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Captures the current state of an engine and hands it to the background
+     * thread. Never blocks on the disk.
+     * @param engine the engine to save
+     */
+    public void capture(GameEngine engine) {
+        long start = System.nanoTime();
+        ByteBuffer[] snapshot = SaveGame.encode(engine);
+        pending.set(snapshot);
+        CAPTURE.stop(start, null);
+        LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes snapshots as they arrive until the program ends
+     */
+    private void writeLoop() {
+        long lastSync = 0;
+        while (true) {
+            ByteBuffer[] snapshot = pending.getAndSet(null);
+            if (snapshot == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            long wait = lastSync + MIN_SYNC_INTERVAL_MS - System.currentTimeMillis();
+            if (wait > 0) {
+                // newer snapshots arriving meanwhile replace this one
+                pending.compareAndSet(null, snapshot);
+                LockSupport.parkNanos(this, wait * 1000000L);
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                write(snapshot);
+            } catch (IOException e) {
+                System.out.println("Exception autosaving game: " + e.getMessage());
+            }
+            WRITE.stop(start, null);
+            lastSync = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Writes a snapshot to the temporary file and moves it over the save file
+     * @param snapshot buffers returned by SaveGame.encode
+     * @throws IOException if writing or moving fails
+     */
+    private void write(ByteBuffer[] snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (snapshot[snapshot.length - 1].hasRemaining()) {
+                channel.write(snapshot);
+            }
+            channel.force(false);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Locale;
+
+/**
+ * The Balance class holds the values the difficulty of a game depends on: the
+ * chances of walls and items on generated levels, how strong monsters get with
+ * depth and the stats every player class starts with. Every engine has its
+ * own, so games with different values can run side by side, as BalanceSweep
+ * does. A new Balance has the values the game is played with; the chances
+ * start from the static chances of GameEngine.
+ *
+ * Item chances are thresholds, as in the level generators: a random number
+ * below fountainChance gives a fountain, below shopARChance a shop selling
+ * armour, below shopHPChance a shop selling potions, below coinChance a coin
+ * and below the wall chance a wall, so each must be bigger than the one
+ * before it to give its tile at all.
+ * @author sberk
+ */
+class Balance {
+
+    /**
+     * Names of the stats of a player class, after the class name and a dot,
+     * e.g. knight.health
+     */
+    static final String[] CLASS_STATS = {"health", "armour", "damage", "dodge", "critChance", "critDamage"};
+
+    /**
+     * Names of the values that can be set, class stats included
+     */
+    static final String[] NAMES;
+
+    static {
+        String[] values = {"wallChance", "wallChanceStep", "maxWallChance", "coinChance", "fountainChance",
+            "shopHPChance", "shopARChance", "monsterHealth", "monsterHealthPerDepth", "monsterDamagePerDepth",
+            "monsterDodge"};
+        NAMES = new String[values.length + 3 * CLASS_STATS.length];
+        System.arraycopy(values, 0, NAMES, 0, values.length);
+        for (int c = 0; c < 3; c++) {
+            for (int s = 0; s < CLASS_STATS.length; s++) {
+                NAMES[values.length + c * CLASS_STATS.length + s] = GameEngine.className(c + 1).toLowerCase(Locale.ROOT)
+                        + "." + CLASS_STATS[s];
+            }
+        }
+    }
+
+    /**
+     * Chance of a wall on the first level, how much it grows on every new
+     * level and the most it grows to
+     */
+    double wallChance = GameEngine.WALL_CHANCE;
+    double wallChanceStep = 0.005;
+    double maxWallChance = 0.25;
+
+    /**
+     * Thresholds of the items on generated levels
+     */
+    double coinChance = GameEngine.COIN_CHANCE;
+    double fountainChance = GameEngine.FOUNTAIN_CHANCE;
+    double shopHPChance = GameEngine.SHOPHP_CHANCE;
+    double shopARChance = GameEngine.SHOPAR_CHANCE;
+
+    /**
+     * Monsters have monsterHealth + monsterHealthPerDepth * depth health and
+     * monsterDamagePerDepth * depth damage
+     */
+    double monsterHealth = 9;
+    double monsterHealthPerDepth = 1;
+    double monsterDamagePerDepth = 1;
+    double monsterDodge = 0.1;
+
+    /**
+     * Stats of the Knight, Warrior and Thief in the order of CLASS_STATS:
+     * max health, armour, damage, dodge chance, critical damage chance and
+     * critical damage
+     */
+    final double[][] classes = {
+        {100, 100, 5, 0.1, 0.1, 3},
+        {60, 50, 15, 0.05, 0.3, 5},
+        {150, 100, 2, 0.3, 0.05, 2}
+    };
+
+    /**
+     * @return a copy that can be changed without changing this one
+     */
+    Balance copy() {
+        Balance copy = new Balance();
+        for (String name : NAMES) {
+            copy.set(name, get(name));
+        }
+        return copy;
+    }
+
+    /**
+     * Reads a value by name
+     * @param name one of NAMES
+     * @throws IllegalArgumentException if there is no such value
+     */
+    double get(String name) {
+        switch (name) {
+            case "wallChance": return wallChance;
+            case "wallChanceStep": return wallChanceStep;
+            case "maxWallChance": return maxWallChance;
+            case "coinChance": return coinChance;
+            case "fountainChance": return fountainChance;
+            case "shopHPChance": return shopHPChance;
+            case "shopARChance": return shopARChance;
+            case "monsterHealth": return monsterHealth;
+            case "monsterHealthPerDepth": return monsterHealthPerDepth;
+            case "monsterDamagePerDepth": return monsterDamagePerDepth;
+            case "monsterDodge": return monsterDodge;
+            default:
+                int[] stat = classStat(name);
+                return classes[stat[0]][stat[1]];
+        }
+    }
+
+    /**
+     * Changes a value by name
+     * @param name one of NAMES
+     * @param value the new value
+     * @throws IllegalArgumentException if there is no such value
+     */
+    void set(String name, double value) {
+        switch (name) {
+            case "wallChance": wallChance = value; break;
+            case "wallChanceStep": wallChanceStep = value; break;
+            case "maxWallChance": maxWallChance = value; break;
+            case "coinChance": coinChance = value; break;
+            case "fountainChance": fountainChance = value; break;
+            case "shopHPChance": shopHPChance = value; break;
+            case "shopARChance": shopARChance = value; break;
+            case "monsterHealth": monsterHealth = value; break;
+            case "monsterHealthPerDepth": monsterHealthPerDepth = value; break;
+            case "monsterDamagePerDepth": monsterDamagePerDepth = value; break;
+            case "monsterDodge": monsterDodge = value; break;
+            default:
+                int[] stat = classStat(name);
+                classes[stat[0]][stat[1]] = value;
+        }
+    }
+
+    /**
+     * @return class and stat index of a name like knight.health
+     */
+    private static int[] classStat(String name) {
+        int dot = name.indexOf('.');
+        if (dot > 0) {
+            String className = name.substring(0, dot);
+            String stat = name.substring(dot + 1);
+            for (int c = 0; c < 3; c++) {
+                if (GameEngine.className(c + 1).toLowerCase(Locale.ROOT).equals(className)) {
+                    for (int s = 0; s < CLASS_STATS.length; s++) {
+                        if (CLASS_STATS[s].equals(stat)) {
+                            return new int[]{c, s};
+                        }
+                    }
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unknown balance value " + name);
+    }
+
+    /**
+     * @return every value as name=value, in the order of NAMES, the same text
+     * for the same values
+     */
+    String key() {
+        StringBuilder key = new StringBuilder();
+        for (String name : NAMES) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(name).append('=').append(get(name));
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,450 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The BalanceSweep class plays many games without a window for every
+ * combination of some balance values, to see how the values change how long
+ * players survive and how well they score. Every game is played by a simple
+ * bot on its own engine with a seeded random number generator, so a game
+ * depends only on its balance values, player class, seed and turn limit. The
+ * games of all combinations are spread over a pool of threads.
+ *
+ * The result of every game is kept in a cache under those four things, the
+ * schedule of level generators and the loot file's name and checksum, and the
+ * cache can be kept in a file, so running a sweep again, or a sweep that
+ * shares combinations with an earlier one, only plays the games it has not
+ * played yet. Changing the engine changes what a game gives too, so the cache
+ * file should be deleted then.
+ *
+ * The bot drinks a potion when it is below POTION_HEALTH of its health,
+ * attacks a monster next to it and otherwise walks the shortest way to the
+ * stairs, moving at random when there is no way to them.
+ *
+ * Usage: BalanceSweep [-threads n] [-seeds n] [-turns n] [-cache file]
+ * name=value,value... with the names of Balance.NAMES or class, e.g.
+ * BalanceSweep -seeds 200 wallChance=0.05,0.1 knight.health=80,100 class=1,2,3
+ * @author sberk
+ */
+public class BalanceSweep {
+
+    /**
+     * Part of its max health below which the bot drinks a potion
+     */
+    static final double POTION_HEALTH = 0.4;
+
+    /**
+     * Moves the bot tries, in the order of the command constants
+     */
+    private static final byte[] MOVES = {InputJournal.LEFT, InputJournal.RIGHT, InputJournal.UP, InputJournal.DOWN};
+    private static final int[] DX = {-1, 1, 0, 0};
+    private static final int[] DY = {0, 0, -1, 1};
+
+    /**
+     * What a game ended with
+     */
+    static class Result {
+
+        final boolean alive;
+        final int depth;
+        final int score;
+        final int kills;
+        final int turns;
+
+        Result(boolean alive, int depth, int score, int kills, int turns) {
+            this.alive = alive;
+            this.depth = depth;
+            this.score = score;
+            this.kills = kills;
+            this.turns = turns;
+        }
+
+        /**
+         * @return the result as tab separated values, as in the cache file
+         */
+        @Override
+        public String toString() {
+            return (alive ? 1 : 0) + "\t" + depth + "\t" + score + "\t" + kills + "\t" + turns;
+        }
+
+        /**
+         * Reads a result written by toString
+         * @param words the values, starting at from
+         */
+        static Result parse(String[] words, int from) {
+            return new Result(words[from].equals("1"), Integer.parseInt(words[from + 1]),
+                    Integer.parseInt(words[from + 2]), Integer.parseInt(words[from + 3]),
+                    Integer.parseInt(words[from + 4]));
+        }
+    }
+
+    /**
+     * One combination of the swept values
+     */
+    static class GridPoint {
+
+        final Balance balance;
+        final int playerClass;
+
+        /**
+         * The swept values, as written in the table
+         */
+        final String label;
+
+        GridPoint(Balance balance, int playerClass, String label) {
+            this.balance = balance;
+            this.playerClass = playerClass;
+            this.label = label;
+        }
+    }
+
+    private final int seeds;
+    private final int maxTurns;
+
+    /**
+     * Generator schedule and loot file the games are played with, part of
+     * every key
+     */
+    private final String setup;
+
+    /**
+     * Results of played games by key
+     */
+    private final ConcurrentHashMap<String, Result> cache = new ConcurrentHashMap<String, Result>();
+
+    /**
+     * File the results of new games are added to, null to keep them in
+     * memory only
+     */
+    private final Path cacheFile;
+    private BufferedWriter cacheWriter;
+
+    private final AtomicInteger played = new AtomicInteger();
+    private final AtomicInteger cached = new AtomicInteger();
+
+    /**
+     * Creates a sweep and reads the results in the cache file
+     * @param seeds games played for every combination, with seeds 1 to seeds
+     * @param maxTurns turns after which a game is stopped
+     * @param cacheFile file of earlier results, null for none
+     * @throws IOException if the cache file can't be read
+     */
+    BalanceSweep(int seeds, int maxTurns, Path cacheFile) throws IOException {
+        this.seeds = seeds;
+        this.maxTurns = maxTurns;
+        this.cacheFile = cacheFile;
+        LootTables loot = LootTables.current();
+        setup = ",generators=" + System.getProperty(LevelGenerator.PROPERTY, "classic")
+                + ",loot=" + loot.id();
+        if (cacheFile != null && Files.isRegularFile(cacheFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(cacheFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] words = line.split("\t");
+                    if (words.length == 6) {
+                        cache.put(words[0], Result.parse(words, 1));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return key of a game in the cache
+     */
+    String key(GridPoint point, long seed) {
+        return point.balance.key() + ",class=" + point.playerClass + ",turns=" + maxTurns + setup + ",seed=" + seed;
+    }
+
+    /**
+     * Plays every game of every combination that is not in the cache
+     * @param points the combinations
+     * @param pool threads the games are played in
+     * @return the results of every combination, seed by seed
+     * @throws IOException if the cache file can't be written
+     */
+    Result[][] run(List<GridPoint> points, ExecutorService pool) throws IOException {
+        if (cacheFile != null) {
+            cacheWriter = Files.newBufferedWriter(cacheFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        try {
+            List<List<Future<Result>>> futures = new ArrayList<List<Future<Result>>>();
+            for (GridPoint point : points) {
+                List<Future<Result>> games = new ArrayList<Future<Result>>();
+                for (int seed = 1; seed <= seeds; seed++) {
+                    final long s = seed;
+                    games.add(pool.submit(() -> result(point, s)));
+                }
+                futures.add(games);
+            }
+            Result[][] results = new Result[points.size()][seeds];
+            for (int p = 0; p < points.size(); p++) {
+                for (int s = 0; s < seeds; s++) {
+                    try {
+                        results[p][s] = futures.get(p).get(s).get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted");
+                    } catch (ExecutionException e) {
+                        throw new IOException(e.getCause());
+                    }
+                }
+            }
+            return results;
+        } finally {
+            if (cacheWriter != null) {
+                cacheWriter.close();
+            }
+        }
+    }
+
+    /**
+     * @return the result of a game from the cache, playing it if it is not
+     * there
+     */
+    private Result result(GridPoint point, long seed) throws IOException {
+        String key = key(point, seed);
+        Result result = cache.get(key);
+        if (result != null) {
+            cached.incrementAndGet();
+            return result;
+        }
+        result = play(point.balance, point.playerClass, seed, maxTurns);
+        played.incrementAndGet();
+        cache.put(key, result);
+        if (cacheWriter != null) {
+            synchronized (cacheWriter) {
+                cacheWriter.write(key + "\t" + result);
+                cacheWriter.newLine();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Plays one game with the bot on a new engine
+     * @param balance the balance values of the game
+     * @param playerClass class the bot chooses
+     * @param seed seed of the engine's random number generator
+     * @param maxTurns turns after which the game is stopped
+     * @return how the game ended
+     */
+    static Result play(Balance balance, int playerClass, long seed, int maxTurns) {
+        GameEngine engine = new GameEngine(null, GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT,
+                new GameRandom(seed), balance);
+        SplittableRandom bot = new SplittableRandom(seed);
+        InputJournal.apply(engine, (byte) playerClass);
+        int turns = 0;
+        while (engine.player != null && turns < maxTurns) {
+            InputJournal.apply(engine, nextCommand(engine, bot));
+            turns++;
+        }
+        return new Result(engine.player != null, engine.depth, engine.score, engine.monstersKilled, turns);
+    }
+
+    /**
+     * Chooses the bot's next command
+     * @param engine the game
+     * @param bot random number generator for moves when there is no way to
+     * the stairs
+     * @return the command
+     */
+    static byte nextCommand(GameEngine engine, SplittableRandom bot) {
+        PlayerUtilities player = engine.player;
+        if (player.getHealth() < POTION_HEALTH * player.getMaxHealth() && player.getPotionsNumber() > 0) {
+            return InputJournal.POTION;
+        }
+        int x = player.getX();
+        int y = player.getY();
+        for (Entity m : engine.monsters) {
+            if (m != null && m.getHealth() > 0 && Math.abs(m.getX() - x) + Math.abs(m.getY() - y) == 1) {
+                for (int d = 0; d < MOVES.length; d++) {
+                    if (x + DX[d] == m.getX() && y + DY[d] == m.getY()) {
+                        return MOVES[d];
+                    }
+                }
+            }
+        }
+        int d = firstStepToStairs(engine, x, y);
+        return MOVES[d >= 0 ? d : bot.nextInt(MOVES.length)];
+    }
+
+    /**
+     * Finds the shortest way to the stairs over tiles the player can stand on,
+     * across the edges of the map as the player can go
+     * @return the direction of the first step, or -1 if there is no way
+     */
+    private static int firstStepToStairs(GameEngine engine, int x, int y) {
+        int width = engine.dungeonWidth;
+        int height = engine.dungeonHeight;
+        engine.blocked.sync(engine.tiles);
+        // direction of the first step of the way to every tile, -1 if not seen yet
+        int[] first = new int[width * height];
+        Arrays.fill(first, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        for (int d = 0; d < MOVES.length; d++) {
+            int nx = Math.floorMod(x + DX[d], width);
+            int ny = Math.floorMod(y + DY[d], height);
+            if (visit(engine, first, queue, nx, ny, d)) {
+                return d;
+            }
+        }
+        while (!queue.isEmpty()) {
+            int tile = queue.poll();
+            int tx = tile / height;
+            int ty = tile % height;
+            for (int d = 0; d < MOVES.length; d++) {
+                int nx = Math.floorMod(tx + DX[d], width);
+                int ny = Math.floorMod(ty + DY[d], height);
+                if (visit(engine, first, queue, nx, ny, first[tile])) {
+                    return first[tile];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks a tile as reached with a first step and queues it if the player
+     * can stand on it
+     * @return true if the tile is the stairs
+     */
+    private static boolean visit(GameEngine engine, int[] first, ArrayDeque<Integer> queue, int x, int y, int step) {
+        int tile = x * engine.dungeonHeight + y;
+        if (first[tile] >= 0) {
+            return false;
+        }
+        TileType type = engine.tiles[x][y];
+        if (type == TileType.STAIRS) {
+            return true;
+        }
+        first[tile] = step;
+        if (type != TileType.STAIRS_UP && !engine.blocked.isSolid(x, y)) {
+            queue.add(tile);
+        }
+        return false;
+    }
+
+    /**
+     * Builds every combination of the swept values
+     * @param sweeps arguments of the form name=value,value...
+     * @return the combinations, the last value changing fastest
+     * @throws IllegalArgumentException if a name is not a balance value or
+     * a class is not 1 to 3
+     */
+    static List<GridPoint> grid(List<String> sweeps) {
+        List<GridPoint> points = new ArrayList<GridPoint>();
+        points.add(new GridPoint(new Balance(), InputJournal.KNIGHT, ""));
+        for (String sweep : sweeps) {
+            int equals = sweep.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected name=value,value... but got " + sweep);
+            }
+            String name = sweep.substring(0, equals);
+            String[] values = sweep.substring(equals + 1).split(",");
+            List<GridPoint> next = new ArrayList<GridPoint>();
+            for (GridPoint point : points) {
+                for (String value : values) {
+                    Balance balance = point.balance.copy();
+                    int playerClass = point.playerClass;
+                    if (name.equals("class")) {
+                        playerClass = Integer.parseInt(value);
+                        if (playerClass < InputJournal.KNIGHT || playerClass > InputJournal.THIEF) {
+                            throw new IllegalArgumentException("Unknown class " + value);
+                        }
+                    } else {
+                        balance.set(name, Double.parseDouble(value));
+                    }
+                    String label = (point.label.isEmpty() ? "" : point.label + " ") + name + "=" + value;
+                    next.add(new GridPoint(balance, playerClass, label));
+                }
+            }
+            points = next;
+        }
+        return points;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int seeds = 100;
+        int turns = 2000;
+        Path cacheFile = null;
+        List<String> sweeps = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads": threads = Integer.parseInt(args[++i]); break;
+                case "-seeds": seeds = Integer.parseInt(args[++i]); break;
+                case "-turns": turns = Integer.parseInt(args[++i]); break;
+                case "-cache": cacheFile = Paths.get(args[++i]); break;
+                default: sweeps.add(args[i]);
+            }
+        }
+        List<GridPoint> points;
+        try {
+            points = grid(sweeps);
+        } catch (IllegalArgumentException e) {
+            System.out.println("Exception reading sweep: " + e.getMessage());
+            System.out.println("Values: class " + String.join(" ", Balance.NAMES));
+            return;
+        }
+
+        BalanceSweep sweep = new BalanceSweep(seeds, turns, cacheFile);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        Result[][] results;
+        try {
+            results = sweep.run(points, pool);
+        } finally {
+            pool.shutdown();
+        }
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("%-40s %6s %8s %7s %8s %7s %7s %7s%n",
+                "values", "games", "survived", "depth", "score", "p50", "kills", "turns");
+        for (int p = 0; p < points.size(); p++) {
+            Result[] games = results[p];
+            int alive = 0;
+            double depth = 0;
+            double score = 0;
+            double kills = 0;
+            double gameTurns = 0;
+            int[] scores = new int[games.length];
+            for (int s = 0; s < games.length; s++) {
+                alive += games[s].alive ? 1 : 0;
+                depth += games[s].depth;
+                score += games[s].score;
+                kills += games[s].kills;
+                gameTurns += games[s].turns;
+                scores[s] = games[s].score;
+            }
+            Arrays.sort(scores);
+            int n = Math.max(1, games.length);
+            String label = points.get(p).label.isEmpty() ? "defaults" : points.get(p).label;
+            System.out.printf("%-40s %6d %7.1f%% %7.2f %8.1f %7d %7.1f %7.0f%n", label, games.length,
+                    100.0 * alive / n, depth / n, score / n, games.length == 0 ? 0 : scores[games.length / 2],
+                    kills / n, gameTurns / n);
+        }
+        System.out.printf("%d combinations, %d games played and %d from the cache in %.1f s on %d threads%n",
+                points.size(), sweep.played.get(), sweep.cached.get(), nanos / 1e9, threads);
+    }
+}
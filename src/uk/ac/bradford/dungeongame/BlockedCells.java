@@ -0,0 +1,251 @@
+package uk.ac.bradford.dungeongame;
+
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The BlockedCells class keeps, next to the tiles of the current level, bit
+ * sets of the tiles that stop the player, so passability is one bit test and
+ * flood fills work on 64 tiles at once. There are two sets: blocked tiles are
+ * walls, opened chests and empty fountains, which nothing can walk into; solid
+ * tiles are these and the full fountains, closed chests and shops, which the
+ * player uses by walking into them and bounces back from. The player can only
+ * ever stand on tiles that are not solid.
+ *
+ * The sets are kept a column at a time, in whole longs per column, so moving
+ * up or down is a shift of the column and moving sideways is the same word of
+ * the next column. They are built again when the engine's tile array is
+ * replaced, by a new level or a loaded game, and every change the engine makes
+ * to a tile is passed on by tileChanged, so a wall broken by a monster stops
+ * being blocked at once.
+ * @author sberk
+ */
+class BlockedCells {
+
+    /**
+     * The level the sets belong to. A different array means a new level.
+     */
+    private TileType[][] tiles;
+    private int width;
+    private int height;
+
+    /**
+     * Longs in a column
+     */
+    private int words;
+
+    /**
+     * Bits of the tiles that are blocked and that are solid, column by column
+     */
+    private long[] blocked = new long[0];
+    private long[] solid = new long[0];
+
+    /**
+     * Bits of the tiles inside the map, the pad bits of the last word of a
+     * column being clear
+     */
+    private long[] inside = new long[0];
+
+    /**
+     * @return true if nothing can walk into a tile of this type
+     */
+    static boolean isBlocking(TileType type) {
+        return type == TileType.WALL || type == TileType.CHEST_OPENED || type == TileType.FOUNTAIN_EMPTY;
+    }
+
+    /**
+     * @return true if the player can't stand on a tile of this type
+     */
+    static boolean isSolid(TileType type) {
+        return isBlocking(type) || type == TileType.FOUNTAIN_FULL || type == TileType.CHEST_CLOSED
+                || type == TileType.SHOPAR || type == TileType.SHOPHP;
+    }
+
+    /**
+     * Builds the sets again if the level is not the one they belong to
+     * @param level the current level
+     */
+    void sync(TileType[][] level) {
+        if (level == tiles) {
+            return;
+        }
+        tiles = level;
+        width = level.length;
+        height = level[0].length;
+        words = (height + 63) >>> 6;
+        blocked = new long[width * words];
+        solid = new long[width * words];
+        inside = new long[width * words];
+        for (int x = 0; x < width; x++) {
+            TileType[] column = level[x];
+            for (int y = 0; y < height; y++) {
+                int i = x * words + (y >>> 6);
+                long bit = 1L << y;
+                inside[i] |= bit;
+                if (isSolid(column[y])) {
+                    solid[i] |= bit;
+                    if (isBlocking(column[y])) {
+                        blocked[i] |= bit;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by the engine when a tile of the current level changes
+     * @param x X coordinate of the tile
+     * @param y Y coordinate of the tile
+     * @param after type of the tile after the change
+     */
+    void tileChanged(int x, int y, TileType after) {
+        if (tiles == null) {
+            return;
+        }
+        int i = x * words + (y >>> 6);
+        long bit = 1L << y;
+        blocked[i] = isBlocking(after) ? blocked[i] | bit : blocked[i] & ~bit;
+        solid[i] = isSolid(after) ? solid[i] | bit : solid[i] & ~bit;
+    }
+
+    /**
+     * Forgets the sets, used when a level was changed without the engine
+     * knowing
+     */
+    void clear() {
+        tiles = null;
+    }
+
+    /**
+     * @return true if nothing can walk into the tile
+     */
+    boolean isBlocked(int x, int y) {
+        return (blocked[x * words + (y >>> 6)] & 1L << y) != 0;
+    }
+
+    /**
+     * @return true if the player can't stand on the tile
+     */
+    boolean isSolid(int x, int y) {
+        return (solid[x * words + (y >>> 6)] & 1L << y) != 0;
+    }
+
+    /**
+     * Finds the tiles the player can walk to from a tile, going left, right,
+     * up or down over tiles that are not solid. Columns are filled up and down
+     * with one addition per word, and the fill is spread sideways column by
+     * column, left to right and back, until nothing changes.
+     * @param x X coordinate of the start
+     * @param y Y coordinate of the start
+     * @param wrap true if the edges of the map lead to the other side, as they
+     * do for the player
+     * @return bits of the reachable tiles, in the layout of the sets
+     */
+    long[] reachable(int x, int y, boolean wrap) {
+        long[] reached = new long[width * words];
+        if (isSolid(x, y)) {
+            return reached;
+        }
+        reached[x * words + (y >>> 6)] = 1L << y;
+        long[] open = new long[width * words];
+        for (int i = 0; i < open.length; i++) {
+            open[i] = inside[i] & ~solid[i];
+        }
+        fillColumn(reached, open, x, wrap);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int c = 0; c < width; c++) {
+                changed |= spread(reached, open, c, c - 1, wrap);
+            }
+            for (int c = width - 1; c >= 0; c--) {
+                changed |= spread(reached, open, c, c + 1, wrap);
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * @return number of tiles the player can walk to from a tile
+     */
+    int countReachable(int x, int y, boolean wrap) {
+        int count = 0;
+        for (long word : reachable(x, y, wrap)) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Adds the open tiles of a column next to reached tiles of a neighbouring
+     * column, then fills the column
+     * @return true if the column reached new tiles
+     */
+    private boolean spread(long[] reached, long[] open, int column, int from, boolean wrap) {
+        if (from < 0 || from >= width) {
+            if (!wrap) {
+                return false;
+            }
+            from = Math.floorMod(from, width);
+        }
+        int base = column * words;
+        int fromBase = from * words;
+        long added = 0;
+        for (int w = 0; w < words; w++) {
+            long next = reached[fromBase + w] & open[base + w] & ~reached[base + w];
+            reached[base + w] |= next;
+            added |= next;
+        }
+        if (added == 0) {
+            return false;
+        }
+        fillColumn(reached, open, column, wrap);
+        return true;
+    }
+
+    /**
+     * Grows the reached tiles of a column over the runs of open tiles they
+     * are in. Adding the reached bits to the open bits carries through a run
+     * up to its end, so the bits the addition clears are the run above every
+     * reached tile; the same on the reversed column fills downwards.
+     */
+    private void fillColumn(long[] reached, long[] open, int column, boolean wrap) {
+        int base = column * words;
+        int last = height - 1;
+        long lastBit = 1L << last;
+        int lastWord = base + (last >>> 6);
+        boolean again = true;
+        while (again) {
+            // upwards, from bit 0 to the last tile of the column
+            long carry = 0;
+            for (int w = 0; w < words; w++) {
+                long o = open[base + w];
+                long r = reached[base + w];
+                long sum = o + r + carry;
+                carry = Long.compareUnsigned(sum, o) < 0 || (carry != 0 && sum == o) ? 1 : 0;
+                reached[base + w] = r | ((sum ^ o) & o);
+            }
+            // downwards, on the reversed words
+            carry = 0;
+            for (int w = words - 1; w >= 0; w--) {
+                long o = Long.reverse(open[base + w]);
+                long r = Long.reverse(reached[base + w]);
+                long sum = o + r + carry;
+                carry = Long.compareUnsigned(sum, o) < 0 || (carry != 0 && sum == o) ? 1 : 0;
+                reached[base + w] |= Long.reverse((sum ^ o) & o);
+            }
+            again = false;
+            if (wrap) {
+                // the top and bottom of a column lead to each other
+                boolean top = (reached[base] & 1L) != 0;
+                boolean bottom = (reached[lastWord] & lastBit) != 0;
+                if (top && !bottom && (open[lastWord] & lastBit) != 0) {
+                    reached[lastWord] |= lastBit;
+                    again = true;
+                } else if (bottom && !top && (open[base] & 1L) != 0) {
+                    reached[base] |= 1L;
+                    again = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Point;
+import java.util.Random;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The BspGenerator class lays out rooms joined by corridors. The inside of the
+ * map is split in two at a random place, again and again (binary space
+ * partitioning), until the parts are too small to split. Every part gets a
+ * room of random size, and the two halves of every split are joined by an L
+ * shaped corridor between one room of each, so every room can be reached.
+ * The deeper the level, the smaller the rooms can be.
+ * @author sberk
+ */
+class BspGenerator implements LevelGenerator {
+
+    /**
+     * Smallest part of the map, walls around its room included
+     */
+    static final int MIN_LEAF = 6;
+
+    /**
+     * Smallest width and height of a room
+     */
+    static final int MIN_ROOM = 3;
+
+    @Override
+    public TileType[][] generate(int width, int height, Random rng, double wallChance, Balance balance) {
+        TileType[][] level = new TileType[width][height];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                level[i][j] = TileType.WALL;
+            }
+        }
+        // rooms take between (1 - 2 * wallChance) and all of their part
+        double smallest = Math.max(0.3, 1 - 2 * wallChance);
+        // the last column and row are the right and bottom walls of the last rooms
+        split(level, rng, smallest, 1, 1, width - 1, height - 1);
+        LevelGenerator.scatterItems(level, rng, balance);
+        return level;
+    }
+
+    /**
+     * Splits a part of the map, or puts a room in it if it is too small
+     * @return the centre of one room in the part, to join it to its sibling
+     */
+    private Point split(TileType[][] level, Random rng, double smallest, int x, int y, int w, int h) {
+        boolean canSplitX = w >= 2 * MIN_LEAF;
+        boolean canSplitY = h >= 2 * MIN_LEAF;
+        if (!canSplitX && !canSplitY) {
+            return room(level, rng, smallest, x, y, w, h);
+        }
+        boolean splitX = canSplitX && (!canSplitY || (w > h * 5 / 4 || (h <= w * 5 / 4 && rng.nextBoolean())));
+        Point a;
+        Point b;
+        if (splitX) {
+            int at = MIN_LEAF + rng.nextInt(w - 2 * MIN_LEAF + 1);
+            a = split(level, rng, smallest, x, y, at, h);
+            b = split(level, rng, smallest, x + at, y, w - at, h);
+        } else {
+            int at = MIN_LEAF + rng.nextInt(h - 2 * MIN_LEAF + 1);
+            a = split(level, rng, smallest, x, y, w, at);
+            b = split(level, rng, smallest, x, y + at, w, h - at);
+        }
+        corridor(level, rng, a, b);
+        return rng.nextBoolean() ? a : b;
+    }
+
+    /**
+     * Carves a room inside a part, leaving a wall on its right and bottom side
+     * so rooms of neighbouring parts stay apart
+     * @return the centre of the room
+     */
+    private Point room(TileType[][] level, Random rng, double smallest, int x, int y, int w, int h) {
+        int maxW = Math.max(1, w - 1);
+        int maxH = Math.max(1, h - 1);
+        int minW = Math.min(maxW, Math.max(MIN_ROOM, (int) (maxW * smallest)));
+        int minH = Math.min(maxH, Math.max(MIN_ROOM, (int) (maxH * smallest)));
+        int rw = minW + rng.nextInt(maxW - minW + 1);
+        int rh = minH + rng.nextInt(maxH - minH + 1);
+        int rx = x + rng.nextInt(maxW - rw + 1);
+        int ry = y + rng.nextInt(maxH - rh + 1);
+        for (int i = rx; i < rx + rw; i++) {
+            for (int j = ry; j < ry + rh; j++) {
+                level[i][j] = TileType.FLOOR;
+            }
+        }
+        return new Point(rx + rw / 2, ry + rh / 2);
+    }
+
+    /**
+     * Carves an L shaped corridor between two points, going sideways or up and
+     * down first at random
+     */
+    private void corridor(TileType[][] level, Random rng, Point a, Point b) {
+        int cornerX = rng.nextBoolean() ? b.x : a.x;
+        int cornerY = cornerX == b.x ? a.y : b.y;
+        line(level, a.x, a.y, cornerX, cornerY);
+        line(level, cornerX, cornerY, b.x, b.y);
+    }
+
+    private void line(TileType[][] level, int x1, int y1, int x2, int y2) {
+        int dx = Integer.signum(x2 - x1);
+        int dy = Integer.signum(y2 - y1);
+        int x = x1;
+        int y = y1;
+        level[x][y] = TileType.FLOOR;
+        while (x != x2 || y != y2) {
+            x += dx;
+            y += dy;
+            level[x][y] = TileType.FLOOR;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "bsp";
+    }
+}
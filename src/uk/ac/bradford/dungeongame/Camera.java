@@ -0,0 +1,181 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.IdentityHashMap;
+
+/**
+ * The Camera class chooses the part of the level the canvas shows. It follows
+ * the player, keeping the player in the middle of the view except near the
+ * edges of the map, where it stops so no space outside the map is shown. A map
+ * that fits the view is shown whole from its top left corner, as the game
+ * always drew it. Only the tiles from firstX() to lastX() and firstY() to
+ * lastY() are drawn, so drawing costs the same on any size of map.
+ *
+ * The camera also has a zoom, changed with + and -. Tile images are scaled to
+ * the size of a zoomed tile once and kept, so drawing a frame never scales an
+ * image; the kept images are thrown away when the zoom changes.
+ * @author sberk
+ */
+class Camera {
+
+    /**
+     * Zoom levels, from the smallest
+     */
+    static final double[] ZOOMS = {0.5, 0.75, 1, 1.5, 2};
+
+    /**
+     * Zoom level the game starts with, tiles at their own size
+     */
+    static final int DEFAULT_ZOOM = 2;
+
+    private int zoom = DEFAULT_ZOOM;
+
+    /**
+     * Width and height of a tile on screen at the current zoom, in pixels
+     */
+    private int tileSize = GameGUI.TILE_WIDTH;
+
+    /**
+     * Pixel of the map in the top left corner of the view
+     */
+    private int originX;
+    private int originY;
+
+    /**
+     * Size of the view in pixels and of the map in tiles
+     */
+    private int viewWidth;
+    private int viewHeight;
+    private int mapWidth;
+    private int mapHeight;
+
+    /**
+     * Tile images scaled to the current tile size, by the image at its own size
+     */
+    private final IdentityHashMap<BufferedImage, BufferedImage> scaled = new IdentityHashMap<BufferedImage, BufferedImage>();
+
+    /**
+     * Moves the view so it shows the player, or keeps it where it is if there
+     * is no player
+     * @param tiles the level, by column
+     * @param player the player, may be null
+     * @param width width of the view in pixels
+     * @param height height of the view in pixels
+     */
+    void follow(GameEngine.TileType[][] tiles, Entity player, int width, int height) {
+        viewWidth = width;
+        viewHeight = height;
+        mapWidth = tiles.length;
+        mapHeight = tiles[0].length;
+        if (player != null) {
+            originX = player.getX() * tileSize + tileSize / 2 - width / 2;
+            originY = player.getY() * tileSize + tileSize / 2 - height / 2;
+        }
+        originX = Math.max(0, Math.min(originX, mapWidth * tileSize - width));
+        originY = Math.max(0, Math.min(originY, mapHeight * tileSize - height));
+    }
+
+    /**
+     * @return first and last column and row of tiles in the view, partly
+     * shown tiles at the edges included
+     */
+    int firstX() {
+        return originX / tileSize;
+    }
+
+    int lastX() {
+        return Math.min(mapWidth - 1, (originX + viewWidth - 1) / tileSize);
+    }
+
+    int firstY() {
+        return originY / tileSize;
+    }
+
+    int lastY() {
+        return Math.min(mapHeight - 1, (originY + viewHeight - 1) / tileSize);
+    }
+
+    /**
+     * @return true if the tile is in the view
+     */
+    boolean shows(int x, int y) {
+        return x >= firstX() && x <= lastX() && y >= firstY() && y <= lastY();
+    }
+
+    /**
+     * @return position of a tile on screen, in pixels
+     */
+    int screenX(int x) {
+        return x * tileSize - originX;
+    }
+
+    int screenY(int y) {
+        return y * tileSize - originY;
+    }
+
+    /**
+     * @return width and height of a tile on screen, in pixels
+     */
+    int tileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return how many times bigger than their images tiles are drawn
+     */
+    double scale() {
+        return ZOOMS[zoom];
+    }
+
+    /**
+     * Makes tiles bigger, up to the biggest zoom
+     */
+    void zoomIn() {
+        setZoom(zoom + 1);
+    }
+
+    /**
+     * Makes tiles smaller, down to the smallest zoom
+     */
+    void zoomOut() {
+        setZoom(zoom - 1);
+    }
+
+    private void setZoom(int level) {
+        level = Math.max(0, Math.min(ZOOMS.length - 1, level));
+        if (level != zoom) {
+            zoom = level;
+            tileSize = (int) Math.round(GameGUI.TILE_WIDTH * ZOOMS[zoom]);
+            scaled.clear();
+        }
+    }
+
+    /**
+     * Returns a tile image at the size of a tile at the current zoom, scaling
+     * it the first time it is needed at this zoom
+     * @param image the image at its own size, may be null while images load
+     * @return the image to draw
+     */
+    BufferedImage sprite(BufferedImage image) {
+        if (image == null || tileSize == GameGUI.TILE_WIDTH) {
+            return image;
+        }
+        BufferedImage sprite = scaled.get(image);
+        if (sprite == null) {
+            // opaque tiles stay opaque, so they are copied without blending
+            sprite = new BufferedImage(tileSize, tileSize, image.getTransparency() == Transparency.OPAQUE
+                    ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = sprite.createGraphics();
+            // pixel art keeps sharp edges when it grows, smaller images are smoothed
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, tileSize > GameGUI.TILE_WIDTH
+                    ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, tileSize, tileSize, null);
+            g.dispose();
+            scaled.put(image, sprite);
+        }
+        return sprite;
+    }
+}
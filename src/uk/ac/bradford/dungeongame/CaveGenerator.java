@@ -0,0 +1,407 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The CaveGenerator class lays out caves with a cellular automaton. The inside
+ * of the map starts as random walls and floor, then a few smoothing steps turn
+ * every tile with at least five walls among its eight neighbours into wall
+ * and every tile with three or fewer into floor; tiles outside the map count
+ * as walls. Only the biggest cave is kept, the others are filled in, so every
+ * floor tile can be reached. The deeper the level, the more walls it starts
+ * with, up to MAX_FILL. A level whose cave is too small is generated again,
+ * at most MAX_ATTEMPTS times.
+ *
+ * The walls are kept as bitboards: every row of the map is a few longs, one
+ * bit per tile, set for walls. A smoothing step works on 64 tiles at once: the
+ * eight neighbours of a word are the rows above, below and itself shifted by
+ * one bit, and they are added up with bitwise adders into four bit planes
+ * holding the count of every tile. Rows are worked out in bands by a fork-join
+ * pool. Every row draws its random walls from its own generator, seeded from
+ * the game's random number generator, so a level depends only on the seed and
+ * not on how the rows were split between threads. The walls are turned into
+ * TileType values at the end, so the engine places stairs, the chest and
+ * spawn points as for any other level.
+ * @author sberk
+ */
+class CaveGenerator implements LevelGenerator {
+
+    /**
+     * Number of smoothing steps
+     */
+    static final int STEPS = 4;
+
+    /**
+     * Chance of a wall before smoothing on the first level
+     */
+    static final double FILL = 0.40;
+
+    /**
+     * Most walls before smoothing, however deep the level. Above about half
+     * walls the caves stop joining up and the biggest one gets too small.
+     */
+    static final double MAX_FILL = 0.48;
+
+    /**
+     * Smallest part of the map the kept cave must cover, else the level is
+     * generated again
+     */
+    static final double MIN_CAVE = 0.25;
+
+    /**
+     * Most times a level is generated again for a small cave; after the last
+     * one the biggest cave of all tries is kept
+     */
+    static final int MAX_ATTEMPTS = 8;
+
+    /**
+     * Words a task works on before it splits its band of rows in two
+     */
+    static final int BAND_WORDS = 4096;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a generator using the common fork-join pool
+     */
+    CaveGenerator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a generator using a pool, so the number of threads can be chosen
+     * @param pool pool the bands of rows are worked out in
+     */
+    CaveGenerator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public TileType[][] generate(int width, int height, Random rng, double wallChance, Balance balance) {
+        Walls walls = new Walls(width, height);
+        double fill = Math.min(MAX_FILL, FILL + wallChance / 2);
+        long[] best = null; // walls of the biggest cave so far, kept only when trying again
+        int bestKept = -1;
+        for (int attempt = 1; ; attempt++) {
+            long seed = rng.nextLong();
+            pool.invoke(new Band(walls, 0, height, 0, null, seed, fill));
+            for (int step = 0; step < STEPS; step++) {
+                pool.invoke(new Band(walls, 0, height, 1, null, 0, 0));
+                walls.swap();
+            }
+            int kept = walls.keepBiggestCave();
+            if (kept >= (width - 2) * (height - 2) * MIN_CAVE) {
+                break;
+            }
+            if (kept > bestKept) {
+                bestKept = kept;
+                best = walls.rows.clone();
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                walls.rows = best;
+                break;
+            }
+        }
+        TileType[][] level = new TileType[width][height];
+        pool.invoke(new Band(walls, 0, width, 2, level, 0, 0));
+        LevelGenerator.scatterItems(level, rng, balance, pool);
+        return level;
+    }
+
+    /**
+     * The walls of a map as bitboards, with a second set of rows that a
+     * smoothing step writes to. Bits past the width of the map are always set,
+     * as tiles outside the map count as walls.
+     */
+    static class Walls {
+
+        final int width;
+        final int height;
+
+        /**
+         * Longs in a row
+         */
+        final int words;
+
+        /**
+         * Rows one after the other, bit x of a row set for a wall
+         */
+        long[] rows;
+        long[] next;
+
+        /**
+         * Bits of the last word of a row that are past the width of the map
+         */
+        private final long pad;
+
+        Walls(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.words = (width + 63) >>> 6;
+            this.rows = new long[words * height];
+            this.next = new long[words * height];
+            this.pad = (width & 63) == 0 ? 0 : -1L << (width & 63);
+        }
+
+        boolean isWall(int x, int y) {
+            return (rows[y * words + (x >>> 6)] & 1L << x) != 0;
+        }
+
+        void swap() {
+            long[] swap = rows;
+            rows = next;
+            next = swap;
+        }
+
+        /**
+         * Fills a row with random walls; the first and last row and column are
+         * always walls
+         */
+        void fillRow(int y, long seed, double fill) {
+            int base = y * words;
+            if (y == 0 || y == height - 1) {
+                for (int w = 0; w < words; w++) {
+                    rows[base + w] = -1L;
+                }
+                return;
+            }
+            SplittableRandom random = new SplittableRandom(Regions.streamSeed(seed, y));
+            for (int w = 0; w < words; w++) {
+                long word = 0;
+                int end = Math.min(64, width - w * 64);
+                for (int b = 0; b < end; b++) {
+                    if (random.nextDouble() < fill) {
+                        word |= 1L << b;
+                    }
+                }
+                rows[base + w] = word;
+            }
+            closeEdges(rows, base);
+        }
+
+        /**
+         * Works out one smoothing step of a row into the next rows
+         */
+        void smoothRow(int y) {
+            int base = y * words;
+            if (y == 0 || y == height - 1) {
+                for (int w = 0; w < words; w++) {
+                    next[base + w] = -1L;
+                }
+                return;
+            }
+            int above = base - words;
+            int below = base + words;
+            long[] neighbours = new long[8];
+            for (int w = 0; w < words; w++) {
+                long a = rows[above + w];
+                long b = rows[base + w];
+                long c = rows[below + w];
+                // walls count of every tile in four bit planes, added one neighbour at a time
+                long s0 = 0;
+                long s1 = 0;
+                long s2 = 0;
+                long s3 = 0;
+                neighbours[0] = west(above, w);
+                neighbours[1] = a;
+                neighbours[2] = east(above, w);
+                neighbours[3] = west(base, w);
+                neighbours[4] = east(base, w);
+                neighbours[5] = west(below, w);
+                neighbours[6] = c;
+                neighbours[7] = east(below, w);
+                for (long n : neighbours) {
+                    long carry0 = s0 & n;
+                    s0 ^= n;
+                    long carry1 = s1 & carry0;
+                    s1 ^= carry0;
+                    long carry2 = s2 & carry1;
+                    s2 ^= carry1;
+                    s3 |= carry2;
+                }
+                long atLeastFive = s3 | (s2 & (s1 | s0));
+                long four = ~s3 & s2 & ~s1 & ~s0;
+                next[base + w] = atLeastFive | (four & b);
+            }
+            closeEdges(next, base);
+        }
+
+        /**
+         * Row shifted so every bit holds the tile to its left; left of the map
+         * is wall
+         */
+        private long west(int base, int w) {
+            long carry = w == 0 ? 1L : rows[base + w - 1] >>> 63;
+            return rows[base + w] << 1 | carry;
+        }
+
+        /**
+         * Row shifted so every bit holds the tile to its right; right of the
+         * map is wall
+         */
+        private long east(int base, int w) {
+            long carry = w == words - 1 ? 1L : rows[base + w + 1];
+            return rows[base + w] >>> 1 | carry << 63;
+        }
+
+        private void closeEdges(long[] target, int base) {
+            target[base] |= 1L;
+            target[base + ((width - 1) >>> 6)] |= 1L << (width - 1);
+            target[base + words - 1] |= pad;
+        }
+
+        /**
+         * Fills every cave but the biggest with walls. Caves are floor tiles
+         * joined left, right, up or down.
+         * @return number of floor tiles of the kept cave
+         */
+        int keepBiggestCave() {
+            long[] visited = new long[rows.length];
+            int[] queue = new int[64];
+            int biggest = -1;
+            int biggestSize = 0;
+            for (int i = 0; i < rows.length; i++) {
+                long open = ~rows[i] & ~visited[i];
+                while (open != 0) {
+                    int start = (i / words) * width + (i % words) * 64 + Long.numberOfTrailingZeros(open);
+                    queue = flood(start, visited, queue);
+                    int size = queue[0];
+                    if (size > biggestSize) {
+                        biggestSize = size;
+                        biggest = start;
+                    }
+                    open = ~rows[i] & ~visited[i];
+                }
+            }
+            long[] keep = new long[rows.length];
+            if (biggest >= 0) {
+                flood(biggest, keep, queue);
+            }
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = ~keep[i];
+            }
+            return biggestSize;
+        }
+
+        /**
+         * Marks the cave of a tile in a bitboard, breadth first
+         * @param start tile as y * width + x
+         * @return the queue, which may have grown, with the size of the cave
+         * in its first element
+         */
+        private int[] flood(int start, long[] marked, int[] queue) {
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            mark(marked, start % width, start / width);
+            while (head < tail) {
+                if (queue.length - tail < 4) {
+                    queue = Arrays.copyOf(queue, queue.length * 2);
+                }
+                int c = queue[head++];
+                int x = c % width;
+                int y = c / width;
+                tail = visit(marked, queue, tail, x + 1, y);
+                tail = visit(marked, queue, tail, x - 1, y);
+                tail = visit(marked, queue, tail, x, y + 1);
+                tail = visit(marked, queue, tail, x, y - 1);
+            }
+            queue[0] = tail;
+            return queue;
+        }
+
+        private int visit(long[] marked, int[] queue, int tail, int x, int y) {
+            if (x < 0 || y < 0 || x >= width || y >= height) {
+                return tail;
+            }
+            int i = y * words + (x >>> 6);
+            long bit = 1L << x;
+            if ((rows[i] & bit) == 0 && (marked[i] & bit) == 0) {
+                marked[i] |= bit;
+                queue[tail++] = y * width + x;
+            }
+            return tail;
+        }
+
+        private void mark(long[] marked, int x, int y) {
+            marked[y * words + (x >>> 6)] |= 1L << x;
+        }
+
+        /**
+         * Writes a range of columns as TileType values
+         */
+        void toTiles(TileType[][] level, int fromX, int toX) {
+            for (int x = fromX; x < toX; x++) {
+                TileType[] column = level[x];
+                int word = x >>> 6;
+                long bit = 1L << x;
+                for (int y = 0; y < height; y++) {
+                    column[y] = (rows[y * words + word] & bit) != 0 ? TileType.WALL : TileType.FLOOR;
+                }
+            }
+        }
+    }
+
+    /**
+     * A band of rows, or of columns when turning walls into tiles, worked out
+     * in one task or split in two
+     */
+    private static class Band extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Walls walls;
+        private final int from;
+        private final int to;
+
+        /**
+         * 0 - fill with random walls, 1 - smooth, 2 - turn into tiles
+         */
+        private final int work;
+        private final TileType[][] level;
+        private final long seed;
+        private final double fill;
+
+        Band(Walls walls, int from, int to, int work, TileType[][] level, long seed, double fill) {
+            this.walls = walls;
+            this.from = from;
+            this.to = to;
+            this.work = work;
+            this.level = level;
+            this.seed = seed;
+            this.fill = fill;
+        }
+
+        @Override
+        protected void compute() {
+            int size = work == 2 ? walls.height : walls.words;
+            if ((long) (to - from) * size > BAND_WORDS && to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Band(walls, from, middle, work, level, seed, fill),
+                        new Band(walls, middle, to, work, level, seed, fill));
+                return;
+            }
+            if (work == 2) {
+                walls.toTiles(level, from, to);
+                return;
+            }
+            for (int y = from; y < to; y++) {
+                if (work == 0) {
+                    walls.fillRow(y, seed, fill);
+                } else {
+                    walls.smoothRow(y);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "caves";
+    }
+}
@@ -0,0 +1,551 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The ChangeLog class turns the game of an engine into a stream of messages
+ * that lets a spectator view, a remote renderer or a recorder keep its own copy
+ * of the game. The first message is a keyframe holding the whole game in the
+ * SaveGame format, without the floors the player has left, which a copy gets
+ * in a keyframe when the player goes back to them. After that every flush writes a delta holding only what
+ * changed: tiles changed by the engine (chests, coins, fountains, walls broken
+ * by monsters), entities that moved, were hurt or died, and changed game
+ * values. A new level or a loaded game gives a keyframe again.
+ *
+ * Tile changes are logged by the engine as they happen. Entities and game
+ * values are compared with the values of the last flush, which costs a few
+ * dozen comparisons per turn.
+ *
+ * Messages use the framing of GameServer: a type byte, a length int and the
+ * payload. A delta payload (big-endian) is the turn counter followed by
+ * records, each a tag byte and its values.
+ * @author sberk
+ */
+public class ChangeLog {
+
+    /**
+     * Message type of a delta. Keyframes use GameServer.SNAPSHOT.
+     */
+    static final byte DELTA = 3;
+
+    /**
+     * Record tags of a delta
+     */
+    static final byte TILE = 1;            // x, y, tile type
+    static final byte MONSTER_MOVE = 2;    // slot, x, y
+    static final byte MONSTER_HEALTH = 3;  // slot, health
+    static final byte MONSTER_GONE = 4;    // slot
+    static final byte PLAYER = 5;          // every value of the player
+    static final byte PLAYER_MOVE = 6;     // x, y
+    static final byte PLAYER_HEALTH = 7;   // health
+    static final byte PLAYER_GONE = 8;
+    static final byte SCORE = 9;           // score, monsters killed
+    static final byte GAME = 10;           // the other game values of a save
+
+    private static final TileType[] TILE_TYPES = TileType.values();
+
+    private final GameEngine engine;
+
+    /**
+     * Tile changes since the last flush, three ints each: x, y and tile type
+     */
+    private int[] tiles = new int[48];
+    private int tileCount;
+
+    /**
+     * Arrays of the engine at the last flush. When the engine replaces them
+     * the level is new and a keyframe is written.
+     */
+    private TileType[][] lastTiles;
+    private Entity[] lastMonsters;
+
+    /**
+     * Monster values at the last flush, by slot of the monsters array
+     */
+    private boolean[] monsterPresent;
+    private int[] monsterX;
+    private int[] monsterY;
+    private double[] monsterHealth;
+
+    /**
+     * Player values at the last flush
+     */
+    private PlayerUtilities lastPlayer;
+    private int playerX;
+    private int playerY;
+    private double playerHealth;
+    private double[] playerStats = new double[8];
+
+    /**
+     * Game values at the last flush
+     */
+    private int score;
+    private int kills;
+    private double[] gameValues = new double[11];
+
+    /**
+     * Reused to read the current values for comparing
+     */
+    private final double[] stats = new double[8];
+    private final double[] values = new double[11];
+
+    /**
+     * Starts logging the changes of an engine. The first flush writes a
+     * keyframe.
+     * @param engine the engine to log
+     */
+    public ChangeLog(GameEngine engine) {
+        this.engine = engine;
+        engine.changes = this;
+    }
+
+    /**
+     * Stops logging, so the engine no longer reports tile changes
+     */
+    public void detach() {
+        if (engine.changes == this) {
+            engine.changes = null;
+        }
+    }
+
+    /**
+     * Called by the engine whenever it changes a tile of the current level
+     */
+    void tile(int x, int y, TileType type) {
+        if (tileCount + 3 > tiles.length) {
+            tiles = Arrays.copyOf(tiles, tiles.length * 2);
+        }
+        tiles[tileCount++] = x;
+        tiles[tileCount++] = y;
+        tiles[tileCount++] = type.ordinal();
+    }
+
+    /**
+     * Writes everything that changed since the last flush as one message
+     * @param out buffer to append the message to, grown if too small
+     * @return the buffer holding the message, out or a bigger copy of it
+     */
+    public ByteBuffer flush(ByteBuffer out) {
+        if (lastTiles != engine.tiles || lastMonsters != engine.monsters || !sameSlots()) {
+            return keyframe(out);
+        }
+        Entity[] monsters = engine.monsters;
+        PlayerUtilities p = engine.player;
+        // a delta is at most the header, every logged tile, every monster and the player
+        out = reserve(out, 1 + 4 + 4 + tileCount / 3 * 6 + monsters.length * (7 + 11 + 3) + 70 + 10 + 64);
+        int start = out.position();
+        out.put(DELTA);
+        out.putInt(0);
+        out.putInt(engine.turns);
+
+        for (int i = 0; i < tileCount; i += 3) {
+            out.put(TILE);
+            out.putShort((short) tiles[i]);
+            out.putShort((short) tiles[i + 1]);
+            out.put((byte) tiles[i + 2]);
+        }
+        tileCount = 0;
+
+        for (int i = 0; i < monsters.length; i++) {
+            Entity m = monsters[i];
+            if (m == null) {
+                if (monsterPresent[i]) {
+                    out.put(MONSTER_GONE);
+                    out.putShort((short) i);
+                    monsterPresent[i] = false;
+                }
+                continue;
+            }
+            if (m.getX() != monsterX[i] || m.getY() != monsterY[i]) {
+                out.put(MONSTER_MOVE);
+                out.putShort((short) i);
+                out.putShort((short) m.getX());
+                out.putShort((short) m.getY());
+                monsterX[i] = m.getX();
+                monsterY[i] = m.getY();
+            }
+            if (m.getHealth() != monsterHealth[i]) {
+                out.put(MONSTER_HEALTH);
+                out.putShort((short) i);
+                out.putDouble(m.getHealth());
+                monsterHealth[i] = m.getHealth();
+            }
+        }
+
+        if (p == null) {
+            if (lastPlayer != null) {
+                out.put(PLAYER_GONE);
+            }
+        } else {
+            readStats(p, stats);
+            if (p != lastPlayer || !Arrays.equals(stats, playerStats)) {
+                out.put(PLAYER);
+                writePlayer(p, out);
+            } else {
+                if (p.getX() != playerX || p.getY() != playerY) {
+                    out.put(PLAYER_MOVE);
+                    out.putShort((short) p.getX());
+                    out.putShort((short) p.getY());
+                }
+                if (p.getHealth() != playerHealth) {
+                    out.put(PLAYER_HEALTH);
+                    out.putDouble(p.getHealth());
+                }
+            }
+        }
+        rememberPlayer();
+
+        if (engine.score != score || engine.monstersKilled != kills) {
+            out.put(SCORE);
+            out.putInt(engine.score);
+            out.putInt(engine.monstersKilled);
+            score = engine.score;
+            kills = engine.monstersKilled;
+        }
+        readGameValues(engine, values);
+        if (!Arrays.equals(values, gameValues)) {
+            out.put(GAME);
+            writeGameValues(out);
+            System.arraycopy(values, 0, gameValues, 0, values.length);
+        }
+
+        out.putInt(start + 1, out.position() - start - 5);
+        return out;
+    }
+
+    /**
+     * Writes the whole game as a SNAPSHOT message and remembers its values
+     */
+    private ByteBuffer keyframe(ByteBuffer out) {
+        ByteBuffer[] snapshot = SaveGame.encode(engine, false);
+        int length = 0;
+        for (ByteBuffer b : snapshot) {
+            length += b.remaining();
+        }
+        out = reserve(out, 1 + 4 + length);
+        out.put(GameServer.SNAPSHOT);
+        out.putInt(length);
+        for (ByteBuffer b : snapshot) {
+            out.put(b);
+        }
+
+        tileCount = 0;
+        lastTiles = engine.tiles;
+        lastMonsters = engine.monsters;
+        int slots = lastMonsters == null ? 0 : lastMonsters.length;
+        monsterPresent = new boolean[slots];
+        monsterX = new int[slots];
+        monsterY = new int[slots];
+        monsterHealth = new double[slots];
+        for (int i = 0; i < slots; i++) {
+            Entity m = lastMonsters[i];
+            if (m != null) {
+                monsterPresent[i] = true;
+                monsterX[i] = m.getX();
+                monsterY[i] = m.getY();
+                monsterHealth[i] = m.getHealth();
+            }
+        }
+        rememberPlayer();
+        score = engine.score;
+        kills = engine.monstersKilled;
+        readGameValues(engine, gameValues);
+        return out;
+    }
+
+    /**
+     * Checks that no monster appeared in a slot that was empty, which a delta
+     * cannot describe
+     */
+    private boolean sameSlots() {
+        Entity[] monsters = engine.monsters;
+        if (monsters == null) {
+            return true;
+        }
+        for (int i = 0; i < monsters.length; i++) {
+            if (monsters[i] != null && !monsterPresent[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rememberPlayer() {
+        PlayerUtilities p = engine.player;
+        lastPlayer = p;
+        if (p != null) {
+            playerX = p.getX();
+            playerY = p.getY();
+            playerHealth = p.getHealth();
+            readStats(p, playerStats);
+        }
+    }
+
+    /**
+     * Reads the values of the player that change rarely
+     */
+    private static void readStats(PlayerUtilities p, double[] into) {
+        into[0] = p.getMaxHealth();
+        into[1] = p.getDmg();
+        into[2] = p.getDodgeChance();
+        into[3] = p.getPlayerCritDmgChance();
+        into[4] = p.getPlayerCritDmg();
+        into[5] = p.getArmour();
+        into[6] = p.getCoin();
+        into[7] = p.getPotionsNumber();
+    }
+
+    private static void writePlayer(PlayerUtilities p, ByteBuffer out) {
+        out.putDouble(p.getMaxHealth());
+        out.putDouble(p.getHealth());
+        out.putDouble(p.getDmg());
+        out.putDouble(p.getDodgeChance());
+        out.putDouble(p.getPlayerCritDmgChance());
+        out.putDouble(p.getPlayerCritDmg());
+        out.putInt(p.getArmour());
+        out.putInt(p.getCoin());
+        out.putInt(p.getPotionsNumber());
+        out.putShort((short) p.getX());
+        out.putShort((short) p.getY());
+    }
+
+    /**
+     * Reads the game values of a save other than score, kills and turns
+     */
+    private static void readGameValues(GameEngine e, double[] into) {
+        into[0] = e.depth;
+        into[1] = e.playerClass;
+        into[2] = e.wallChance;
+        into[3] = e.monstersDmg;
+        into[4] = e.monstersMaxHealth;
+        into[5] = e.immortality ? 1 : 0;
+        into[6] = e.immortalityTurns;
+        into[7] = e.lastHP;
+        into[8] = e.oneHitKill ? 1 : 0;
+        into[9] = e.oneHitKillTurns;
+        into[10] = e.lastCoinNumber;
+    }
+
+    private void writeGameValues(ByteBuffer out) {
+        out.putInt(engine.depth);
+        out.put((byte) engine.playerClass);
+        out.putDouble(engine.wallChance);
+        out.putDouble(engine.monstersDmg);
+        out.putDouble(engine.monstersMaxHealth);
+        out.put((byte) (engine.immortality ? 1 : 0));
+        out.putInt(engine.immortalityTurns);
+        out.putDouble(engine.lastHP);
+        out.put((byte) (engine.oneHitKill ? 1 : 0));
+        out.putInt(engine.oneHitKillTurns);
+        out.putInt(engine.lastCoinNumber);
+    }
+
+    /**
+     * Applies one message to the copy of a game kept by a consumer. The engine
+     * must have the size of the logged one; a keyframe replaces its game, a
+     * delta changes it.
+     * @param copy the engine holding the copy
+     * @param message buffer positioned at the type byte of the message, left
+     * positioned after the message
+     * @throws IOException if the message is not a keyframe or delta, or a
+     * delta arrives before the first keyframe
+     */
+    public static void apply(GameEngine copy, ByteBuffer message) throws IOException {
+        byte type = message.get();
+        int length = message.getInt();
+        int end = message.position() + length;
+        if (type == GameServer.SNAPSHOT) {
+            ByteBuffer snapshot = message.slice();
+            snapshot.limit(length);
+            SaveGame.decode(copy, snapshot);
+            message.position(end);
+            return;
+        }
+        if (type != DELTA) {
+            throw new IOException("Unknown message type " + type);
+        }
+        if (copy.tiles == null || copy.monsters == null) {
+            throw new IOException("Delta before the first keyframe");
+        }
+        copy.turns = message.getInt();
+        while (message.position() < end) {
+            byte tag = message.get();
+            switch (tag) {
+                case TILE: {
+                    int x = message.getShort();
+                    int y = message.getShort();
+                    TileType tile = TILE_TYPES[message.get()];
+                    copy.fov.tileChanged(x, y, copy.tiles[x][y], tile);
+                    copy.blocked.tileChanged(x, y, tile);
+                    copy.tiles[x][y] = tile;
+                    break;
+                }
+                case MONSTER_MOVE: {
+                    Entity m = copy.monsters[message.getShort()];
+                    int x = message.getShort();
+                    m.setPosition(x, message.getShort());
+                    break;
+                }
+                case MONSTER_HEALTH:
+                    copy.monsters[message.getShort()].setHealth(message.getDouble());
+                    break;
+                case MONSTER_GONE:
+                    copy.monsters[message.getShort()] = null;
+                    break;
+                case PLAYER:
+                    copy.player = readPlayer(message);
+                    break;
+                case PLAYER_MOVE: {
+                    int x = message.getShort();
+                    copy.player.setPosition(x, message.getShort());
+                    break;
+                }
+                case PLAYER_HEALTH:
+                    copy.player.setHealth(message.getDouble());
+                    break;
+                case PLAYER_GONE:
+                    copy.player = null;
+                    break;
+                case SCORE:
+                    copy.score = message.getInt();
+                    copy.monstersKilled = message.getInt();
+                    break;
+                case GAME:
+                    copy.depth = message.getInt();
+                    copy.playerClass = message.get();
+                    copy.playerClassName = GameEngine.className(copy.playerClass);
+                    copy.wallChance = message.getDouble();
+                    copy.monstersDmg = message.getDouble();
+                    copy.monstersMaxHealth = message.getDouble();
+                    copy.immortality = message.get() != 0;
+                    copy.immortalityTurns = message.getInt();
+                    copy.lastHP = message.getDouble();
+                    copy.oneHitKill = message.get() != 0;
+                    copy.oneHitKillTurns = message.getInt();
+                    copy.lastCoinNumber = message.getInt();
+                    break;
+                default:
+                    throw new IOException("Unknown delta record " + tag);
+            }
+        }
+        copy.activation.clear(); // monsters were moved behind its back
+        copy.updateDisplay(copy.player);
+    }
+
+    private static PlayerUtilities readPlayer(ByteBuffer in) {
+        double maxHealth = in.getDouble();
+        double health = in.getDouble();
+        double dmg = in.getDouble();
+        double dodge = in.getDouble();
+        double critChance = in.getDouble();
+        double crit = in.getDouble();
+        int armour = in.getInt();
+        int coin = in.getInt();
+        int potions = in.getInt();
+        int x = in.getShort();
+        int y = in.getShort();
+        PlayerUtilities p = new PlayerUtilities(maxHealth, armour, dmg, dodge, critChance, crit, x, y,
+                Entity.EntityType.PLAYER);
+        p.setHealth(health);
+        p.setCoin(coin);
+        p.setPotionsNumber(potions);
+        return p;
+    }
+
+    private static ByteBuffer reserve(ByteBuffer out, int bytes) {
+        if (out.remaining() >= bytes) {
+            return out;
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+        out.flip();
+        bigger.put(out);
+        return bigger;
+    }
+
+    /**
+     * Plays random games on an engine, streams them through a change log into
+     * a second engine and checks after every command that both hold the same
+     * game. Reports the size of keyframes and deltas per turn.
+     *
+     * Usage: ChangeLog [commands] [seed]
+     */
+    public static void main(String[] args) throws IOException {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        Random random = new Random(seed);
+        GameEngine live = new GameEngine(null, GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT,
+                new GameRandom(seed));
+        GameEngine copy = new GameEngine(null, GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT,
+                new GameRandom(0));
+        ChangeLog log = new ChangeLog(live);
+        ByteBuffer stream = ByteBuffer.allocate(4096);
+        int[] deltaSizes = new int[commands];
+        int deltas = 0;
+        long deltaBytes = 0;
+        int keyframes = 0;
+        long keyframeBytes = 0;
+        int games = 1;
+        int mismatches = 0;
+        for (int i = 0; i < commands; i++) {
+            if (live.playerClass != 0 && live.player == null) {
+                // the player died: the copy follows to a new game through a keyframe
+                log.detach();
+                live = new GameEngine(null, GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT,
+                        new GameRandom(random.nextLong()));
+                log = new ChangeLog(live);
+                games++;
+            }
+            byte c = live.playerClass == 0 ? (byte) (InputJournal.KNIGHT + random.nextInt(3))
+                    : (byte) (InputJournal.LEFT + random.nextInt(5));
+            InputJournal.apply(live, c);
+            stream.clear();
+            stream = log.flush(stream);
+            int size = stream.position();
+            if (stream.get(0) == DELTA) {
+                deltaSizes[deltas++] = size;
+                deltaBytes += size;
+            } else {
+                keyframes++;
+                keyframeBytes += size;
+            }
+            stream.flip();
+            apply(copy, stream);
+            if (!sameGame(live, copy)) {
+                mismatches++;
+            }
+        }
+        int[] sizes = Arrays.copyOf(deltaSizes, deltas);
+        Arrays.sort(sizes);
+        System.out.printf("%d commands over %d games, %d mismatches between the game and its copy%n",
+                commands, games, mismatches);
+        System.out.printf("keyframes: %d, %.0f bytes each%n", keyframes, keyframeBytes / (double) keyframes);
+        System.out.printf("deltas: %d, %.1f bytes each, p50 %d, p99 %d, max %d bytes%n", deltas,
+                deltaBytes / (double) deltas, sizes[sizes.length / 2], sizes[(int) (sizes.length * 0.99)],
+                sizes[sizes.length - 1]);
+        System.out.printf("all messages: %.1f bytes per command, against %.0f for a keyframe every command%n",
+                (keyframeBytes + deltaBytes) / (double) commands, keyframeBytes / (double) keyframes);
+    }
+
+    /**
+     * Compares two games by their save encoding, without the state of the
+     * random number generator, the active monsters and the stored floors,
+     * which a copy does not need
+     */
+    private static boolean sameGame(GameEngine a, GameEngine b) {
+        b.rng.setState(a.rng.getState());
+        if (a.monsters != null && b.monsters != null) {
+            boolean[] active = new boolean[a.monsters.length];
+            for (int i = 0; i < active.length; i++) {
+                active[i] = a.activation.isActive(a, i);
+            }
+            b.activation.restore(b, active);
+        }
+        ByteBuffer[] x = SaveGame.encode(a, false);
+        ByteBuffer[] y = SaveGame.encode(b, false);
+        return Arrays.equals(x, y);
+    }
+}
@@ -0,0 +1,143 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Point;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The ClassicGenerator class is the original level generator of the game.
+ * Every tile is chosen at random: a fountain, a shop, a coin, a wall with the
+ * game's wall chance, or floor, with the chances of the game's Balance. The
+ * edges of the map are walls with a few holes on each side to let the player
+ * get to the other side of the map. Big maps are filled in regions at once,
+ * see Regions.
+ * @author sberk
+ */
+class ClassicGenerator implements LevelGenerator {
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a generator using the common fork-join pool for big maps
+     */
+    ClassicGenerator() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a generator using a pool for big maps, so the number of threads
+     * can be chosen
+     * @param pool pool the regions of big maps are filled in
+     */
+    ClassicGenerator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public TileType[][] generate(int width, int height, Random rng, double wallChance, Balance balance) {
+        TileType[][] level = new TileType[width][height];
+        if (Regions.worthSplitting(width, height)) {
+            Regions.fill(level, rng.nextLong(), pool, (tiles, region) -> fillRegion(tiles, region, wallChance, balance));
+        } else {
+            fill(level, rng, wallChance, balance);
+        }
+
+        // This loop generates walls on the sides
+        for(int i = 0; i < height; i++){
+            level[0][i] = TileType.WALL;
+            level[width-1][i] = TileType.WALL;
+        }
+
+        // This loop generates walls on the top and bottom
+        for(int i = 0; i < width; i++){
+            level[i][0] = TileType.WALL;
+            level[i][height-1] = TileType.WALL;
+        }
+
+        // This loop makes a holes on sides, to let player get on the other side of map
+        for(int i = 0; i < 3; i++) {
+            Point xyz = new Point(rng.nextInt(width-1), rng.nextInt(height-1));
+            //Holes on the left and right
+            level[0][(int) xyz.getY()] = TileType.FLOOR;
+            level[width-1][(int) xyz.getY()] = TileType.FLOOR;
+
+            //Holes on the top and bottom
+            level[(int) xyz.getX()][0] = TileType.FLOOR;
+            level[(int) xyz.getX()][height-1] = TileType.FLOOR;
+
+            //Fills corners of map with wall
+            level[0][0] = TileType.WALL;
+            level[width-1][0] = TileType.WALL;
+            level[0][height-1] = TileType.WALL;
+            level[width-1][height-1] = TileType.WALL;
+        }
+        return level;
+    }
+
+    /**
+     * Fills a small map tile by tile with the game's random number generator
+     */
+    private void fill(TileType[][] level, Random rng, double wallChance, Balance balance) {
+        int width = level.length;
+        int height = level[0].length;
+        boolean fountainSet = false; // used to remember if there is a fountain on map, to generate only one per levelt
+        boolean shopSet = false; // used to remember if there is a shop on map, to generate only one per level
+        // This loop randomly generates fountain, coins, walls and floor
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                double f = rng.nextDouble();
+                if (f < balance.fountainChance && !fountainSet) { // spawing of fountain
+                    level[i][j] = TileType.FOUNTAIN_FULL;
+                    fountainSet = true;
+                } else if (f < balance.shopARChance && !shopSet) { // spawning of shop with armour
+                    level[i][j] = TileType.SHOPAR;
+                    shopSet = true;
+                } else if (f < balance.shopHPChance && !shopSet) { // spawning of shop with potions
+                    level[i][j] = TileType.SHOPHP;
+                    shopSet = true;
+                } else if (f < balance.coinChance) { // spawning of coin
+                    level[i][j] = TileType.COIN;
+                } else if (f < wallChance) { // spawning of wall
+                    level[i][j] = TileType.WALL;
+                } else {
+                    level[i][j] = TileType.FLOOR;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills a region of a big map as fill does the whole map, with the random
+     * number generator of the region
+     */
+    private void fillRegion(TileType[][] level, Regions.Region region, double wallChance, Balance balance) {
+        int height = level[0].length;
+        for (int i = region.x0; i < region.x1; i++) {
+            for (int j = region.y0; j < region.y1; j++) {
+                double f = region.random.nextDouble();
+                if (f < balance.fountainChance && region.fountain < 0) {
+                    level[i][j] = TileType.FOUNTAIN_FULL;
+                    region.fountain = i * height + j;
+                } else if (f < balance.shopARChance && region.shop < 0) {
+                    level[i][j] = TileType.SHOPAR;
+                    region.shop = i * height + j;
+                } else if (f < balance.shopHPChance && region.shop < 0) {
+                    level[i][j] = TileType.SHOPHP;
+                    region.shop = i * height + j;
+                } else if (f < balance.coinChance) {
+                    level[i][j] = TileType.COIN;
+                } else if (f < wallChance) {
+                    level[i][j] = TileType.WALL;
+                } else {
+                    level[i][j] = TileType.FLOOR;
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "classic";
+    }
+}
@@ -2,6 +2,7 @@ package uk.ac.bradford.dungeongame;
 
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.IOException;
 
 /**
  * This class handles keyboard events (key presses) captured by a GameGUI object
@@ -15,6 +16,8 @@ public class DungeonInputHandler implements KeyListener {
 
     GameEngine engine;      //GameEngine that this class calls methods from
     
+    InputJournal journal;   //journal the commands are recorded to, null if the session is not recorded
+    
     /**
      * Constructor that forms a connection between a DungeonInputHandler object and
      * a GameEngine object. The GameEngine object registered here is the one that will
@@ -40,32 +43,64 @@ public class DungeonInputHandler implements KeyListener {
      * pressed method calls a method to use a health potion. After starting game
      * method handles player class selection, if 1 or 2 or 3 is pressed method
      * will call corresponding method for class choice. If player is dead,
-     * pressing any button makes game close.
+     * pressing any button makes game close. F3 shows or hides the performance
+     * overlay at any time, + and - zoom the view in and out, F5 saves the game
+     * and F9 loads the last save. Game commands, loads and reloaded loot tables
+     * are recorded to the journal, if there is one; zooming is not a game
+     * command.
      *
      * @param e A KeyEvent object generated when a keyboard key is pressed
      */
     @Override
     public void keyPressed(KeyEvent e) {
-        if(engine.playerClass == 0) {
-            switch (e.getKeyCode()) {
-                case KeyEvent.VK_1: engine.playerClass = 1; engine.player = engine.spawnPlayer(); break;  //handle 1 button, choose coresponding class and spawns player
-                case KeyEvent.VK_2: engine.playerClass = 2; engine.player = engine.spawnPlayer(); break;  //handle 2 button, choose coresponding class and spawns player
-                case KeyEvent.VK_3: engine.playerClass = 3; engine.player = engine.spawnPlayer(); break;     //handle 3 button, choose coresponding class and spawns player
+        if (e.getKeyCode() == KeyEvent.VK_F3) { // shows or hides the performance overlay
+            PerformanceMonitor.toggle();
+            e.getComponent().repaint();
+            return;
+        }
+        if (e.getComponent() instanceof GameGUI) { // zooms the view
+            int key = e.getKeyCode();
+            if (key == KeyEvent.VK_PLUS || key == KeyEvent.VK_EQUALS || key == KeyEvent.VK_ADD) {
+                ((GameGUI) e.getComponent()).zoom(true);
+                return;
+            }
+            if (key == KeyEvent.VK_MINUS || key == KeyEvent.VK_SUBTRACT) {
+                ((GameGUI) e.getComponent()).zoom(false);
+                return;
             }
         }
-        if(engine.player != null) {
-            switch (e.getKeyCode()) {
-                case KeyEvent.VK_LEFT: engine.movePlayerSides(-1); engine.doTurn(); break;  //handle left arrow key
-                case KeyEvent.VK_RIGHT: engine.movePlayerSides(+1); engine.doTurn(); break;//handle right arrow
-                case KeyEvent.VK_UP: engine.movePlayerUD(-1); engine.doTurn(); break;      //handle up arrow
-                case KeyEvent.VK_DOWN: engine.movePlayerUD(+1); engine.doTurn(); break;  //handle down arrow
-                case KeyEvent.VK_H: if(engine.player.getPotionsNumber() > 0) { engine.player.useHealthPotion();  engine.doTurn(); break;}  //handle H button, use potion
+        if (e.getKeyCode() == KeyEvent.VK_F5 && engine.player != null) { // quick save
+            try {
+                SaveGame.save(engine, SaveGame.DEFAULT_FILE);
+            } catch (IOException ex) {
+                System.out.println("Exception saving game: " + ex.getMessage());
             }
+            return;
         }
-        else if(engine.playerClass != 0){ // close game if player is dead
-            switch (e.getKeyCode()) {
-                default: engine.endGame();
+        if (e.getKeyCode() == KeyEvent.VK_F9) { // quick load
+            try {
+                SaveGame.load(engine, SaveGame.DEFAULT_FILE);
+                if (journal != null) {
+                    journal.recordLoad(engine);
+                }
+            } catch (IOException ex) {
+                System.out.println("Exception loading game: " + ex.getMessage());
+            }
+            return;
+        }
+        if(engine.player == null && engine.playerClass != 0) { // close game if player is dead
+            engine.endGame();
+            return;
+        }
+        byte command = InputJournal.commandFor(e.getKeyCode()); // 1, 2, 3 choose a class, arrows move, H uses a potion
+        if (command != 0) {
+            if (engine.useCurrentLoot() && journal != null) { // the loot tables were reloaded
+                journal.recordReload(engine.lootTables);
+            }
+            if (journal != null) {
+                journal.record(command);
             }
+            InputJournal.apply(engine, command);
         }
     }
     /**
@@ -112,6 +112,13 @@ public class Entity {
             health = maxHealth;
     }
      
+    /**
+     * Sets the current health value, used when a game is loaded or copied
+     * @param health the new health
+     */
+    void setHealth(double health) {
+        this.health = health;
+    }
      /**
      * Increases max health of player
      * @param value number of health to increase maxHealth
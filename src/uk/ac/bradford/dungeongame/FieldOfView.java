@@ -0,0 +1,293 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The FieldOfView class works out which tiles the player can see, using
+ * symmetric shadowcasting: each of the four quadrants around the player is
+ * scanned row by row, and walls cast shadows on the rows behind them. Seeing is
+ * symmetric, so the player sees a tile exactly when a monster standing there
+ * would see the player. Only walls block sight, and sight ends at a radius.
+ *
+ * Results are cached by the position they were worked out from, so walking
+ * back and forth costs nothing but copying the visible tiles. A cached result
+ * is dropped only when a tile it looked at changes whether it blocks sight,
+ * for example when a monster breaks a wall. Tiles that have been seen are
+ * remembered until the level changes, for the fog of war.
+ * @author sberk
+ */
+public class FieldOfView {
+
+    /**
+     * Number of positions whose result is cached
+     */
+    static final int CACHE_SIZE = 512;
+
+    /**
+     * Maximum distance at which tiles are seen
+     */
+    private final int radius;
+
+    /**
+     * The level the results belong to. A different array means a new level.
+     */
+    private TileType[][] tiles;
+    private int width;
+    private int height;
+
+    /**
+     * Bit sets of the tiles visible now and of the tiles seen on this level,
+     * one bit per tile, column by column
+     */
+    private long[] visible = new long[0];
+    private long[] seen = new long[0];
+
+    /**
+     * Result the visible bits were set from
+     */
+    private Result current;
+
+    /**
+     * Results by cell of the position, least recently used first
+     */
+    private final LinkedHashMap<Integer, Result> cache = new LinkedHashMap<Integer, Result>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Result> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Cells collected while scanning, reused between scans
+     */
+    private int[] found = new int[64];
+    private int foundCount;
+    private int[] looked = new int[64];
+    private int lookedCount;
+
+    /**
+     * Creates a field of view
+     * @param radius maximum distance at which tiles are seen
+     */
+    FieldOfView(int radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * Works out what can be seen from a position of a level and adds it to the
+     * tiles seen on the level
+     * @param level the current level
+     * @param x X coordinate of the player
+     * @param y Y coordinate of the player
+     */
+    void update(TileType[][] level, int x, int y) {
+        long start = System.nanoTime();
+        if (level != tiles) {
+            reset(level);
+        }
+        int cell = x * height + y;
+        Result result = cache.get(cell);
+        if (result == null) {
+            result = compute(x, y);
+            cache.put(cell, result);
+        }
+        if (result != current) {
+            if (current != null) {
+                for (int c : current.visible) {
+                    visible[c >>> 6] &= ~(1L << c);
+                }
+            }
+            for (int c : result.visible) {
+                visible[c >>> 6] |= 1L << c;
+                seen[c >>> 6] |= 1L << c;
+            }
+            current = result;
+        }
+        GameMetrics.FIELD_OF_VIEW.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Called by the engine when a tile of the current level changes. Drops the
+     * cached results that looked at the tile if it started or stopped blocking
+     * sight.
+     * @param x X coordinate of the tile
+     * @param y Y coordinate of the tile
+     * @param before type of the tile before the change
+     * @param after type of the tile after the change
+     */
+    void tileChanged(int x, int y, TileType before, TileType after) {
+        if (blocks(before) == blocks(after) || tiles == null) {
+            return;
+        }
+        int cell = x * height + y;
+        Iterator<Result> results = cache.values().iterator();
+        while (results.hasNext()) {
+            Result r = results.next();
+            if (r.lookedAt(cell)) {
+                results.remove();
+            }
+        }
+        if (current != null && current.lookedAt(cell)) {
+            for (int c : current.visible) {
+                visible[c >>> 6] &= ~(1L << c);
+            }
+            current = null; // worked out again on the next update
+        }
+    }
+
+    /**
+     * Forgets all results and seen tiles, used when a level was changed
+     * without the engine knowing
+     */
+    void clear() {
+        tiles = null;
+    }
+
+    /**
+     * @return true if the tile is visible from the player's position
+     */
+    boolean isVisible(int x, int y) {
+        int c = x * height + y;
+        return tiles != null && x >= 0 && x < width && y >= 0 && y < height && (visible[c >>> 6] & 1L << c) != 0;
+    }
+
+    /**
+     * @return true if the tile has been visible since the level started
+     */
+    boolean isSeen(int x, int y) {
+        int c = x * height + y;
+        return tiles != null && x >= 0 && x < width && y >= 0 && y < height && (seen[c >>> 6] & 1L << c) != 0;
+    }
+
+    /**
+     * @return cells of the tiles visible from the player's position, column
+     * by column as x * height + y, null before the first update of a level
+     */
+    int[] getVisibleCells() {
+        return tiles == null || current == null ? null : current.visible;
+    }
+
+    private void reset(TileType[][] level) {
+        tiles = level;
+        width = level.length;
+        height = level[0].length;
+        int words = (width * height + 63) >>> 6;
+        visible = new long[words];
+        seen = new long[words];
+        cache.clear();
+        current = null;
+    }
+
+    private static boolean blocks(TileType type) {
+        return type == TileType.WALL;
+    }
+
+    /**
+     * How the column and depth of a quadrant map to map directions: the X and
+     * Y steps of one column, then of one row of depth, for north, south, east
+     * and west
+     */
+    private static final int[][] QUADRANTS = {{1, 0, 0, -1}, {1, 0, 0, 1}, {0, 1, 1, 0}, {0, 1, -1, 0}};
+
+    /**
+     * Scans the four quadrants around a position
+     */
+    private Result compute(int x, int y) {
+        foundCount = 0;
+        lookedCount = 0;
+        reveal(x, y);
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            scan(QUADRANTS[quadrant], x, y, 1, -1, 1, 1, 1);
+        }
+        return new Result(Arrays.copyOf(found, foundCount), Arrays.copyOf(looked, lookedCount));
+    }
+
+    /**
+     * Scans one row of a quadrant between two slopes and the rows behind it.
+     * Slopes are fractions so tiles on the edge of a shadow are decided
+     * exactly. A column col of row depth is on the tile whose centre is col
+     * tiles sideways and depth tiles away from the player.
+     */
+    private void scan(int[] q, int ox, int oy, int depth, int startNum, int startDen, int endNum, int endDen) {
+        if (depth > radius) {
+            return;
+        }
+        // columns from the start slope rounded half up to the end slope rounded half down
+        int minCol = Math.floorDiv(2 * depth * startNum + startDen, 2 * startDen);
+        int maxCol = -Math.floorDiv(-(2 * depth * endNum - endDen), 2 * endDen);
+        int previous = 0; // 0 - no tile yet, 1 - floor, 2 - wall
+        int rowX = ox + depth * q[2];
+        int rowY = oy + depth * q[3];
+        for (int col = minCol; col <= maxCol; col++) {
+            int tx = rowX + col * q[0];
+            int ty = rowY + col * q[1];
+            boolean inside = tx >= 0 && tx < width && ty >= 0 && ty < height;
+            boolean wall = !inside || blocks(tiles[tx][ty]);
+            if (inside) {
+                look(tx * height + ty);
+                boolean symmetric = (long) col * startDen >= (long) depth * startNum
+                        && (long) col * endDen <= (long) depth * endNum;
+                if ((wall || symmetric) && col * col + depth * depth <= radius * radius + radius) {
+                    reveal(tx, ty);
+                }
+            }
+            if (previous == 2 && !wall) {
+                startNum = 2 * col - 1; // the shadow ends at the left edge of this tile
+                startDen = 2 * depth;
+            }
+            if (previous == 1 && wall) {
+                scan(q, ox, oy, depth + 1, startNum, startDen, 2 * col - 1, 2 * depth);
+            }
+            previous = wall ? 2 : 1;
+        }
+        if (previous == 1) {
+            scan(q, ox, oy, depth + 1, startNum, startDen, endNum, endDen);
+        }
+    }
+
+    private void reveal(int x, int y) {
+        if (foundCount == found.length) {
+            found = Arrays.copyOf(found, found.length * 2);
+        }
+        found[foundCount++] = x * height + y;
+    }
+
+    private void look(int cell) {
+        if (lookedCount == looked.length) {
+            looked = Arrays.copyOf(looked, looked.length * 2);
+        }
+        looked[lookedCount++] = cell;
+    }
+
+    /**
+     * What can be seen from one position: the visible tiles and every tile
+     * that was looked at to decide it, as cell numbers. Tiles on the edge of
+     * two quadrants can be listed twice.
+     */
+    private static class Result {
+
+        final int[] visible;
+        final int[] looked;
+
+        Result(int[] visible, int[] looked) {
+            this.visible = visible;
+            this.looked = looked;
+        }
+
+        /**
+         * Searched only when a wall appears or disappears, which is rare
+         */
+        boolean lookedAt(int cell) {
+            for (int c : looked) {
+                if (c == cell) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The FloorStore class keeps the floors of the dungeon the player has left, so
+ * they can be visited again with the up stairs. Only the floor the player is
+ * on is kept as arrays; every other floor is packed into one byte array: the
+ * monster values, the monsters that are still alive, and the tiles as codes
+ * of TILE_BITS bits each, column by column. A 25x18 floor takes a few hundred
+ * bytes instead of the kilobytes of a TileType array and its monster objects,
+ * so thousands of floors fit in a small, predictable part of the heap.
+ *
+ * Floor layout (big-endian): monster max health, monster damage, monster
+ * dodge chance, number of monsters, for every monster its X and Y as shorts
+ * and, if it was hurt, its health, then the packed tiles. The top bit of X
+ * is set for hurt monsters; most monsters of a deep floor were never reached
+ * and take four bytes.
+ *
+ * Usage: FloorStore [depth] descends to the given depth and reports the memory
+ * taken by the stored floors.
+ * @author sberk
+ */
+public class FloorStore {
+
+    private static final TileType[] TILE_TYPES = TileType.values();
+
+    /**
+     * Bits used by the code of one tile, enough for every TileType
+     */
+    static final int TILE_BITS = 32 - Integer.numberOfLeadingZeros(TILE_TYPES.length - 1);
+
+    private static final int HEADER_BYTES = 8 * 3 + 4;
+    private static final int MONSTER_BYTES = 2 * 2;
+    private static final int HEALTH_BYTES = 8;
+    private static final int HURT = 0x8000;
+
+    /**
+     * Packed floors by depth, in order of depth so games with the same floors
+     * are saved the same way
+     */
+    private final TreeMap<Integer, byte[]> floors = new TreeMap<Integer, byte[]>();
+
+    /**
+     * Total size of the packed floors in bytes
+     */
+    private long bytes;
+
+    /**
+     * Packs the current floor of an engine and keeps it for a depth. The
+     * engine's arrays are left as they are.
+     * @param depth depth of the floor
+     * @param engine the engine whose current floor is stored
+     */
+    void store(int depth, GameEngine engine) {
+        Entity[] monsters = engine.monsters == null ? new Entity[0] : engine.monsters;
+        int alive = 0;
+        int hurt = 0;
+        double dodge = 0.1;
+        for (Entity m : monsters) {
+            if (m != null) {
+                alive++;
+                dodge = m.getDodgeChance();
+                if (m.getHealth() != engine.monstersMaxHealth) {
+                    hurt++;
+                }
+            }
+        }
+        int width = engine.dungeonWidth;
+        int height = engine.dungeonHeight;
+        int tileBytes = (int) (((long) width * height * TILE_BITS + 7) / 8);
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + alive * MONSTER_BYTES + hurt * HEALTH_BYTES + tileBytes);
+        out.putDouble(engine.monstersMaxHealth);
+        out.putDouble(engine.monstersDmg);
+        out.putDouble(dodge);
+        out.putInt(alive);
+        for (Entity m : monsters) {
+            if (m != null) {
+                boolean isHurt = m.getHealth() != engine.monstersMaxHealth;
+                out.putShort((short) (m.getX() | (isHurt ? HURT : 0)));
+                out.putShort((short) m.getY());
+                if (isHurt) {
+                    out.putDouble(m.getHealth());
+                }
+            }
+        }
+        // codes are written from the lowest bit up, a byte at a time
+        int buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < width; i++) {
+            TileType[] column = engine.tiles[i];
+            for (int j = 0; j < height; j++) {
+                buffer |= column[j].ordinal() << bits;
+                bits += TILE_BITS;
+                while (bits >= 8) {
+                    out.put((byte) buffer);
+                    buffer >>>= 8;
+                    bits -= 8;
+                }
+            }
+        }
+        if (bits > 0) {
+            out.put((byte) buffer);
+        }
+        put(depth, out.array());
+    }
+
+    /**
+     * Unpacks a stored floor into an engine as its current floor and forgets
+     * it. The engine's spawn points are not changed.
+     * @param depth depth of the floor
+     * @param engine the engine to load the floor into
+     * @return false if no floor is stored for the depth
+     */
+    boolean restore(int depth, GameEngine engine) {
+        byte[] floor = floors.remove(depth);
+        if (floor == null) {
+            return false;
+        }
+        bytes -= floor.length;
+        ByteBuffer in = ByteBuffer.wrap(floor);
+        double maxHealth = in.getDouble();
+        double dmg = in.getDouble();
+        double dodge = in.getDouble();
+        Entity[] monsters = new Entity[in.getInt()];
+        for (int i = 0; i < monsters.length; i++) {
+            int x = in.getShort() & 0xFFFF;
+            int y = in.getShort();
+            monsters[i] = new Entity(maxHealth, dmg, dodge, x & ~HURT, y, Entity.EntityType.MONSTER);
+            if ((x & HURT) != 0) {
+                monsters[i].setHealth(in.getDouble());
+            }
+        }
+        int width = engine.dungeonWidth;
+        int height = engine.dungeonHeight;
+        TileType[][] tiles = new TileType[width][height];
+        int mask = (1 << TILE_BITS) - 1;
+        int buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < width; i++) {
+            TileType[] column = tiles[i];
+            for (int j = 0; j < height; j++) {
+                while (bits < TILE_BITS) {
+                    buffer |= (in.get() & 0xFF) << bits;
+                    bits += 8;
+                }
+                column[j] = TILE_TYPES[buffer & mask];
+                buffer >>>= TILE_BITS;
+                bits -= TILE_BITS;
+            }
+        }
+        engine.monstersMaxHealth = maxHealth;
+        engine.monstersDmg = dmg;
+        engine.monsters = monsters;
+        engine.tiles = tiles;
+        return true;
+    }
+
+    /**
+     * Forgets all floors, used when a new game starts
+     */
+    void clear() {
+        floors.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return number of stored floors
+     */
+    int getFloorCount() {
+        return floors.size();
+    }
+
+    /**
+     * @return total size of the packed floors in bytes, without the map that
+     * holds them
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the stored floors for a save file: their number, then the depth,
+     * length and bytes of every floor. A packed floor is never changed once it
+     * is stored, so its bytes are wrapped instead of copied; only the number,
+     * depths and lengths are written into new buffers. The buffers must only
+     * be read.
+     * @return buffers to be written in order
+     */
+    ByteBuffer[] buffers() {
+        ByteBuffer[] buffers = new ByteBuffer[1 + floors.size() * 2];
+        ByteBuffer count = ByteBuffer.allocate(4);
+        count.putInt(0, floors.size());
+        buffers[0] = count;
+        int i = 1;
+        for (Map.Entry<Integer, byte[]> floor : floors.entrySet()) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(0, floor.getKey());
+            header.putInt(4, floor.getValue().length);
+            buffers[i++] = header;
+            buffers[i++] = ByteBuffer.wrap(floor.getValue());
+        }
+        return buffers;
+    }
+
+    /**
+     * Replaces the stored floors with the ones of a save file
+     * @param in buffer positioned on what write wrote
+     * @throws IOException if the floors are truncated
+     */
+    void read(ByteBuffer in) throws IOException {
+        clear();
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / 8) {
+            throw new IOException("Bad number of stored floors " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            int depth = in.getInt();
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                throw new IOException("Stored floor " + depth + " is truncated");
+            }
+            byte[] floor = new byte[length];
+            in.get(floor);
+            put(depth, floor);
+        }
+    }
+
+    /**
+     * Replaces the stored floors with the ones of another store, used when a
+     * save file has been read in full
+     * @param other the store whose floors are taken, left empty
+     */
+    void replace(FloorStore other) {
+        clear();
+        floors.putAll(other.floors);
+        bytes = other.bytes;
+        other.clear();
+    }
+
+    private void put(int depth, byte[] floor) {
+        byte[] old = floors.put(depth, floor);
+        if (old != null) {
+            bytes -= old.length;
+        }
+        bytes += floor.length;
+    }
+
+    public static void main(String[] args) {
+        int target = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        GameEngine engine = new GameEngine(null, GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT,
+                new GameRandom(1));
+        engine.playerClass = 1;
+        engine.player = engine.spawnPlayer();
+        engine.immortality = true;
+        engine.immortalityTurns = Integer.MAX_VALUE;
+        long start = System.nanoTime();
+        while (engine.depth < target) {
+            Point stairs = engine.findTile(TileType.STAIRS);
+            engine.player.setPosition(stairs.x, stairs.y);
+            engine.doTurn();
+        }
+        long nanos = System.nanoTime() - start;
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        FloorStore store = engine.floors;
+        int tiles = engine.dungeonWidth * engine.dungeonHeight;
+        System.out.printf("descended to depth %d in %.1f ms%n", engine.depth, nanos / 1e6);
+        System.out.printf("%d floors stored in %d bytes, %.0f bytes per floor (%d for the tiles at %d bits each)%n",
+                store.getFloorCount(), store.getBytes(), store.getBytes() / (double) store.getFloorCount(),
+                (tiles * TILE_BITS + 7) / 8, TILE_BITS);
+        System.out.printf("unpacked, the tiles of a floor alone take %d bytes of references%n",
+                tiles * 4 + engine.dungeonWidth * 16);
+        System.out.printf("heap used after GC: %.1f MB%n", heap / 1048576.0);
+    }
+}
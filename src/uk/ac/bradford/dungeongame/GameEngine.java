@@ -7,8 +7,8 @@ package uk.ac.bradford.dungeongame;
 
 import java.awt.Point;
 import static java.lang.Math.abs;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Random;
 
 /**
  * The GameEngine class is responsible for managing information about the game,
@@ -28,7 +28,7 @@ public class GameEngine {
      * chests can yield a reward when moved over.
      */
     public enum TileType {
-        WALL, FLOOR, CHEST_CLOSED, CHEST_OPENED, STAIRS, COIN, FOUNTAIN_FULL, FOUNTAIN_EMPTY, SHOPHP, SHOPAR
+        WALL, FLOOR, CHEST_CLOSED, CHEST_OPENED, STAIRS, COIN, FOUNTAIN_FULL, FOUNTAIN_EMPTY, SHOPHP, SHOPAR, STAIRS_UP
     }
 
     /**
@@ -52,12 +52,30 @@ public class GameEngine {
      */
     public static final int MAX_MONSTERS = 40;
     
+    /**
+     * The distance in tiles the player can see. Tiles further away, or hidden
+     * behind walls, are covered by the fog of war.
+     */
+    public static final int VIEW_RADIUS = 7;
+    
+    /**
+     * The distance in tiles at which monsters wake up and start chasing the
+     * player. Monsters further away only wake up when the player sees them.
+     */
+    public static final int ACTIVATION_RADIUS = 6;
+    
     /**
      * The chance of a wall being generated instead of a floor when generating
-     * the level. 1.0 is 100% chance, 0.0 is 0% chance.
+     * the first level. 1.0 is 100% chance, 0.0 is 0% chance.
      */
     public static double WALL_CHANCE = 0.05;
     
+    /**
+     * wallChance stores the chance of a wall in the current game, it starts at
+     * WALL_CHANCE and grows on every new level
+     */
+    protected double wallChance = WALL_CHANCE;
+    
      /**
      * The chance of a coin being generated instead of a floor when generating
      * the level. 1.0 is 100% chance, 0.0 is 0% chance.
@@ -76,16 +94,25 @@ public class GameEngine {
      * monsters, and to randomise movement and damage. This currently uses a seed
      * value of 123 to generate random numbers - this helps you find bugs by
      * giving you the same numbers each time you run the program. Remove
-     * the seed value if you want different results each game.
+     * the seed value if you want different results each game. Its state can be
+     * saved, so a loaded game continues with the same random numbers.
+     */
+    GameRandom rng;
+    
+    /**
+     * The width and height of levels generated by this engine, measured in
+     * tiles. They are DUNGEON_WIDTH and DUNGEON_HEIGHT unless another size was
+     * passed to the constructor, for example by benchmarks.
      */
-    private Random rng = new Random();
+    final int dungeonWidth;
+    final int dungeonHeight;
 
     /**
      * The current level number for the dungeon. As the player moves down stairs
      * the level number should be increased and can be used to increase the
      * difficulty e.g. by creating additional monsters with more health.
      */
-    protected static int depth = 1;  //current dunegeon level
+    protected int depth = 1;  //current dunegeon level
 
     /**
      * The GUI associated with a GameEngine object. THis link allows the engine
@@ -95,16 +122,16 @@ public class GameEngine {
 
     /**
      * The 2 dimensional array of tiles the represent the current dungeon level.
-     * The size of this array should use the DUNGEON_HEIGHT and DUNGEON_WIDTH
+     * The size of this array should use the dungeonHeight and dungeonWidth
      * attributes when it is created.
      */
-    private TileType[][] tiles;
+    TileType[][] tiles;
     
     /**
      * An ArrayList of Point objects used to create and track possible locations
      * to spawn the player and monsters.
      */
-    private ArrayList<Point> spawns;
+    ArrayList<Point> spawns;
 
     /**
      * An Entity object that is the current player. This object stores the state
@@ -119,162 +146,169 @@ public class GameEngine {
      * 2 - Warrior
      * 3 - Thief
      */
-    protected static int playerClass = 0;
+    protected int playerClass = 0;
     
     /**
      * playerClassName stores a name of the class
      */
-    protected static String playerClassName = "";
+    protected String playerClassName = "";
     
     /**
      * score stores score value which player gained
      */
-    protected static int score;
+    protected int score;
+    
+    /**
+     * turns stores number of turns played in this game
+     */
+    protected int turns;
+    
+    /**
+     * bestScore stores the best score of the player's class, set when the
+     * player dies and the run was added to the score store
+     */
+    protected int bestScore;
     
     /**
      * monstersDmg stores damage value of monster
      */
-    protected static double monstersDmg;
+    protected double monstersDmg;
     
     /**
      * monstersMaxHealth stores maximum health of monster
      */
-    protected static double monstersMaxHealth;
+    protected double monstersMaxHealth;
     
     /**
      * lastCoinNumber stores last number of coins which player had
      */
-    protected static int lastCoinNumber = 0;
+    protected int lastCoinNumber = 0;
     
     /**
      * fountainUsed gives an information if player used fountain
      */
-    protected static boolean fountainUsed = false;
+    protected boolean fountainUsed = false;
     
     /**
      * lastDamageToMonster stores number of damage dealt to monster
      */
-    protected static double lastDamageToMonster;
+    protected double lastDamageToMonster;
     
     /**
      * monsterDodged stores an information if monster dodged player's attack
      */
-    protected static boolean monsterDodged = false;
+    protected boolean monsterDodged = false;
     
     /**
      * criticalHit stores an information if player dealt critical hit to monster
      */
-    protected static boolean criticalHit = false;
+    protected boolean criticalHit = false;
     
     /**
      * lastDamageToPlayer stores number of damage dealt to player
      */
-    protected static double lastDamageToPlayer;
+    protected double lastDamageToPlayer;
     
     /**
      * playerDodged stores an information if player dodged attack
      */
-    protected static boolean playerDodged = false;
+    protected boolean playerDodged = false;
     
     /**
      * monstersKilled stores amount of monsters killed
      */
-    protected static int monstersKilled;
+    protected int monstersKilled;
     
     /**
      * monsterDropCoin stores an information if killed monster dropped a coin
      */
-    protected static boolean monsterDropCoin = false;
+    protected boolean monsterDropCoin = false;
     
     /**
      * monsterDropHP stores an information if killed monster dropped health potion
      */
-    protected static boolean monsterDropHP = false;
+    protected boolean monsterDropHP = false;
     
     /**
-     * monsterHPChance stores percentage chance of dropping a health potion from monster
+     * lootAmount stores the amount of the last item from a chest, a monster
+     * or a shop, to print it on screen
      */
-    protected static double monsterHPChance = 0.15;
-    
-    /**
-     * monsterCoinChance stores percentage chance of dropping a coin from monster
-     */
-    protected static double monsterCoinChance = 0.4;
+    protected double lootAmount;
     
     /**
      * nextDepth stores an information if player is on a next depth level
      */
-    protected static boolean nextDepth = false;
+    protected boolean nextDepth = false;
     
     /**
      * increasedDmg stores an information if player received damage increase from chest
      */
-    protected static boolean increasedDmg = false;
+    protected boolean increasedDmg = false;
     
     /**
      * increasedCritDmg stores an information if player received critical damage increase from chest
      */
-    protected static boolean increasedCritDmg = false;
+    protected boolean increasedCritDmg = false;
     
     /**
      * increasedCritDmgChance stores an information if player received critical damage chance increase from chest
      */
-    protected static boolean increasedCritDmgChance = false;
+    protected boolean increasedCritDmgChance = false;
     
     /**
      * increasedHealth stores an information if player received health increase from chest
      */
-    protected static boolean increasedHealth = false;
+    protected boolean increasedHealth = false;
     
     /**
      * increasedHealthPotion stores an information if player received health potion from chest
      */
-    protected static boolean receivedHealthPotion = false;
+    protected boolean receivedHealthPotion = false;
     
     /**
      * increasedMaxHealth stores an information if player received max health increase from chest
      */
-    protected static boolean increasedMaxHealth = false;
+    protected boolean increasedMaxHealth = false;
     
     /**
      * increasedArmour stores an information if player received armour increase from chest
      */
-    protected static boolean increasedArmour = false;
+    protected boolean increasedArmour = false;
     
     /**
      * increasedDodge stores an information if player received dodge chance increase from chest
      */
-    protected static boolean increasedDodge = false;
+    protected boolean increasedDodge = false;
 
     /**
      * immortality stores an information if player is immortal
      */
-    protected static boolean immortality = false;
+    protected boolean immortality = false;
     
     /**
      * lastHP stores number of health which player had before becoming immortal
      */
-    protected static double lastHP;
+    protected double lastHP;
   
     /**
      * monstersKill stores an information if player received item which kills all monsters on map
      */
-    protected static boolean monsterKill = false;
+    protected boolean monsterKill = false;
     
     /**
      * oneHitKill stores an information if player received item with which player kill every monster with one hit
      */
-    protected static boolean oneHitKill = false;
+    protected boolean oneHitKill = false;
     
     /**
      * immortalityTurns stores number of how many immortal turns left
      */
-    protected static int immortalityTurns;
+    protected int immortalityTurns;
     
     /**
      * oneHitKillTurns stores number of how many one hit kill turns left
      */
-    protected static int oneHitKillTurns;
+    protected int oneHitKillTurns;
     
     /**
      * SHOPHP_CHANCE stores a percentage chance of spawning a shop selling hp
@@ -289,17 +323,17 @@ public class GameEngine {
     /**
      * shopHPBuy stores an information if player bought potion from shop
      */
-    protected static boolean shopHPBuy = false;
+    protected boolean shopHPBuy = false;
     
     /**
      * shopARBuy stores an information if player bought armour from shop
      */
-    protected static boolean shopARBuy = false;
+    protected boolean shopARBuy = false;
     
     /**
      * shopNotEnough stores an information that player has not enough money to buy item from shop
      */
-    protected static boolean shopNotEnough = false;
+    protected boolean shopNotEnough = false;
 
 
     
@@ -312,7 +346,74 @@ public class GameEngine {
      * Monsters (Entity objects) that die due to player attacks can be replaced
      * with the value null in this array which removes them from the game.
      */
-    private Entity[] monsters;
+    Entity[] monsters;
+    
+    /**
+     * Saves the game in the background on every new level and every
+     * Autosaver.TURN_INTERVAL turns. null when autosaving is switched off.
+     */
+    Autosaver autosaver;
+    
+    /**
+     * Keeps the results of finished runs. null when scores are not kept.
+     */
+    ScoreStore scores;
+    
+    /**
+     * Logs changes for spectators and remote renderers. null when nobody
+     * follows the game.
+     */
+    ChangeLog changes;
+    
+    /**
+     * What the player can see and has seen on the current level
+     */
+    final FieldOfView fov = new FieldOfView(VIEW_RADIUS);
+    
+    /**
+     * Bit sets of the tiles of the current level that stop the player
+     */
+    final BlockedCells blocked = new BlockedCells();
+    
+    /**
+     * Chances of walls and items, monster and class stats of this game
+     */
+    final Balance balance;
+    
+    /**
+     * What chests, dying monsters and shops give. Reloaded tables are only
+     * used once useCurrentLoot is called, between two commands.
+     */
+    LootTables lootTables = LootTables.current();
+    
+    /**
+     * Which monsters move each turn and which monster stands on every tile
+     */
+    final MonsterActivation activation = new MonsterActivation(ACTIVATION_RADIUS);
+    
+    /**
+     * true when the player hit a monster since dead monsters were last
+     * cleaned, as only hit monsters can die
+     */
+    private boolean monsterHit;
+    
+    /**
+     * The floors the player has left, packed until the player comes back
+     */
+    final FloorStore floors = new FloorStore();
+    
+    /**
+     * Level generators used in turn by depth, from the dungeon.generators
+     * system property
+     */
+    LevelGenerator[] generators = LevelGenerator.configured();
+    
+    /**
+     * State of the random number generator when the engine was created, kept
+     * with the score of the run so it can be played again. Loading a game
+     * replaces it with the seed of the loaded run.
+     */
+    long seed;
 
     /**
      * Constructor that creates a GameEngine object and connects it with a GameGUI
@@ -321,86 +422,71 @@ public class GameEngine {
      * order to draw levels and entities to the screen.
      */
     public GameEngine(GameGUI gui) {
+        this(gui, DUNGEON_WIDTH, DUNGEON_HEIGHT, new GameRandom());
+    }
+    
+    /**
+     * Constructor that creates a GameEngine object with a given level size and
+     * random number generator. Used to run the game without a window, e.g. in
+     * benchmarks, where a seeded generator gives the same levels every time.
+     * @param gui The GameGUI object to draw to, null to run without a window
+     * @param width width of generated levels in tiles
+     * @param height height of generated levels in tiles
+     * @param rng random number generator used for all random choices
+     */
+    GameEngine(GameGUI gui, int width, int height, GameRandom rng) {
+        this(gui, width, height, rng, new Balance());
+    }
+    
+    /**
+     * Constructor that creates a GameEngine object with given balance values,
+     * used to compare how hard the game is with different values.
+     * @param gui The GameGUI object to draw to, null to run without a window
+     * @param width width of generated levels in tiles
+     * @param height height of generated levels in tiles
+     * @param rng random number generator used for all random choices
+     * @param balance chances of walls and items, monster and class stats; not
+     * changed by the engine
+     */
+    GameEngine(GameGUI gui, int width, int height, GameRandom rng, Balance balance) {
         this.gui = gui;
+        this.dungeonWidth = width;
+        this.dungeonHeight = height;
+        this.rng = rng;
+        this.seed = rng.getState();
+        this.balance = balance;
+        this.wallChance = balance.wallChance;
+        if (gui != null) {
+            gui.registerEngine(this);
+        }
         startGame();
     }
 
     /**
-     * Generates a new dungeon level. The method builds a 2D array of TileType
-     * values that will be used to draw tiles to the screen and to add a variety
-     * of elements into each level. Tiles can be floors, walls, stairs (to
-     * progress to the next level of the dungeon), chests, fountains, coins, shops. The
-     * method should contain the implementation of an algorithm to create an
-     * interesting and varied level each time it is called. It also removes
-     * walls around stairs and chests. Walls around edges of map are generated, with
-     * few holes on each sides to let player get on the other side of map.
+     * Generates a new dungeon level. The method asks the level generator for
+     * the current depth for a 2D array of TileType values that will be used to
+     * draw tiles to the screen and to add a variety of elements into each
+     * level. Tiles can be floors, walls, stairs (to progress to the next level
+     * of the dungeon), chests, fountains, coins, shops. The generator lays out
+     * walls, floor and items; this method then adds the stairs and the chest on
+     * floor tiles and removes walls around them.
      *
      * @return A 2D array of TileTypes representing the tiles in the current
      * level of the dungeon. The size of this array should use the width and
      * height of the dungeon.
      */
-    private TileType[][] generateLevel() {
-        TileType[][] level = new TileType[DUNGEON_WIDTH][DUNGEON_HEIGHT];
+    TileType[][] generateLevel() {
+        long start = System.nanoTime();
+        GameEvents.GenerateLevel event = new GameEvents.GenerateLevel();
+        event.begin();
+        LevelGenerator generator = generatorFor(depth);
+        TileType[][] level = generator.generate(dungeonWidth, dungeonHeight, rng, wallChance, balance);
         boolean stairsSet = false; // used in do-while loop when it looks for a place for stairs
         boolean chestSet = false; // used in do-while loop when it looks for a place for chest
-        boolean fountainSet = false; // used to remember if there is a fountain on map, to generate only one per levelt
-        boolean shopSet = false; // used to remember if there is a shop on map, to generate only one per level
-        // This loop randomly generates fountain, coins, walls and floor
-        for (int i = 0; i < DUNGEON_WIDTH; i++) {
-            for (int j = 0; j < DUNGEON_HEIGHT; j++) {
-                double f = rng.nextDouble();
-                if (f < FOUNTAIN_CHANCE && !fountainSet) { // spawing of fountain
-                    level[i][j] = TileType.FOUNTAIN_FULL;
-                    fountainSet = true;
-                } else if (f < SHOPAR_CHANCE && !shopSet) { // spawning of shop with armour
-                    level[i][j] = TileType.SHOPAR;
-                    shopSet = true;
-                } else if (f < SHOPHP_CHANCE && !shopSet) { // spawning of shop with potions
-                    level[i][j] = TileType.SHOPHP;
-                    shopSet = true;
-                } else if (f < COIN_CHANCE) { // spawning of coin
-                    level[i][j] = TileType.COIN;
-                } else if (f < WALL_CHANCE) { // spawning of wall
-                    level[i][j] = TileType.WALL;
-                } else {
-                    level[i][j] = TileType.FLOOR;
-                }
-            }
-        }
-        
-        // This loop generates walls on the sides
-        for(int i = 0; i < DUNGEON_HEIGHT; i++){
-            level[0][i] = TileType.WALL;
-            level[DUNGEON_WIDTH-1][i] = TileType.WALL;
-        }
-        
-        // This loop generates walls on the top and bottom
-        for(int i = 0; i < DUNGEON_WIDTH; i++){
-            level[i][0] = TileType.WALL;
-            level[i][DUNGEON_HEIGHT-1] = TileType.WALL;
-        }
-        
-        // This loop makes a holes on sides, to let player get on the other side of map
-        for(int i = 0; i < 3; i++) {
-            Point xyz = new Point(rng.nextInt(DUNGEON_WIDTH-1), rng.nextInt(DUNGEON_HEIGHT-1));
-            //Holes on the left and right
-            level[0][(int) xyz.getY()] = TileType.FLOOR;
-            level[DUNGEON_WIDTH-1][(int) xyz.getY()] = TileType.FLOOR;
-            
-            //Holes on the top and bottom
-            level[(int) xyz.getX()][0] = TileType.FLOOR;
-            level[(int) xyz.getX()][DUNGEON_HEIGHT-1] = TileType.FLOOR;
-            
-            //Fills corners of map with wall
-            level[0][0] = TileType.WALL;
-            level[DUNGEON_WIDTH-1][0] = TileType.WALL;
-            level[0][DUNGEON_HEIGHT-1] = TileType.WALL;
-            level[DUNGEON_WIDTH-1][DUNGEON_HEIGHT-1] = TileType.WALL;
-        }
         
         //Generates stairs
         do{
-        Point xy = new Point(rng.nextInt(DUNGEON_WIDTH), rng.nextInt(DUNGEON_HEIGHT));
+        Point xy = new Point(rng.nextInt(dungeonWidth), rng.nextInt(dungeonHeight));
             if(level[(int) xy.getX()][(int) xy.getY()] == TileType.FLOOR){
                 level[(int) xy.getX()][(int) xy.getY()] = TileType.STAIRS;
                 deleteWalls(xy.getX(), xy.getY(), level);
@@ -410,7 +496,7 @@ public class GameEngine {
         
         //Generates chest
         do{
-        Point xy = new Point(rng.nextInt(DUNGEON_WIDTH), rng.nextInt(DUNGEON_HEIGHT));
+        Point xy = new Point(rng.nextInt(dungeonWidth), rng.nextInt(dungeonHeight));
             if(level[(int) xy.getX()][(int) xy.getY()] == TileType.FLOOR){
                 level[(int) xy.getX()][(int) xy.getY()] = TileType.CHEST_CLOSED;
                 deleteWalls(xy.getX(), xy.getY(), level);
@@ -418,8 +504,36 @@ public class GameEngine {
             }
         }while(!chestSet);
 
+        GameMetrics.GENERATE_LEVEL.stop(start, null);
+        event.finish(this, generator);
         return level;
     }
+    /**
+     * Chooses the level generator of a depth from the schedule of generators
+     *
+     * @param depth depth of the level, starting at 1
+     * @return the generator for the level
+     */
+    LevelGenerator generatorFor(int depth) {
+        return generators[Math.floorMod(depth - 1, generators.length)];
+    }
+    
+    /**
+     * Starts using the loot tables loaded last, if they were reloaded since
+     * this engine took its tables. Called before a command of the player, so
+     * a reload never changes the tables in the middle of a turn.
+     *
+     * @return true if the engine changed its tables
+     */
+    boolean useCurrentLoot() {
+        LootTables tables = LootTables.current();
+        if (tables == lootTables) {
+            return false;
+        }
+        lootTables = tables;
+        return true;
+    }
+    
     /**
      * This method delete walls around an object of x, y coordinates. It prevents stairs and chest from being blocked
      *
@@ -428,7 +542,7 @@ public class GameEngine {
      * @param level ArrayList of tiles
      */
     private void deleteWalls(double x, double y, TileType[][] level) {
-        if ((int) x + 1 < DUNGEON_WIDTH) {
+        if ((int) x + 1 < dungeonWidth) {
             if (level[(int) x + 1][(int) y] == TileType.WALL) {
                 level[(int) x + 1][(int) y] = TileType.FLOOR;
             }
@@ -438,7 +552,7 @@ public class GameEngine {
                 level[(int) x - 1][(int) y] = TileType.FLOOR;
             }
         }
-        if ((int) y + 1 < DUNGEON_HEIGHT) {
+        if ((int) y + 1 < dungeonHeight) {
             if (level[(int) x][(int) y + 1] == TileType.WALL) {
                 level[(int) x][(int) y + 1] = TileType.FLOOR;
             }
@@ -462,17 +576,22 @@ public class GameEngine {
      * Y co-ordinates in the current level that the player or monsters can be
      * spawned in
      */
-    private ArrayList<Point> getSpawns() {
+    ArrayList<Point> getSpawns() {
+        long start = System.nanoTime();
+        GameEvents.GetSpawns event = new GameEvents.GetSpawns();
+        event.begin();
         ArrayList<Point> availableSpawns = new ArrayList<Point>();
         // This loop runs through every index of Array 'tiles' and checks if TileType equals FLOOR
         // Then it adds coordinates x = i and y = j to an ArrayList 'availableSpawns'
-        for(int i = 0; i < DUNGEON_WIDTH; i++){
-            for(int j = 0; j < DUNGEON_HEIGHT; j++) {
+        for(int i = 0; i < dungeonWidth; i++){
+            for(int j = 0; j < dungeonHeight; j++) {
                 if(tiles[i][j] == TileType.FLOOR) {
                     availableSpawns.add(new Point(i, j)); // Add floor tile coordinates to availableSpawns
                 }     
             }
         }
+        GameMetrics.GET_SPAWNS.stop(start, null);
+        event.finish(this, availableSpawns.size());
         return availableSpawns;   
     }
     /**
@@ -484,23 +603,29 @@ public class GameEngine {
      * class, setting health (depending on depth level), damage (depending on
      * depth level), chance of dodging attack and setting the X and Y position for the monster using the
      * X and Y values in the Point object removed from the spawns ArrayList.
+     * On deep floors there are fewer monsters than depth + 2 when the level has
+     * no room for them, leaving one spawn point for the player.
      *
      * @return An array of Entity objects representing the monsters for the
      * current level of the dungeon
      */
-    private Entity[] spawnMonsters() {
+    Entity[] spawnMonsters() {
+        long start = System.nanoTime();
+        GameEvents.SpawnMonsters event = new GameEvents.SpawnMonsters();
+        event.begin();
         Point xy; // Initialization of spawn coordinates
-        Entity[] arrayMonsters = new Entity[depth+2]; // Initalization of array of monsters
-        // This for loop randomly generates 'xy' point and checks if this coordinate is a floor then create new Monster Entity in array with these coordinates
+        Entity[] arrayMonsters = new Entity[Math.max(0, Math.min(depth + 2, spawns.size() - 1))]; // Initalization of array of monsters
+        double health = balance.monsterHealth + balance.monsterHealthPerDepth * depth; // 9 + depth by default
+        double damage = balance.monsterDamagePerDepth * depth; // depth by default
+        // This for loop takes a random spawn point and creates new Monster Entity in array with its coordinates
         for(int i = 0; i < arrayMonsters.length; i++) { 
-            do {
-            xy = new Point(rng.nextInt(DUNGEON_WIDTH)-1, rng.nextInt(DUNGEON_HEIGHT)-1); // Generating a point by randomizing number from range of 0 to DUNGEON_WIDTH-1 and HEIGHT-1
-            }while(!spawns.contains(xy)); // Do - While loop checks if ArrayList from method 'getSpawns()' contains point 'xy'
-            spawns.remove(xy); // removes used spawn point
-            arrayMonsters[i] = new Entity(9+depth, depth, 0.1, (int) xy.getX(), (int) xy.getY(), Entity.EntityType.MONSTER); // initalization of object Entity(health, damage, dodgechance, x, y, type)
+            xy = spawns.remove(rng.nextInt(spawns.size())); // picking a spawn point directly also works when few are left on deep floors
+            arrayMonsters[i] = new Entity(health, damage, balance.monsterDodge, (int) xy.getX(), (int) xy.getY(), Entity.EntityType.MONSTER); // initalization of object Entity(health, damage, dodgechance, x, y, type)
         }
-        monstersMaxHealth = 9+depth; // saves monster max health to use it for one hit kill option
-        monstersDmg = depth; // saves monster damage to use it in hitPlayer method
+        monstersMaxHealth = health; // saves monster max health to use it for one hit kill option
+        monstersDmg = damage; // saves monster damage to use it in hitPlayer method
+        GameMetrics.SPAWN_MONSTERS.stop(start, null);
+        event.finish(this, arrayMonsters.length, health);
         return arrayMonsters;
     }
 
@@ -515,25 +640,30 @@ public class GameEngine {
      * @return An PlayerUtilities object representing the player in the game
      */
     protected PlayerUtilities spawnPlayer() {
-        Point xy; // Initialization of spawn coordinates
-        do {
-            xy = new Point(rng.nextInt(DUNGEON_WIDTH) - 1, rng.nextInt(DUNGEON_HEIGHT) - 1); // Generating a point by randomizing number from range of 0 to DUNGEON_WIDTH-1 and HEIGHT-1
-        } while (!spawns.contains(xy)); // Do - While loop checks if ArrayList from method 'getSpawns()' contains point 'xy'
-        spawns.remove(xy); // removes used spawn position
-        if (playerClass == 1) { // Knight class
-            playerClassName = "Knight";
-            player = new PlayerUtilities(100, 100, 5, 0.1, 0.1, 3, (int) xy.getX(), (int) xy.getY(), Entity.EntityType.PLAYER); // initalization of object PlayerUtilities(maxHealth, armor, damage, dodgeChance, crit damage chance, crit damage value, x, y, type)
-        } else if (playerClass == 2) { // Warrior class
-            playerClassName = "Warrior";
-            player = new PlayerUtilities(60, 50, 15, 0.05, 0.3, 5, (int) xy.getX(), (int) xy.getY(), Entity.EntityType.PLAYER); // initalization of object PlayerUtilities(maxHealth, armor, damage, dodgeChance, crit damage chance, crit damage value, x, y, type)
-        } else if (playerClass == 3) { // Thief class
-            playerClassName = "Thief";
-            player = new PlayerUtilities(150, 100, 2, 0.3, 0.05, 2, (int) xy.getX(), (int) xy.getY(), Entity.EntityType.PLAYER); // initalization of object PlayerUtilities(maxHealth, armor, damage, dodgeChance, crit damage chance, crit damage value, x, y, type)
+        Point xy = takeRandomSpawn(-1); // random point from range of 0 to dungeonWidth-1 and HEIGHT-1
+        playerClassName = className(playerClass);
+        if (playerClass >= 1 && playerClass <= 3) { // Knight, Warrior or Thief class
+            double[] stats = balance.classes[playerClass - 1]; // 100, 100, 5, 0.1, 0.1, 3 for the Knight by default
+            player = new PlayerUtilities(stats[0], (int) stats[1], stats[2], stats[3], stats[4], stats[5], (int) xy.getX(), (int) xy.getY(), Entity.EntityType.PLAYER); // initalization of object PlayerUtilities(maxHealth, armor, damage, dodgeChance, crit damage chance, crit damage value, x, y, type)
         }
-        gui.updateDisplay(tiles, player, monsters);
+        updateDisplay(player);
         return player;
     }
     
+    /**
+     * Returns the name of a player class
+     * @param playerClass number of the class, 1 - Knight, 2 - Warrior, 3 - Thief
+     * @return name of the class, empty if no class was chosen
+     */
+    static String className(int playerClass) {
+        switch (playerClass) {
+            case 1: return "Knight";
+            case 2: return "Warrior";
+            case 3: return "Thief";
+            default: return "";
+        }
+    }
+    
     /**
      * Handles the movement of the player when attempting to move left or right
      * in the game. This method is called by the DungeonInputHandler class when
@@ -553,18 +683,19 @@ public class GameEngine {
      * numbers moves left, positive right.
      */
     public void movePlayerSides(int x) {
-        if (player != null && player.getX() + x > DUNGEON_WIDTH - 1) { // checks if player got out from map from right side
-            if (tiles[0][player.getY()] != TileType.WALL && tiles[0][player.getY()] != TileType.CHEST_OPENED && tiles[0][player.getY()] != TileType.FOUNTAIN_EMPTY && tiles[0][player.getY()] != TileType.FOUNTAIN_FULL && tiles[0][player.getY()] != TileType.CHEST_CLOSED && tiles[0][player.getY()] != TileType.SHOPAR && tiles[0][player.getY()] != TileType.SHOPHP) {
+        blocked.sync(tiles);
+        if (player != null && player.getX() + x > dungeonWidth - 1) { // checks if player got out from map from right side
+            if (!blocked.isSolid(0, player.getY())) {
                 player.setPosition(0, player.getY()); // take player back on the other side of map
                 movePlayerCheckSides(x); // calls method to check if there is a monster, coin, fountain or chest on this coordinates
             }
         } else if (player != null && player.getX() + x < 0) { // checks if player got out from map from left side
-            if (tiles[player.getX() + DUNGEON_WIDTH - 1][player.getY()] != TileType.WALL && tiles[player.getX() + DUNGEON_WIDTH - 1][player.getY()] != TileType.CHEST_OPENED && tiles[player.getX() + DUNGEON_WIDTH - 1][player.getY()] != TileType.FOUNTAIN_EMPTY && tiles[player.getX() + DUNGEON_WIDTH - 1][player.getY()] != TileType.FOUNTAIN_FULL && tiles[player.getX() + DUNGEON_WIDTH - 1][player.getY()] != TileType.CHEST_OPENED && tiles[player.getX() + DUNGEON_WIDTH - 1][player.getY()] != TileType.SHOPHP && tiles[player.getX() + DUNGEON_WIDTH - 1][player.getY()] != TileType.SHOPAR) {
-                player.setPosition(DUNGEON_WIDTH - 1, player.getY()); // take player back on the other side of map
+            if (!blocked.isSolid(player.getX() + dungeonWidth - 1, player.getY())) {
+                player.setPosition(dungeonWidth - 1, player.getY()); // take player back on the other side of map
                 movePlayerCheckSides(x); // calls method to check if there is a monster, coin, fountain or chest on this coordinates
             }
         } else {
-            if (tiles[player.getX() + x][player.getY()] != TileType.WALL && tiles[player.getX() + x][player.getY()] != TileType.CHEST_OPENED && tiles[player.getX() + x][player.getY()] != TileType.FOUNTAIN_EMPTY) {
+            if (!blocked.isBlocked(player.getX() + x, player.getY())) {
                 player.setPosition(player.getX() + x, player.getY()); // moves player right or left depending on variable x
                 movePlayerCheckSides(x); // calls method to check if there is a monster, coin, fountain or chest on this coordinates
             }
@@ -589,18 +720,19 @@ public class GameEngine {
      * numbers moves up, positive down.
      */
     public void movePlayerUD(int y) {
-        if (player != null && player.getY() + y > DUNGEON_HEIGHT - 1) {
-            if (tiles[player.getX()][0] != TileType.WALL && tiles[player.getX()][0] != TileType.CHEST_OPENED && tiles[player.getX()][0] != TileType.FOUNTAIN_EMPTY && tiles[player.getX()][0] != TileType.FOUNTAIN_FULL && tiles[player.getX()][0] != TileType.CHEST_CLOSED && tiles[player.getX()][0] != TileType.SHOPAR && tiles[player.getX()][0] != TileType.SHOPHP) {
+        blocked.sync(tiles);
+        if (player != null && player.getY() + y > dungeonHeight - 1) {
+            if (!blocked.isSolid(player.getX(), 0)) {
                 player.setPosition(player.getX(), 0); // take player back on the other side of map
                 movePlayerCheckUD(y); // calls method to check if there is a monster, coin, fountain or chest on this coordinates
             }
         } else if (player != null && player.getY() + y < 0) {
-            if (tiles[player.getX()][DUNGEON_HEIGHT - 1] != TileType.WALL && tiles[player.getX()][DUNGEON_HEIGHT - 1] != TileType.CHEST_OPENED && tiles[player.getX()][DUNGEON_HEIGHT - 1] != TileType.FOUNTAIN_EMPTY && tiles[player.getX()][DUNGEON_HEIGHT - 1] != TileType.FOUNTAIN_FULL && tiles[player.getX()][DUNGEON_HEIGHT - 1] != TileType.CHEST_CLOSED && tiles[player.getX()][DUNGEON_HEIGHT - 1] != TileType.SHOPAR && tiles[player.getX()][DUNGEON_HEIGHT - 1] != TileType.SHOPHP) {
-                player.setPosition(player.getX(), DUNGEON_HEIGHT - 1); // take player back on the other side of map
+            if (!blocked.isSolid(player.getX(), dungeonHeight - 1)) {
+                player.setPosition(player.getX(), dungeonHeight - 1); // take player back on the other side of map
                 movePlayerCheckUD(y); // calls method to check if there is a monster, coin, fountain or chest on this coordinates
             }
         } else {
-            if (tiles[player.getX()][player.getY() + y] != TileType.WALL && tiles[player.getX()][player.getY() + y] != TileType.CHEST_OPENED && tiles[player.getX()][player.getY() + y] != TileType.FOUNTAIN_EMPTY) {
+            if (!blocked.isBlocked(player.getX(), player.getY() + y)) {
                 player.setPosition(player.getX(), player.getY() + y); // moves player up or down depending on variable y
                 movePlayerCheckUD(y); // calls method to check if there is a monster, coin, fountain or chest on this coordinates
             }
@@ -611,33 +743,35 @@ public class GameEngine {
      * Handles operations like attacking monsters, opening chests, picking up
      * coins, using fountain and buying items from shop. This method is called
      * by the movePlayerSides.
+     * Moving the player back after bumping into something wraps around the
+     * edges of the map, in the same way as moving does.
      *
      * @param x Variable used to set which way player has to move, negative
      * numbers moves left, positive right.
      */
     public void movePlayerCheckSides(int x) {
         // attacking monster
-        for (int i = 0; i < monsters.length; i++) {
-            if (monsters[i] != null && (player.getX() == monsters[i].getX()) && (player.getY() == monsters[i].getY())) {
-                hitMonster(monsters[i]);
-                player.setPosition(player.getX() + (x * -1), player.getY());
-            }
+        Entity target = activation.monsterAt(this, player.getX(), player.getY());
+        if (target != null) {
+            hitMonster(target);
+            player.setPosition(Math.floorMod(player.getX() - x, dungeonWidth), player.getY());
         }
         if (tiles[player.getX()][player.getY()] == TileType.CHEST_CLOSED) {
             // opening chest
-            tiles[player.getX()][player.getY()] = TileType.CHEST_OPENED;
+            setTile(player.getX(), player.getY(), TileType.CHEST_OPENED);
             openChest();
-            player.setPosition(player.getX() + (x * -1), player.getY());
+            player.setPosition(Math.floorMod(player.getX() - x, dungeonWidth), player.getY());
         } else if (tiles[player.getX()][player.getY()] == TileType.COIN) { 
             // picking up coin
-            tiles[player.getX()][player.getY()] = TileType.FLOOR;
+            setTile(player.getX(), player.getY(), TileType.FLOOR);
             player.addCoin();
+            score += 1; // every coin is worth one point
         } else if (tiles[player.getX()][player.getY()] == TileType.FOUNTAIN_FULL) {
             // using fountain
-            tiles[player.getX()][player.getY()] = TileType.FOUNTAIN_EMPTY;
+            setTile(player.getX(), player.getY(), TileType.FOUNTAIN_EMPTY);
             player.changeHealth(player.getMaxHealth());
             fountainUsed = true;
-            player.setPosition(player.getX() + (x * -1), player.getY());
+            player.setPosition(Math.floorMod(player.getX() - x, dungeonWidth), player.getY());
         } else if (tiles[player.getX()][player.getY()] == TileType.SHOPHP || tiles[player.getX()][player.getY()] == TileType.SHOPAR) { 
             // using shop
             if (tiles[player.getX()][player.getY()] == TileType.SHOPHP) { // item which will be bought depends on TileType
@@ -645,7 +779,7 @@ public class GameEngine {
             } else {
                 buyThing(1);
             }
-            player.setPosition(player.getX() + (x * -1), player.getY());
+            player.setPosition(Math.floorMod(player.getX() - x, dungeonWidth), player.getY());
         }
     }
 
@@ -653,33 +787,35 @@ public class GameEngine {
      * Handles operations like attacking monsters, opening chests, picking up
      * coins, using fountain and buying items from shop. This method is called
      * by the movePlayerUD.
+     * Moving the player back after bumping into something wraps around the
+     * edges of the map, in the same way as moving does.
      *
      * @param y Variable used to set which way player has to move, negative
      * numbers moves up, positive down.
      */
     public void movePlayerCheckUD(int y) {
         // attacking monster
-        for (int i = 0; i < monsters.length; i++) {
-            if (monsters[i] != null && (player.getX() == monsters[i].getX()) && (player.getY() == monsters[i].getY())) {
-                hitMonster(monsters[i]);
-                player.setPosition(player.getX(), player.getY() + (y * -1));
-            }
+        Entity target = activation.monsterAt(this, player.getX(), player.getY());
+        if (target != null) {
+            hitMonster(target);
+            player.setPosition(player.getX(), Math.floorMod(player.getY() - y, dungeonHeight));
         }
         if (tiles[player.getX()][player.getY()] == TileType.CHEST_CLOSED) {
             // opening chest
-            tiles[player.getX()][player.getY()] = TileType.CHEST_OPENED;
+            setTile(player.getX(), player.getY(), TileType.CHEST_OPENED);
             openChest();
-            player.setPosition(player.getX(), player.getY() + (y * -1));
+            player.setPosition(player.getX(), Math.floorMod(player.getY() - y, dungeonHeight));
         } else if (tiles[player.getX()][player.getY()] == TileType.COIN) { 
             // picking up coin
-            tiles[player.getX()][player.getY()] = TileType.FLOOR;
+            setTile(player.getX(), player.getY(), TileType.FLOOR);
             player.addCoin();
+            score += 1; // every coin is worth one point
         } else if (tiles[player.getX()][player.getY()] == TileType.FOUNTAIN_FULL) {
             // using fountain
-            tiles[player.getX()][player.getY()] = TileType.FOUNTAIN_EMPTY;
+            setTile(player.getX(), player.getY(), TileType.FOUNTAIN_EMPTY);
             player.changeHealth(player.getMaxHealth());
             fountainUsed = true;
-            player.setPosition(player.getX(), player.getY() + (y * -1));
+            player.setPosition(player.getX(), Math.floorMod(player.getY() - y, dungeonHeight));
         } else if (tiles[player.getX()][player.getY()] == TileType.SHOPHP || tiles[player.getX()][player.getY()] == TileType.SHOPAR) { 
             // using shop
             if (tiles[player.getX()][player.getY()] == TileType.SHOPHP) { // item which will be bought depends on TileType
@@ -687,7 +823,7 @@ public class GameEngine {
             } else {
                 buyThing(1);
             }
-            player.setPosition(player.getX(), player.getY() + (y * -1));
+            player.setPosition(player.getX(), Math.floorMod(player.getY() - y, dungeonHeight));
         }
     }
     
@@ -702,6 +838,7 @@ public class GameEngine {
      * @param m The Entity which is the monster that the player is attacking
      */
     private void hitMonster(Entity m) {
+        monsterHit = true;
         double f = rng.nextDouble(); // random number used in critical damage chance and dodge chance randomization
         if(oneHitKill) { // checks if player can kill with one hit
             m.changeHealth(-(monstersMaxHealth));
@@ -721,15 +858,21 @@ public class GameEngine {
     }
 
     /**
-     * Moves all monsters on the current level. The method processes all non-null
-     * elements in the monsters array and calls the moveMonster method for each one.
-     */
-    private void moveMonsters() {
-        for(int i = 0; i < monsters.length; i++) {
-            if(monsters[i] != null){
-                moveMonster(monsters[i]);
+     * Moves the active monsters on the current level. Monsters near the player
+     * or in view are woken up first, and the moveMonster method is called for
+     * each active monster in the order of the monsters array. Dormant monsters
+     * stay where they are and cost nothing.
+     */
+    void moveMonsters() {
+        long start = System.nanoTime();
+        int count = activation.update(this);
+        int[] slots = activation.getActiveSlots();
+        for(int i = 0; i < count; i++) {
+            if(monsters[slots[i]] != null){
+                moveMonster(monsters[slots[i]]);
             }
         }
+        GameMetrics.MOVE_MONSTERS.stop(start, PerformanceMonitor.MOVE_MONSTERS);
     }
 
     /**
@@ -772,26 +915,25 @@ public class GameEngine {
     }
     
     /**
-     * Moves monster to the right or left. If monster is on player position, it
-     * deals damage and go back. If monster is on another monster it moves back.
+     * Moves monster to the right or left. If player is on the next tile, it
+     * deals damage and stays. If another monster is on the next tile it stays.
      *
      * @param m The Entity (monster) that needs to be moved
      * @param move Variable used to set which way monster has to move, negative
      * numbers moves left, positive right.
      */
     private boolean monsterMoveX(Entity m, int move) {
-        if (m.getX() + move < DUNGEON_WIDTH && m.getX() + move >= 0) {
-            if (tiles[m.getX() + move][m.getY()] == TileType.FLOOR) { // check if next tile is a floor                       
-                m.setPosition(m.getX() + move, m.getY());
-                for (int i = 0; i < monsters.length; i++) {
-                    if (monsters[i] != null && monsters[i] != m && m.getX() == monsters[i].getX() && m.getY() == monsters[i].getY()) {
-                        m.setPosition(m.getX() + (move * -1), m.getY());
-                        return false;
-                    }
+        int x = m.getX() + move;
+        if (x < dungeonWidth && x >= 0) {
+            if (tiles[x][m.getY()] == TileType.FLOOR) { // check if next tile is a floor                       
+                if (activation.monsterAt(this, x, m.getY()) != null) {
+                    return false;
                 }
-                if (player.getX() == m.getX() && player.getY() == m.getY()) {
+                if (player.getX() == x && player.getY() == m.getY()) {
                     hitPlayer();
-                    m.setPosition(m.getX() + (move * -1), m.getY());
+                } else {
+                    m.setPosition(x, m.getY());
+                    activation.moved(m, x - move, m.getY());
                 }
                 return true;
             }
@@ -801,25 +943,24 @@ public class GameEngine {
     }
     
     /**
-     * Moves monster up or down. If monster is on player position, it
-     * deals damage and go back. If monster is on another monster it moves back.
+     * Moves monster up or down. If player is on the next tile, it deals
+     * damage and stays. If another monster is on the next tile it stays.
      *
      * @param m The Entity (monster) that needs to be moved
      * @param move Variable used to set which way monster moved in moveMonster method.
      */
     private boolean monsterMoveY(Entity m, int move) {
-        if (m.getY() + move < DUNGEON_HEIGHT && m.getY() + move >= 0) {
-            if (tiles[m.getX()][m.getY() + move] == TileType.FLOOR) {
-                m.setPosition(m.getX(), m.getY() + move);
-                for (int i = 0; i < monsters.length; i++) {
-                    if (monsters[i] != null && monsters[i] != m && m.getX() == monsters[i].getX() && m.getY() == monsters[i].getY()) {
-                        m.setPosition(m.getX(), m.getY() + (move * -1));
-                        return false;
-                    }
+        int y = m.getY() + move;
+        if (y < dungeonHeight && y >= 0) {
+            if (tiles[m.getX()][y] == TileType.FLOOR) {
+                if (activation.monsterAt(this, m.getX(), y) != null) {
+                    return false;
                 }
-                if (player.getX() == m.getX() && player.getY() == m.getY()) {
+                if (player.getX() == m.getX() && player.getY() == y) {
                     hitPlayer();
-                    m.setPosition(m.getX(), m.getY() + (move * -1));
+                } else {
+                    m.setPosition(m.getX(), y);
+                    activation.moved(m, m.getX(), y - move);
                 }
                 return true;
             }
@@ -840,19 +981,51 @@ public class GameEngine {
     private void monsterMoveUD(Entity m, int move) {
         if (player.getY() >= m.getY()) { 
             if (!monsterMoveY(m, 1)) {
-                if (!monsterMoveY(m, -1) && tiles[(int) m.getX() + move][(int) m.getY()] != TileType.STAIRS) {
-                    tiles[(int) m.getX() + move][(int) m.getY()] = TileType.FLOOR;
+                if (!monsterMoveY(m, -1)) {
+                    breakWall((int) m.getX() + move, (int) m.getY());
                 }
             }
         } else if (player.getY() <= m.getY()) {
             if (!monsterMoveY(m, -1)) {
-                if (!monsterMoveY(m, 1) && tiles[(int) m.getX() + (move * -1)][(int) m.getY()] != TileType.STAIRS) {
-                    tiles[(int) m.getX() + (move * -1)][(int) m.getY()] = TileType.FLOOR;
+                if (!monsterMoveY(m, 1)) {
+                    breakWall((int) m.getX() + (move * -1), (int) m.getY());
                 }
             }
         }
     }
     
+    /**
+     * Turns the tile a monster which can't move is facing into a floor, unless
+     * it is stairs or outside of the map.
+     *
+     * @param x X coordinate of the tile
+     * @param y Y coordinate of the tile
+     */
+    private void breakWall(int x, int y) {
+        if (x >= 0 && x < dungeonWidth && y >= 0 && y < dungeonHeight && tiles[x][y] != TileType.STAIRS) {
+            setTile(x, y, TileType.FLOOR);
+        }
+    }
+    
+    /**
+     * Changes a tile of the current level and reports it to the field of view,
+     * the blocked tiles and the change log, if there is one. Used for every
+     * change to a level after it was generated.
+     *
+     * @param x X coordinate of the tile
+     * @param y Y coordinate of the tile
+     * @param type the new type of the tile
+     */
+    private void setTile(int x, int y, TileType type) {
+        fov.tileChanged(x, y, tiles[x][y], type);
+        blocked.sync(tiles);
+        blocked.tileChanged(x, y, type);
+        tiles[x][y] = type;
+        if (changes != null) {
+            changes.tile(x, y, type);
+        }
+    }
+    
      /**
      * Moves monster to the left or right. This method is used in monsterMove if
      * monster can't move up or down. If player is to the right of monster,
@@ -867,14 +1040,14 @@ public class GameEngine {
     private void monsterMoveSides(Entity m, int move) {
         if (player.getX() >= m.getX()) {
             if (!monsterMoveX(m, 1)) {
-                if (!monsterMoveX(m, -1) && tiles[(int) m.getX()][(int) m.getY() + move] != TileType.STAIRS) {
-                    tiles[(int) m.getX()][(int) m.getY() + move] = TileType.FLOOR;
+                if (!monsterMoveX(m, -1)) {
+                    breakWall((int) m.getX(), (int) m.getY() + move);
                 }
             }
         } else if (player.getX() <= m.getX()) {
             if (!monsterMoveX(m, -1)) {
-                if (!monsterMoveX(m, 1) && tiles[(int) m.getX()][(int) m.getY() + (move * -1)] != TileType.STAIRS) {
-                    tiles[(int) m.getX()][(int) m.getY() + (move * -1)] = TileType.FLOOR;
+                if (!monsterMoveX(m, 1)) {
+                    breakWall((int) m.getX(), (int) m.getY() + (move * -1));
                 }
             }
         }
@@ -913,8 +1086,14 @@ public class GameEngine {
      * monsters array are skipped. It also increase monstersKilled counter for
      * every dead monster and increases score for every dead monster. If it
      * finds dead monster method calls another method monsterDrop.
+     * Only monsters hit by the player can die, so the array is only processed
+     * in turns when the player hit one.
      */
     private void cleanDeadMonsters() {
+        if (!monsterHit) {
+            return;
+        }
+        monsterHit = false;
         for(int i = 0; i < monsters.length; i++) {
             if(monsters[i] != null && (monsters[i].getHealth() <= 0)) {
                 monsters[i] = null; // monsters with health <= 0 are set to null
@@ -926,43 +1105,178 @@ public class GameEngine {
     }
     
     /**
-     * This method handles item drop from monsters. Drop is chosen randomly.
+     * This method handles item drop from monsters. Drop is chosen randomly
+     * from the drop table of the loot tables.
      * This method is called by cleanDeadMonsters if null entry in monsters
      * array is found.
      */
     private void monsterDrop() {
-        double f = rng.nextDouble();
-        if(f < monsterHPChance) {
-            monsterDropHP = true;
-            player.givePotion();
+        LootTables.Entry loot = lootTables.drop.draw(depth, rng.nextDouble());
+        if (loot == null) {
+            return;
         }
-        else if(f < monsterCoinChance) {
+        boolean potion = loot.effect == LootTables.Effect.POTION;
+        boolean coin = loot.effect == LootTables.Effect.COIN;
+        applyLoot(loot.effect, loot.amount, !potion && !coin); // potions and coins have their own messages
+        if (potion) {
+            monsterDropHP = true;
+        } else if (coin) {
             monsterDropCoin = true;
-            player.addCoin();
         }
     }
 
     /**
      * Called in response to the player moving into a Stair tile in the game.
-     * The method increases the dungeon depth, increases score,
-     * sets nextDepth true to print level number on screen, increases wall chance, 
+     * The method stores the current floor, increases the dungeon depth and
+     * sets nextDepth true to print level number on screen. If the player was
+     * on the next floor before, it is restored and the player is placed next to
+     * its up stairs. Otherwise the method increases score, increases wall chance, 
      * generates a new level by calling the generateLevel method,
      * fills the spawns ArrayList with suitable spawn
-     * locations and spawns monsters. Finally it places the player in the new
-     * level by calling the placePlayer() method. Note that a new player object
+     * locations and spawns monsters. Then it places the player in the new
+     * level by calling the placePlayer() method with up stairs next to it.
+     * Finally it autosaves the new level. Note that a new player object
      * should not be created here unless the health of the player should be reset.
      */    
     private void descendLevel() {
+        GameEvents.LevelTransition event = new GameEvents.LevelTransition();
+        event.begin();
+        floors.store(depth, this); // keeps the floor to come back to it
         depth += 1; // increases depth level
-        score += 100; // increases score
         nextDepth = true; // gives information for GameGUI to show text 'Level depth'
-        if(WALL_CHANCE < 0.25) {
-            WALL_CHANCE += 0.005; // increases wall chance
+        boolean restored = floors.restore(depth, this);
+        if (restored) {
+            spawns = freeSpawns();
+            placePlayerNextTo(TileType.STAIRS_UP);
+        } else {
+            score += 100; // increases score
+            if(wallChance < balance.maxWallChance) {
+                wallChance += balance.wallChanceStep; // increases wall chance
+            }
+            tiles = generateLevel(); // generates new level
+            spawns = getSpawns(); // generates new available spawns
+            monsters = spawnMonsters(); // spawns monsters
+            placePlayer(); // place player somewhere on a map
+            placeUpStairs();
+        }
+        if (autosaver != null) {
+            autosaver.capture(this); // saves the new level in the background
+        }
+        event.finish(this, depth - 1, !restored);
+    }
+
+    /**
+     * Called in response to the player moving into an up Stair tile. The
+     * method stores the current floor, decreases the dungeon depth, restores
+     * the floor above and places the player next to its stairs. Score and wall
+     * chance are not changed.
+     */
+    private void ascendLevel() {
+        GameEvents.LevelTransition event = new GameEvents.LevelTransition();
+        event.begin();
+        floors.store(depth, this);
+        depth -= 1;
+        nextDepth = true;
+        floors.restore(depth, this); // the floor above was always visited
+        spawns = freeSpawns();
+        placePlayerNextTo(TileType.STAIRS);
+        if (autosaver != null) {
+            autosaver.capture(this);
+        }
+        event.finish(this, depth + 1, false);
+    }
+
+    /**
+     * Puts up stairs on a free floor tile next to the player, or on any free
+     * floor tile if there is none, so the player can go back to the floor
+     * above. Floors full of monsters have no up stairs.
+     */
+    private void placeUpStairs() {
+        Point xy = freeTileNextTo(player.getX(), player.getY());
+        if (xy == null && !spawns.isEmpty()) {
+            xy = spawns.get(rng.nextInt(spawns.size()));
         }
-        tiles = generateLevel(); // generates new level
-        spawns = getSpawns(); // generates new available spawns
-        monsters = spawnMonsters(); // spawns monsters
-        placePlayer(); // place player somewhere on a map
+        if (xy != null) {
+            spawns.remove(xy);
+            tiles[xy.x][xy.y] = TileType.STAIRS_UP;
+        }
+    }
+
+    /**
+     * Places the player on a free floor tile next to the first tile of a type,
+     * or on a random spawn point if there is no such tile. Used on floors the
+     * player comes back to.
+     *
+     * @param type type of the tile the player arrives by
+     */
+    private void placePlayerNextTo(TileType type) {
+        Point stairs = findTile(type);
+        Point xy = stairs == null ? null : freeTileNextTo(stairs.x, stairs.y);
+        if (xy == null) {
+            placePlayer();
+        } else {
+            spawns.remove(xy);
+            player.setPosition(xy.x, xy.y);
+        }
+    }
+
+    /**
+     * Looks for a floor tile left, right, above or below a tile that is not
+     * taken by a monster
+     *
+     * @param x X coordinate of the tile
+     * @param y Y coordinate of the tile
+     * @return the free tile, or null if there is none
+     */
+    private Point freeTileNextTo(int x, int y) {
+        int[][] sides = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        for (int[] side : sides) {
+            int i = x + side[0];
+            int j = y + side[1];
+            if (i >= 0 && i < dungeonWidth && j >= 0 && j < dungeonHeight && tiles[i][j] == TileType.FLOOR
+                    && activation.monsterAt(this, i, j) == null) {
+                return new Point(i, j);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the first tile of a type, column by column
+     *
+     * @param type type of the tile
+     * @return position of the tile, or null if the level has none
+     */
+    Point findTile(TileType type) {
+        for (int i = 0; i < dungeonWidth; i++) {
+            for (int j = 0; j < dungeonHeight; j++) {
+                if (tiles[i][j] == type) {
+                    return new Point(i, j);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the spawn points of a level that was loaded or restored rather
+     * than generated: the floor tiles not taken by a monster or the player
+     *
+     * @return An ArrayList containing the free floor tiles
+     */
+    ArrayList<Point> freeSpawns() {
+        ArrayList<Point> free = getSpawns();
+        boolean[] taken = new boolean[dungeonWidth * dungeonHeight];
+        for (Entity m : monsters) {
+            if (m != null) {
+                taken[m.getX() * dungeonHeight + m.getY()] = true;
+            }
+        }
+        if (player != null) {
+            taken[player.getX() * dungeonHeight + player.getY()] = true;
+        }
+        free.removeIf(p -> taken[p.x * dungeonHeight + p.y]); // one pass, keeping the order of the spawns
+        return free;
     }
 
     /**
@@ -972,28 +1286,66 @@ public class GameEngine {
      * x and y values of the Point taken from the spawns ArrayList.
      */
     private void placePlayer() {
-        Point xy; // Initialization of spawn coordinates
-        do {
-            xy = new Point(rng.nextInt(DUNGEON_WIDTH), rng.nextInt(DUNGEON_HEIGHT)); // Generating a point by randomizing number from range of 0 to DUNGEON_WIDTH and HEIGHT
-            }while(!spawns.contains(xy)); // Do - While loop checks if ArrayList from method 'getSpawns()' contains point 'xy'
-        spawns.remove(xy); // remove player spawn from available spawnpoints
+        Point xy = takeRandomSpawn(0); // random point from range of 0 to dungeonWidth and HEIGHT
         player.setPosition((int) xy.getX(), (int) xy.getY()); // place player on a map
     }
 
+    /**
+     * Draws random tiles until one is a spawn point and removes it from the
+     * spawns ArrayList. The spawn points are marked in a grid first, so every
+     * draw is checked at once instead of searching the ArrayList; on a big map
+     * with few free tiles most draws miss.
+     *
+     * @param offset added to both coordinates of every draw
+     * @return the spawn point taken
+     */
+    private Point takeRandomSpawn(int offset) {
+        boolean[] free = new boolean[dungeonWidth * dungeonHeight];
+        for (Point p : spawns) {
+            free[p.x * dungeonHeight + p.y] = true;
+        }
+        int x;
+        int y;
+        do {
+            x = rng.nextInt(dungeonWidth) + offset;
+            y = rng.nextInt(dungeonHeight) + offset;
+        } while (x < 0 || y < 0 || !free[x * dungeonHeight + y]);
+        Point xy = new Point(x, y);
+        spawns.remove(xy);
+        return xy;
+    }
+
     /**
      * Performs a single turn of the game when the user presses a key on the
      * keyboard. The method cleans dead monsters, moves any monsters still alive
      * and then checks if the player is immortal, if the player
      * kills with one hit, if the player is dead, exiting the game after an
      * appropriate output to the user is given. It checks if the player
-     * moved into a stair tile and calls the descendLevel method if it does.
+     * moved into a stair tile and calls the descendLevel method if it does,
+     * or the ascendLevel method for an up stair tile.
+     * Every Autosaver.TURN_INTERVAL turns the game is saved in the background.
      * Finally it requests the GUI to redraw the game level by passing it the
-     * tiles, player and monsters for the current level.
+     * tiles, player and monsters for the current level. The turn and each of
+     * its phases are recorded as flight recorder events (see GameEvents).
      */     
     public void doTurn() {
+        long turnStart = System.nanoTime();
+        GameEvents.Turn turnEvent = new GameEvents.Turn();
+        turnEvent.begin();
+        turns++;
+        long phaseStart = PerformanceMonitor.start();
+        GameEvents.TurnPhase phase = new GameEvents.TurnPhase();
+        phase.begin();
         cleanDeadMonsters();
+        phase.finish(this, GameEvents.CLEAN_DEAD_MONSTERS);
+        PerformanceMonitor.CLEAN_DEAD_MONSTERS.stop(phaseStart);
+        phase = new GameEvents.TurnPhase();
+        phase.begin();
         moveMonsters();
+        phase.finish(this, GameEvents.MOVE_MONSTERS);
         if (player != null) {       //checks a player object exists
+            phase = new GameEvents.TurnPhase();
+            phase.begin();
             if (immortality) { // checks if player is immortal
                 if (immortalityTurns == 0) {
                     immortality = false; // turns off immortality after 5 rounds
@@ -1009,88 +1361,221 @@ public class GameEngine {
                 }
                 oneHitKillTurns--; // decrase rounds count
             }
+            phase.finish(this, GameEvents.BUFFS);
             if (player.getHealth() < 1 && playerClass != 0) { // checks if player is dead
+                phase = new GameEvents.TurnPhase();
+                phase.begin();
                 player = null; // sets player to null, to be able to show scores
-                gui.updateDisplay(tiles, null, monsters);
+                recordScore();
+                phase.finish(this, GameEvents.DEATH_CHECK);
+                updateDisplay(null);
             } else {
                 if (tiles[player.getX()][player.getY()] == TileType.STAIRS) {
+                    phaseStart = PerformanceMonitor.start();
                     descendLevel();     //moves to next level if the player is on Stairs
+                    PerformanceMonitor.DESCEND_LEVEL.stop(phaseStart);
+                } else if (tiles[player.getX()][player.getY()] == TileType.STAIRS_UP) {
+                    phaseStart = PerformanceMonitor.start();
+                    ascendLevel();      //moves back to the floor above
+                    PerformanceMonitor.DESCEND_LEVEL.stop(phaseStart);
+                } else if (autosaver != null && turns % Autosaver.TURN_INTERVAL == 0) {
+                    autosaver.capture(this); // saves the game in the background
                 }
-                gui.updateDisplay(tiles, player, monsters);     //updates GUI
+                updateDisplay(player);     //updates GUI
             }
         }
+        GameMetrics.DO_TURN.stop(turnStart, PerformanceMonitor.TURN);
+        turnEvent.finish(this);
+    }
+    
+    /**
+     * Adds the finished run to the score store and reads the best score of the
+     * player's class for the death screen. Errors are reported on the console.
+     */
+    private void recordScore() {
+        if (scores == null) {
+            return;
+        }
+        try {
+            scores.add(new ScoreRecord(playerClass, seed, score, depth, monstersKilled, turns));
+            bestScore = scores.top(playerClass, 1).get(0).getScore();
+        } catch (IOException e) {
+            System.out.println("Exception saving score: " + e.getMessage());
+        }
     }
     
     /**
      * Method used to open chests and drop item from them. This method is called
-     * by movePlayerCheckSides and movePlayerCheckUD. It generates random number
-     * from 0 to 1 and then compare this number with percentage possibilities of
-     * dropping certain items. The items from the chests are: potion, kill of
+     * by movePlayerCheckSides and movePlayerCheckUD. It draws an item from the
+     * chest table of the loot tables, with the chances and amounts given in
+     * the loot file. By default the items from the chests are: potion, kill of
      * all monsters, player killing with one hit, player's damage increasement,
      * making player immortal, player's dodge chance increasement, giving player
      * 30 armour, player's critical damage increasement, player's max health
      * increasement, player's critical damage chance increasement.
      */
     public void openChest() {
+        GameEvents.OpenChest event = new GameEvents.OpenChest();
+        event.begin();
         double f = rng.nextDouble(); // generate random number
         score += 20; // adds score for opening chest
-        if (f < 0.3) { // gives health potion
-            player.givePotion();
-            receivedHealthPotion = true;
-        } else if (f < 0.35) { // kills all monsters
-            for (int i = 0; i < monsters.length; i++) {
-                monsters[i] = null;
-            }
-            monsterKill = true;
-        } else if (f < 0.4) { // player kills with one hit for 5 turns
-            oneHitKill = true;
-            oneHitKillTurns = 5;
-        } else if (f < 0.6) { // increases player's damage
-            player.increaseDmg(1);
-            increasedDmg = true;
-        } else if (f < 0.65) { // makes player immortal for 5 turns
-            immortalityTurns = 5;
-            lastHP = player.getHealth();
-            immortality = true;
-        } else if (f < 0.70) { // increases player's dodge chance
-            player.increaseDodgeChance(0.05);
-            increasedDodge = true;
-        } else if (f < 0.80) { // gives 30 armour
-            player.changeArmour(30);
-            increasedArmour = true;
-        } else if (f < 0.90) { // increases critical damage
-            player.increasePlayerCritDmg(1);
-            increasedCritDmg = true;
-        } else if (f < 0.95) { // increases max health
-            player.increaseMaxHealth(10);
-            increasedMaxHealth = true;
-        } else if (f < 1) { // increases critical damage chance
-            player.increasePlayerCritDmgChance(0.02);
-            increasedCritDmgChance = true;
+        LootTables.Entry loot = lootTables.chest.draw(depth, f);
+        if (loot != null) {
+            applyLoot(loot.effect, loot.amount, true);
+        }
+        event.finish(this, loot);
+    }
+    
+    /**
+     * Gives an item from a chest, a monster or a shop to the player.
+     *
+     * @param effect what the item does
+     * @param amount how much of it, as given in the loot file
+     * @param announce true to set the information printed on screen for the
+     * item, false if the caller prints its own
+     */
+    private void applyLoot(LootTables.Effect effect, double amount, boolean announce) {
+        lootAmount = amount;
+        switch (effect) {
+            case POTION: // gives health potions
+                for (int i = 0; i < (int) amount; i++) {
+                    player.givePotion();
+                }
+                receivedHealthPotion |= announce;
+                break;
+            case COIN: // gives coins, every coin is worth one point
+                for (int i = 0; i < (int) amount; i++) {
+                    player.addCoin();
+                }
+                score += (int) amount;
+                break;
+            case KILL_MONSTERS: // kills all monsters
+                for (int i = 0; i < monsters.length; i++) {
+                    monsters[i] = null;
+                }
+                monsterKill |= announce;
+                break;
+            case ONE_HIT_KILL: // player kills with one hit for some turns
+                oneHitKill = true;
+                oneHitKillTurns = (int) amount;
+                break;
+            case IMMORTALITY: // makes player immortal for some turns
+                immortalityTurns = (int) amount;
+                lastHP = player.getHealth();
+                immortality = true;
+                break;
+            case DAMAGE: // increases player's damage
+                player.increaseDmg(amount);
+                increasedDmg |= announce;
+                break;
+            case DODGE: // increases player's dodge chance
+                player.increaseDodgeChance(amount);
+                increasedDodge |= announce;
+                break;
+            case ARMOUR: // gives armour
+                player.changeArmour((int) amount);
+                increasedArmour |= announce;
+                break;
+            case CRIT_DAMAGE: // increases critical damage
+                player.increasePlayerCritDmg(amount);
+                increasedCritDmg |= announce;
+                break;
+            case CRIT_CHANCE: // increases critical damage chance
+                player.increasePlayerCritDmgChance(amount);
+                increasedCritDmgChance |= announce;
+                break;
+            case MAX_HEALTH: // increases max health
+                player.increaseMaxHealth(amount);
+                increasedMaxHealth |= announce;
+                break;
+            default:
+                break;
         }
     }
     
     /**
      * This method is used by shops in playerCheckSides and playerCheckUD while
-     * player walk into a shop.
+     * player walk into a shop. What a shop sells and its price come from the
+     * loot tables.
      *
      * @param item stores an information which item player bought 0 - health
      * potion, 1 - armour.
      */
     public void buyThing(int item) {
-        if(item==0 && player.getCoin() >= 5) {
-            player.removeCoin(5);
-            shopHPBuy = true;
-            player.givePotion();
-        } else if(item==1 && player.getCoin() >= 10) {
-            player.removeCoin(10);
-            shopARBuy = true;
-            player.changeArmour(30);
+        LootTables.Offer offer = item == 0 ? lootTables.potionShop : lootTables.armourShop;
+        if (offer == null) {
+            return; // the shop sells nothing
+        }
+        if (player.getCoin() >= offer.price) {
+            player.removeCoin(offer.price);
+            applyLoot(offer.effect, offer.amount, false);
+            if (item == 0) {
+                shopHPBuy = true;
+            } else {
+                shopARBuy = true;
+            }
         } else {
             shopNotEnough = true;
         }
     }
     
+    /**
+     * Works out what the player can see and passes the current tiles, monsters
+     * and the given player to the GUI to be drawn, if there is one.
+     * @param p the player to draw, or null to draw no player
+     */
+    void updateDisplay(PlayerUtilities p) {
+        if (p != null) {
+            fov.update(tiles, p.getX(), p.getY());
+        }
+        if (gui != null) {
+            gui.updateDisplay(tiles, p, monsters);
+        }
+    }
+    
+    /**
+     * Counts monsters alive on the current level. Used by GameMetrics and
+     * GameEvents.
+     * @return number of non-null elements in the monsters array
+     */
+    int countLiveMonsters() {
+        Entity[] current = monsters;
+        int count = 0;
+        if (current != null) {
+            for (Entity m : current) {
+                if (m != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Counts floor tiles that are not taken by the player or a monster. Used by
+     * GameMetrics.
+     * @return number of free floor tiles on the current level
+     */
+    int countFreeCells() {
+        TileType[][] current = tiles;
+        if (current == null) {
+            return 0;
+        }
+        int count = 0;
+        for (int i = 0; i < current.length; i++) {
+            for (int j = 0; j < current[i].length; j++) {
+                if (current[i][j] == TileType.FLOOR) {
+                    count++;
+                }
+            }
+        }
+        PlayerUtilities p = player;
+        if (p != null && current[p.getX()][p.getY()] == TileType.FLOOR) {
+            count--;
+        }
+        return count - countLiveMonsters();
+    }
+    
     /**
      * Starts a game. This method generates a level, finds spawn positions in
      * the level, spawns monsters and the player and then requests the GUI to
@@ -1098,11 +1583,12 @@ public class GameEngine {
      * monsters.
      */
     public void startGame() {
+        floors.clear();
         tiles = generateLevel();
         spawns = getSpawns();
         monsters = spawnMonsters();
         //player = spawnPlayer();
-        gui.updateDisplay(tiles, player, monsters);
+        updateDisplay(player);
     }
      /**
      * Ends a game. This method checks if player is null and then invokes
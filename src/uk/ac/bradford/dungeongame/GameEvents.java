@@ -0,0 +1,298 @@
+package uk.ac.bradford.dungeongame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The GameEvents class holds the Java Flight Recorder events of the game, so a
+ * recording of a real game shows which phase of a turn, which level change or
+ * which frame a stutter happened in, next to the JVM's own events for garbage
+ * collection, compilation and locks. Record a game with
+ * java -XX:StartFlightRecording=filename=game.jfr ... and open the file in
+ * JDK Mission Control, or print the events with
+ * jfr print --categories "Dungeon Game" game.jfr.
+ *
+ * Every event is begun before the work it times and committed after it, but
+ * its fields are only filled in when shouldCommit() says the recording wants
+ * it. Without a recording, or with the event disabled, begin and shouldCommit
+ * do nothing, and the JIT removes the event object too, so the measuring
+ * points cost close to nothing. Events are recorded without stack traces,
+ * which would cost more than the short phases they time.
+ * @author sberk
+ */
+class GameEvents {
+
+    /**
+     * Names of the phases of a turn
+     */
+    static final String CLEAN_DEAD_MONSTERS = "cleanDeadMonsters";
+    static final String MOVE_MONSTERS = "moveMonsters";
+    static final String BUFFS = "buffs";
+    static final String DEATH_CHECK = "deathCheck";
+
+    private GameEvents() {
+    }
+
+    /**
+     * A whole call of doTurn
+     */
+    @Name("uk.ac.bradford.dungeongame.Turn")
+    @Label("Turn")
+    @Category({"Dungeon Game", "Turn"})
+    @Description("One turn of the game, from the player's command to the redraw")
+    @StackTrace(false)
+    static class Turn extends Event {
+
+        @Label("Turn Number")
+        int turn;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Monsters")
+        int monsters;
+
+        @Label("Map Width")
+        int width;
+
+        @Label("Map Height")
+        int height;
+
+        /**
+         * Fills in the fields from the engine and commits the event, if the
+         * recording wants it
+         */
+        void finish(GameEngine engine) {
+            if (shouldCommit()) {
+                turn = engine.turns;
+                depth = engine.depth;
+                monsters = engine.countLiveMonsters();
+                width = engine.dungeonWidth;
+                height = engine.dungeonHeight;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * One phase of doTurn
+     */
+    @Name("uk.ac.bradford.dungeongame.TurnPhase")
+    @Label("Turn Phase")
+    @Category({"Dungeon Game", "Turn"})
+    @Description("A phase of a turn: cleaning up dead monsters, moving monsters, counting down buffs or checking if the player died")
+    @StackTrace(false)
+    static class TurnPhase extends Event {
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Monsters")
+        int monsters;
+
+        /**
+         * Fills in the fields from the engine and commits the event, if the
+         * recording wants it
+         * @param engine the engine the phase ran in
+         * @param name one of the phase names of GameEvents
+         */
+        void finish(GameEngine engine, String name) {
+            if (shouldCommit()) {
+                phase = name;
+                depth = engine.depth;
+                monsters = engine.countLiveMonsters();
+                commit();
+            }
+        }
+    }
+
+    /**
+     * Going down or up the stairs, with the new floor generated or restored
+     */
+    @Name("uk.ac.bradford.dungeongame.LevelTransition")
+    @Label("Level Transition")
+    @Category({"Dungeon Game", "Level"})
+    @Description("Moving to another floor of the dungeon, the descendLevel or ascendLevel phase of a turn")
+    @StackTrace(false)
+    static class LevelTransition extends Event {
+
+        @Label("From Depth")
+        int fromDepth;
+
+        @Label("To Depth")
+        int toDepth;
+
+        @Label("Generated")
+        @Description("True if the floor was new, false if it was restored from the stored floors")
+        boolean generated;
+
+        @Label("Monsters")
+        int monsters;
+
+        void finish(GameEngine engine, int from, boolean newFloor) {
+            if (shouldCommit()) {
+                fromDepth = from;
+                toDepth = engine.depth;
+                generated = newFloor;
+                monsters = engine.countLiveMonsters();
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A call of generateLevel
+     */
+    @Name("uk.ac.bradford.dungeongame.GenerateLevel")
+    @Label("Generate Level")
+    @Category({"Dungeon Game", "Level"})
+    @StackTrace(false)
+    static class GenerateLevel extends Event {
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Generator")
+        String generator;
+
+        @Label("Map Width")
+        int width;
+
+        @Label("Map Height")
+        int height;
+
+        @Label("Wall Chance")
+        double wallChance;
+
+        void finish(GameEngine engine, LevelGenerator levelGenerator) {
+            if (shouldCommit()) {
+                depth = engine.depth;
+                generator = levelGenerator.getName();
+                width = engine.dungeonWidth;
+                height = engine.dungeonHeight;
+                wallChance = engine.wallChance;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A call of getSpawns
+     */
+    @Name("uk.ac.bradford.dungeongame.GetSpawns")
+    @Label("Get Spawns")
+    @Category({"Dungeon Game", "Level"})
+    @StackTrace(false)
+    static class GetSpawns extends Event {
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Spawns")
+        int spawns;
+
+        @Label("Map Width")
+        int width;
+
+        @Label("Map Height")
+        int height;
+
+        void finish(GameEngine engine, int found) {
+            if (shouldCommit()) {
+                depth = engine.depth;
+                spawns = found;
+                width = engine.dungeonWidth;
+                height = engine.dungeonHeight;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A call of spawnMonsters
+     */
+    @Name("uk.ac.bradford.dungeongame.SpawnMonsters")
+    @Label("Spawn Monsters")
+    @Category({"Dungeon Game", "Level"})
+    @StackTrace(false)
+    static class SpawnMonsters extends Event {
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Monsters")
+        int monsters;
+
+        @Label("Monster Health")
+        double health;
+
+        void finish(GameEngine engine, int count, double monsterHealth) {
+            if (shouldCommit()) {
+                depth = engine.depth;
+                monsters = count;
+                health = monsterHealth;
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A call of openChest
+     */
+    @Name("uk.ac.bradford.dungeongame.OpenChest")
+    @Label("Open Chest")
+    @Category({"Dungeon Game", "Turn"})
+    @StackTrace(false)
+    static class OpenChest extends Event {
+
+        @Label("Depth")
+        int depth;
+
+        @Label("Loot")
+        String loot;
+
+        void finish(GameEngine engine, LootTables.Entry entry) {
+            if (shouldCommit()) {
+                depth = engine.depth;
+                loot = entry == null ? "none" : entry.effect.name();
+                commit();
+            }
+        }
+    }
+
+    /**
+     * A call of Canvas.paintComponent
+     */
+    @Name("uk.ac.bradford.dungeongame.Paint")
+    @Label("Paint")
+    @Category({"Dungeon Game", "Drawing"})
+    @Description("Drawing one frame of the game window")
+    @StackTrace(false)
+    static class Paint extends Event {
+
+        @Label("Canvas Width")
+        int width;
+
+        @Label("Canvas Height")
+        int height;
+
+        @Label("Monsters")
+        int monsters;
+
+        void finish(int canvasWidth, int canvasHeight, Entity[] drawn) {
+            if (shouldCommit()) {
+                width = canvasWidth;
+                height = canvasHeight;
+                monsters = drawn == null ? 0 : drawn.length;
+                commit();
+            }
+        }
+    }
+}
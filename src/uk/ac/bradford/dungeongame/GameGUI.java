@@ -1,15 +1,15 @@
 package uk.ac.bradford.dungeongame;
 
 import java.awt.Color;
+import java.awt.EventQueue;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.*;
-import java.io.File;
-import java.io.IOException;
 import static java.lang.Math.abs;
-import javax.imageio.ImageIO;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import uk.ac.bradford.dungeongame.GameEngine.TileType;
@@ -85,11 +85,33 @@ public class GameGUI extends JFrame {
     public void updateDisplay(TileType[][] tiles, PlayerUtilities player, Entity[] monsters) {
         canvas.update(tiles, player, monsters);
     }
+    
+    /**
+     * Connects the GUI with the engine whose score, depth, messages and other
+     * game values are drawn. Called by the engine when it is created.
+     * @param engine the engine to draw the game values of
+     */
+    void registerEngine(GameEngine engine) {
+        canvas.engine = engine;
+    }
+
+    /**
+     * Zooms the view of the dungeon in or out and draws it again
+     * @param in true to make tiles bigger, false to make them smaller
+     */
+    void zoom(boolean in) {
+        if (in) {
+            canvas.camera.zoomIn();
+        } else {
+            canvas.camera.zoomOut();
+        }
+        canvas.repaint();
+    }
 }
 
 /**
  * Internal class used to draw elements within a JPanel. The Canvas class loads
- * images from an asset folder inside the main project folder.
+ * images from the assets folder on the classpath using the AssetLoader.
  * @author prtrundl
  * @author sberk
  */
@@ -103,6 +125,7 @@ class Canvas extends JPanel {
     private BufferedImage player3;
     private BufferedImage monster;
     private BufferedImage stairs;
+    private BufferedImage stairs_up;
     private BufferedImage chest_closed;
     private BufferedImage chest_opened;
     private BufferedImage coin;
@@ -112,71 +135,135 @@ class Canvas extends JPanel {
     private BufferedImage shopar;
     private BufferedImage background;
     
+    /**
+     * Fonts used for messages, are created once instead of on every paint
+     */
+    private static final Font LARGE_FONT = new Font("TimesRoman", Font.BOLD, 24);
+    private static final Font LEVEL_FONT = new Font("TimesRoman", Font.BOLD, 50);
+    private static final Color FOG = new Color(0, 0, 0, 160);
+    
+    /**
+     * Completes when all tile images have been loaded and assigned
+     */
+    final CompletableFuture<Void> assetsReady = new CompletableFuture<>();
+    
+    /**
+     * The sidebar with player's statistics, cached between frames
+     */
+    private final StatsPanel statsPanel = new StatsPanel();
+    
+    /**
+     * Part of the level shown, following the player, and its zoom
+     */
+    final Camera camera = new Camera();
+    
+    GameEngine engine;          //the engine whose game values and messages are drawn
     TileType[][] currentTiles;  //the current 2D array of tiles to display
     PlayerUtilities currentPlayer;       //the current player object to be drawn
     Entity[] currentMonsters;   //the current array of monsters to draw
     
     /**
-     * Constructor that loads tile images for use in this class
+     * Constructor that starts loading tile images for use in this class. Images
+     * are decoded in the background, so the window can be shown straight away;
+     * the canvas is repainted once all of them are available.
      */
     public Canvas() {
         loadTileImages();
     }
     
     /**
-     * Loads tiles images from a fixed folder location within the project directory
+     * Loads tiles images in parallel from the assets folder on the classpath (or
+     * inside the project directory) and assigns them on the event dispatch thread
      */
     private void loadTileImages() {
-        try {
-            floor = ImageIO.read(new File("assets/floor.png")); // Floor downloaded from the Internet https://opengameart.org/content/map-tile author: Ivan voirol
-            assert floor.getHeight() == GameGUI.TILE_HEIGHT &&
-                    floor.getWidth() == GameGUI.TILE_WIDTH;
-            wall = ImageIO.read(new File("assets/wall.png"));
-            assert wall.getHeight() == GameGUI.TILE_HEIGHT &&
-                    wall.getWidth() == GameGUI.TILE_WIDTH;
-            player1 = ImageIO.read(new File("assets/player1.png"));
-            assert player1.getHeight() == GameGUI.TILE_HEIGHT
-                    && player1.getWidth() == GameGUI.TILE_WIDTH;
-            player2 = ImageIO.read(new File("assets/player2.png"));
-            assert player2.getHeight() == GameGUI.TILE_HEIGHT
-                    && player2.getWidth() == GameGUI.TILE_WIDTH;
-            player3 = ImageIO.read(new File("assets/player3.png"));
-            assert player1.getHeight() == GameGUI.TILE_HEIGHT
-                    && player3.getWidth() == GameGUI.TILE_WIDTH;
-            monster = ImageIO.read(new File("assets/monster.png"));
-            assert monster.getHeight() == GameGUI.TILE_HEIGHT &&
-                    monster.getWidth() == GameGUI.TILE_WIDTH;
-            stairs = ImageIO.read(new File("assets/stairs.png"));
-            assert stairs.getHeight() == GameGUI.TILE_HEIGHT &&
-                    stairs.getWidth() == GameGUI.TILE_WIDTH;
-            chest_closed = ImageIO.read(new File("assets/chest_closed.png"));
-            assert chest_closed.getHeight() == GameGUI.TILE_HEIGHT &&
-                    chest_closed.getWidth() == GameGUI.TILE_WIDTH;
-            chest_opened = ImageIO.read(new File("assets/chest_opened.png"));
-            assert chest_opened.getHeight() == GameGUI.TILE_HEIGHT &&
-                    chest_opened.getWidth() == GameGUI.TILE_WIDTH;
-            coin = ImageIO.read(new File("assets/coin.png"));
-            assert coin.getHeight() == GameGUI.TILE_HEIGHT &&
-                    coin.getWidth() == GameGUI.TILE_WIDTH;            
-            fountain_full = ImageIO.read(new File("assets/fountain_full.png"));
-            assert fountain_full.getHeight() == GameGUI.TILE_HEIGHT &&
-                    fountain_full.getWidth() == GameGUI.TILE_WIDTH;
-            fountain_empty = ImageIO.read(new File("assets/fountain_empty.png"));
-            assert fountain_empty.getHeight() == GameGUI.TILE_HEIGHT &&
-                    fountain_empty.getWidth() == GameGUI.TILE_WIDTH;
-            shophp = ImageIO.read(new File("assets/shophp.png"));
-            assert shophp.getHeight() == GameGUI.TILE_HEIGHT &&
-                    shophp.getWidth() == GameGUI.TILE_WIDTH;
-            shopar = ImageIO.read(new File("assets/shopar.png"));
-            assert shopar.getHeight() == GameGUI.TILE_HEIGHT
-                    && shopar.getWidth() == GameGUI.TILE_WIDTH;
-            background = ImageIO.read(new File("assets/background.png")); // Background downloaded from the Internet and modified by me. author: anonymous
-        } catch (IOException e) {
-            System.out.println("Exception loading images: " + e.getMessage());
-            e.printStackTrace(System.out);
-        }
+        final long start = System.nanoTime();
+        AssetLoader.loadAllAsync("floor.png", "wall.png", "player1.png", "player2.png", "player3.png",
+                "monster.png", "stairs.png", "chest_closed.png", "chest_opened.png", "coin.png",
+                "fountain_full.png", "fountain_empty.png", "shopHP.png", "shopAR.png", "background.png")
+                .thenAccept(images -> EventQueue.invokeLater(() -> {
+                    floor = tile(images, "floor.png"); // Floor downloaded from the Internet https://opengameart.org/content/map-tile author: Ivan voirol
+                    wall = tile(images, "wall.png");
+                    player1 = tile(images, "player1.png");
+                    player2 = tile(images, "player2.png");
+                    player3 = tile(images, "player3.png");
+                    monster = tile(images, "monster.png");
+                    stairs = tile(images, "stairs.png");
+                    stairs_up = flipped(stairs); // up stairs are the stairs upside down
+                    chest_closed = tile(images, "chest_closed.png");
+                    chest_opened = tile(images, "chest_opened.png");
+                    coin = tile(images, "coin.png");
+                    fountain_full = tile(images, "fountain_full.png");
+                    fountain_empty = tile(images, "fountain_empty.png");
+                    shophp = tile(images, "shopHP.png");
+                    shopar = tile(images, "shopAR.png");
+                    background = images.get("background.png"); // Background downloaded from the Internet and modified by me. author: anonymous
+                    StartupTimer.assetsLoaded(System.nanoTime() - start);
+                    assetsReady.complete(null);
+                    repaint();
+                }));
     }
     
+    /**
+     * Takes a tile image from the loaded images and checks it has the size of a tile
+     * @param images map of loaded images
+     * @param name file name of the tile image
+     * @return the tile image or null if it was not loaded
+     */
+    private BufferedImage tile(Map<String, BufferedImage> images, String name) {
+        BufferedImage image = images.get(name);
+        assert image == null || (image.getHeight() == GameGUI.TILE_HEIGHT
+                && image.getWidth() == GameGUI.TILE_WIDTH);
+        return image;
+    }
+    
+    /**
+     * Makes an upside down copy of an image
+     * @param image the image to flip
+     * @return the flipped copy or null if the image was not loaded
+     */
+    private static BufferedImage flipped(BufferedImage image) {
+        if (image == null) {
+            return null;
+        }
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, image.getHeight(), image.getWidth(), -image.getHeight(), null);
+        g.dispose();
+        return copy;
+    }
+
+    /**
+     * Returns the image of a type of tile
+     * @param type the type of the tile
+     * @return the image at its own size, null while images load
+     */
+    private BufferedImage tileImage(TileType type) {
+        switch (type) {
+            case FLOOR: return floor;
+            case WALL: return wall;
+            case STAIRS: return stairs;
+            case STAIRS_UP: return stairs_up;
+            case CHEST_OPENED: return chest_opened;
+            case CHEST_CLOSED: return chest_closed;
+            case COIN: return coin;
+            case FOUNTAIN_FULL: return fountain_full;
+            case FOUNTAIN_EMPTY: return fountain_empty;
+            case SHOPHP: return shophp;
+            case SHOPAR: return shopar;
+            default: return null;
+        }
+    }
+
+    /**
+     * Writes an amount of an item without decimals if it is whole
+     * @param amount the amount, from the loot tables
+     * @return the amount as text, e.g. 30 or 2.5
+     */
+    private static String amount(double amount) {
+        double rounded = Math.round(amount * 100) / 100.0;
+        return rounded == Math.rint(rounded) ? Long.toString((long) rounded) : Double.toString(rounded);
+    }
+
     /**
      * Updates the current graphics on the screen to display the tiles, player and monsters
      * @param t The 2D array of TileTypes representing the current level of the dungeon
@@ -192,24 +279,37 @@ class Canvas extends JPanel {
     
     /**
      * Override of method in super class, it draws the custom elements for this
-     * game such as the tiles, player and monsters.
+     * game such as the tiles, player and monsters. The performance overlay is
+     * drawn last when it is switched on.
      * @param g 
      */
     @Override
     public void paintComponent(Graphics g) {
+        long paintStart = System.nanoTime();
+        GameEvents.Paint event = new GameEvents.Paint();
+        event.begin();
         super.paintComponent(g);
-        drawDungeon(g);
-        drawStart(g);
-        drawStats(g);
+        if (engine != null) {
+            drawStats(g);
+            drawDungeon(g);
+            drawStart(g);
+        }
+        if (background != null) {
+            StartupTimer.frameDrawn();
+        }
+        GameMetrics.PAINT_COMPONENT.stop(paintStart, PerformanceMonitor.PAINT);
+        event.finish(getWidth(), getHeight(), currentMonsters);
+        PerformanceMonitor.frameDrawn();
+        PerformanceMonitor.draw(g);
     }
      /**
      * Draws class choice text.
      * @param g 
      */
     private void drawStart(Graphics g) {
-        if (GameEngine.playerClass == 0) {
+        if (engine.playerClass == 0) {
             g.setColor(Color.black);
-            g.setFont(new Font("TimesRoman", Font.BOLD, 24));
+            g.setFont(LARGE_FONT);
             g.drawString("Choose your class!", 250, 150);
             g.drawString("Press number on keyboard to choose", 100, 190);
             g.drawString("1. Knight - Normal HP, armour and damage", 175, 230);
@@ -221,77 +321,42 @@ class Canvas extends JPanel {
         }
     }
      /**
-     * Draws player's statistics.
+     * Draws the sidebar with player's statistics. The sidebar is cached by
+     * StatsPanel and only redrawn when a displayed value changes.
      * @param g 
      */
     private void drawStats(Graphics g) {
-         if (currentPlayer != null) {
-            g.setColor(Color.white);
-            g.setFont(new Font("TimesRoman", Font.BOLD, 13));
-            g.drawString("Player status", 806, 15);
-            g.drawString("Class: " + GameEngine.playerClassName, 806, 30);
-            g.drawString("Health: " + currentPlayer.getHealth() + "/" + currentPlayer.getMaxHealth(), 806, 45);
-            g.drawString("Armour: " + currentPlayer.getArmour() + "/" + currentPlayer.getMaxArmour(), 806, 60);
-            g.drawString("Attack damage: " + currentPlayer.getDmg(), 806, 75);
-            g.drawString("Attributes", 806, 105);
-            g.drawString("Dodge chance: " + (int) (currentPlayer.getDodgeChance() * 100) + "%", 806, 120);
-            g.drawString("Critical dmg chance: " + (int) (currentPlayer.getPlayerCritDmgChance() * 100) + "%", 806, 135);
-            g.drawString("Critical damage: " + currentPlayer.getPlayerCritDmg(), 806, 150);
-            g.drawString("Inventory", 806, 180);
-            g.drawString("Coins: " + currentPlayer.getCoin(), 806, 195);
-            g.drawString("Health potions: " + currentPlayer.getPotionsNumber() + " Use H", 806, 210);
-            g.drawString("Score: " + Integer.toString(GameEngine.score), 806, 240);
-            g.drawString("Level: " + GameEngine.depth, 806, 255);
-            g.drawString("Monsters killed: " + GameEngine.monstersKilled, 806, 270);
-            g.drawString("Wall chance: " + (GameEngine.WALL_CHANCE * 100) + "%", 806, 285);
-            g.drawString("Monster's maxhealth: " + GameEngine.monstersMaxHealth, 806, 300);
-            g.drawString("Monster's damage: " + GameEngine.monstersDmg, 806, 315);
-         }
+        statsPanel.draw(g, background, engine, currentPlayer);
     }
     
     /**
      * Draws graphical elements to the screen to display the current dungeon level
      * tiles, the player and the monsters. If the tiles, player or monster objects
-     * are null they will not be drawn.
+     * are null they will not be drawn. While the player is alive only tiles the
+     * player has seen are drawn, darker when not visible now, and only visible
+     * monsters. Only the tiles and monsters in the camera's view are drawn,
+     * clipped to the left of the sidebar.
      * @param g 
      */
     private void drawDungeon(Graphics g) {
-        g.drawImage(background, 800, 0, null);
-        Graphics2D g2 = (Graphics2D) g;
+        Graphics2D g2 = (Graphics2D) g.create(0, 0, StatsPanel.X, getHeight());
+        boolean fog = currentPlayer != null; // the whole level is shown before a class is chosen and after death
+        FieldOfView fov = engine.fov;
+        int size = camera.tileSize();
         if (currentTiles != null) {
-            for (int i = 0; i < currentTiles.length; i++) {
-                for (int j = 0; j < currentTiles[i].length; j++) {
-                    if (currentTiles[i][j] != null) {   //checks a tile exists
-                        switch (currentTiles[i][j]) {
-                             case FLOOR:
-                                g2.drawImage(floor, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case WALL:
-                                g2.drawImage(wall, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case STAIRS:
-                                g2.drawImage(stairs, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case CHEST_OPENED:
-                                g2.drawImage(chest_opened, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case CHEST_CLOSED:
-                                g2.drawImage(chest_closed, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case COIN:
-                                g2.drawImage(coin, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case FOUNTAIN_FULL:
-                                g2.drawImage(fountain_full, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case FOUNTAIN_EMPTY:
-                                g2.drawImage(fountain_empty, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case SHOPHP:
-                                g2.drawImage(shophp, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
-                                break;
-                            case SHOPAR:
-                                g2.drawImage(shopar, i * GameGUI.TILE_WIDTH, j * GameGUI.TILE_HEIGHT, null);
+            camera.follow(currentTiles, currentPlayer, StatsPanel.X, getHeight());
+            for (int i = camera.firstX(); i <= camera.lastX(); i++) {
+                int x = camera.screenX(i);
+                for (int j = camera.firstY(); j <= camera.lastY(); j++) {
+                    int y = camera.screenY(j);
+                    if (fog && !fov.isSeen(i, j)) { // never seen tiles stay black
+                        g2.setColor(Color.BLACK);
+                        g2.fillRect(x, y, size, size);
+                    } else if (currentTiles[i][j] != null) {   //checks a tile exists
+                        g2.drawImage(camera.sprite(tileImage(currentTiles[i][j])), x, y, null);
+                        if (fog && !fov.isVisible(i, j)) { // remembered tiles are drawn darker
+                            g2.setColor(FOG);
+                            g2.fillRect(x, y, size, size);
                         }
                     }
                 }
@@ -299,51 +364,55 @@ class Canvas extends JPanel {
         }
         
          if (currentMonsters != null) {
+            BufferedImage monsterSprite = camera.sprite(monster);
             for (Entity mon : currentMonsters) {
-                if (mon != null) {
-                    g2.drawImage(monster, mon.getX() * GameGUI.TILE_WIDTH, mon.getY() * GameGUI.TILE_HEIGHT, null);
+                if (mon != null && camera.shows(mon.getX(), mon.getY()) && (!fog || fov.isVisible(mon.getX(), mon.getY()))) {
+                    g2.drawImage(monsterSprite, camera.screenX(mon.getX()), camera.screenY(mon.getY()), null);
                     drawHealthBar(g2, mon);
                 }
             }
         }
         // Chooses which image of player use, depending on player's class
         if (currentPlayer != null) {
-            if(GameEngine.playerClass == 1) {
+            if(engine.playerClass == 1) {
                 player=player1;
-            } else if(GameEngine.playerClass == 2) {
+            } else if(engine.playerClass == 2) {
                 player=player2;
-            } else if(GameEngine.playerClass == 3) {
+            } else if(engine.playerClass == 3) {
                 player=player3;
             }
-            g2.drawImage(player, currentPlayer.getX() * GameGUI.TILE_WIDTH, currentPlayer.getY() * GameGUI.TILE_HEIGHT, null);
+            g2.drawImage(camera.sprite(player), camera.screenX(currentPlayer.getX()), camera.screenY(currentPlayer.getY()), null);
             drawHealthBar(g2, currentPlayer);
             drawArmourBar(g2, currentPlayer);
+        }
+        g2.dispose();
+        if (currentPlayer != null) {
             g.setColor(Color.white);
-            g.setFont(new Font("TimesRoman", Font.BOLD, 13)); 
+            g.setFont(StatsPanel.STATS_FONT);
             // Prints monster dodging, critical damage to monster and damage to monster
-            if (GameEngine.monsterDodged) {
+            if (engine.monsterDodged) {
                 g.drawString("Monster dodged your attack!", 806, 530);
-                GameEngine.monsterDodged = false;
-            } else if (abs(GameEngine.lastDamageToMonster) > 0) {
-                if (GameEngine.criticalHit) {
-                    g.drawString("Critical damage to monster: " + Double.toString(abs(GameEngine.lastDamageToMonster)), 806, 530);
-                    GameEngine.lastDamageToMonster = 0;
-                    GameEngine.criticalHit = false;
+                engine.monsterDodged = false;
+            } else if (abs(engine.lastDamageToMonster) > 0) {
+                if (engine.criticalHit) {
+                    g.drawString("Critical damage to monster: " + Double.toString(abs(engine.lastDamageToMonster)), 806, 530);
+                    engine.lastDamageToMonster = 0;
+                    engine.criticalHit = false;
                 } else {
-                    g.drawString("Damage to monster: " + Double.toString(abs(GameEngine.lastDamageToMonster)), 806, 530);
-                    GameEngine.lastDamageToMonster = 0;
+                    g.drawString("Damage to monster: " + Double.toString(abs(engine.lastDamageToMonster)), 806, 530);
+                    engine.lastDamageToMonster = 0;
                 }
             }
             // Prints infomrations about immortality, player's dodging attack, damage dealt to player's health and armour
-            if(GameEngine.immortality & (GameEngine.immortalityTurns+1) > 0) {
-                g.drawString("You are immortal for " + (GameEngine.immortalityTurns+1) + " turns", 806, 570);
-            } else if (GameEngine.playerDodged) {
+            if(engine.immortality & (engine.immortalityTurns+1) > 0) {
+                g.drawString("You are immortal for " + (engine.immortalityTurns+1) + " turns", 806, 570);
+            } else if (engine.playerDodged) {
                 g.drawString("You have dodged attack!", 806, 570);
-                GameEngine.playerDodged = false;
+                engine.playerDodged = false;
             } 
-            else if(abs(GameEngine.lastDamageToPlayer) > 0) {
-                g.drawString("Damage to player health: " + Double.toString(abs(GameEngine.lastDamageToPlayer)), 806, 570);
-                GameEngine.lastDamageToPlayer = 0;
+            else if(abs(engine.lastDamageToPlayer) > 0) {
+                g.drawString("Damage to player health: " + Double.toString(abs(engine.lastDamageToPlayer)), 806, 570);
+                engine.lastDamageToPlayer = 0;
                 if(currentPlayer.getArmour() > 0) {
                     g.drawString("Damage to player armour: " + 1, 806, 550);
 
@@ -351,78 +420,81 @@ class Canvas extends JPanel {
             }
             
             // Prints information when reaching next depth level
-            if(GameEngine.nextDepth) {
-                g.setColor(Color.black);
-                g.setFont(new Font("TimesgRoman", Font.BOLD, 50));
-                g.drawString("Level: " + GameEngine.depth, 300, 300);
-                GameEngine.nextDepth = false;
+            if(engine.nextDepth) {
+                g.setColor(Color.white); // most of a new level is still black fog
+                g.setFont(LEVEL_FONT);
+                g.drawString("Level: " + engine.depth, 300, 300);
+                engine.nextDepth = false;
             }
             
             // Prints all informations about items dropped from chest, drinking potion, using fountain,
             // picking up coin, drop from monster, buying items from shop and having not enough money to buy
-            if(GameEngine.increasedDmg) {
-                g.drawString("Your damage increased by 1!", 806, 530);
-                GameEngine.increasedDmg = false;
-            } else if(GameEngine.increasedCritDmg) {
-                g.drawString("Crit. dmg increased by 1!", 806, 530);
-                GameEngine.increasedCritDmg = false;
-            } else if(GameEngine.increasedCritDmgChance) {
-                g.drawString("Crit. dmg chance inc. by 2%", 806, 530);
-                GameEngine.increasedCritDmgChance = false;
-            } else if(GameEngine.receivedHealthPotion) {
+            if(engine.increasedDmg) {
+                g.drawString("Your damage increased by " + amount(engine.lootAmount) + "!", 806, 530);
+                engine.increasedDmg = false;
+            } else if(engine.increasedCritDmg) {
+                g.drawString("Crit. dmg increased by " + amount(engine.lootAmount) + "!", 806, 530);
+                engine.increasedCritDmg = false;
+            } else if(engine.increasedCritDmgChance) {
+                g.drawString("Crit. dmg chance inc. by " + amount(engine.lootAmount * 100) + "%", 806, 530);
+                engine.increasedCritDmgChance = false;
+            } else if(engine.receivedHealthPotion) {
                 g.drawString("You have found health potion", 806, 530);
-                GameEngine.receivedHealthPotion = false; 
-            } else if(GameEngine.increasedHealth) {
+                engine.receivedHealthPotion = false; 
+            } else if(engine.increasedHealth) {
                 g.drawString("You drinked health potion, +30HP", 806, 530);
-                GameEngine.increasedHealth = false;
-            } else if(GameEngine.increasedMaxHealth) {
-                g.drawString("Your max health increased by 10!", 806, 530);
-                GameEngine.increasedMaxHealth = false;
-            } else if(GameEngine.increasedArmour) {
-                g.drawString("Your armour increased by 30!", 806, 530);
-                GameEngine.increasedArmour = false;
-            } else if(GameEngine.monsterKill) {
+                engine.increasedHealth = false;
+            } else if(engine.increasedMaxHealth) {
+                g.drawString("Your max health increased by " + amount(engine.lootAmount) + "!", 806, 530);
+                engine.increasedMaxHealth = false;
+            } else if(engine.increasedArmour) {
+                g.drawString("Your armour increased by " + amount(engine.lootAmount) + "!", 806, 530);
+                engine.increasedArmour = false;
+            } else if(engine.monsterKill) {
                 g.drawString("Monsters disappeared!", 806, 530);
-                GameEngine.monsterKill = false;
-            } else if(GameEngine.oneHitKill) {
+                engine.monsterKill = false;
+            } else if(engine.oneHitKill) {
                 g.drawString("Now you kill with one hit!", 806, 510);
-            } else if(GameEngine.increasedDodge) {
+            } else if(engine.increasedDodge) {
                 g.drawString("Your dodging skill increased!", 806, 510);
-                GameEngine.increasedDodge = false;
-            } else if(GameEngine.fountainUsed) {
+                engine.increasedDodge = false;
+            } else if(engine.fountainUsed) {
                 g.drawString("You are now full health!", 806, 530);
-                GameEngine.fountainUsed = false;
-            } else if (GameEngine.lastCoinNumber != currentPlayer.getCoin() && GameEngine.monsterDropCoin == false && GameEngine.shopARBuy == false && GameEngine.shopHPBuy == false) {
+                engine.fountainUsed = false;
+            } else if (engine.lastCoinNumber != currentPlayer.getCoin() && engine.monsterDropCoin == false && engine.shopARBuy == false && engine.shopHPBuy == false) {
                 g.drawString("You picked up a coin", 806, 530);
-                GameEngine.lastCoinNumber = currentPlayer.getCoin();
-            } else if(GameEngine.monsterDropCoin) {
+                engine.lastCoinNumber = currentPlayer.getCoin();
+            } else if(engine.monsterDropCoin) {
                 g.drawString("Monster had a coin!", 806, 480);
-                GameEngine.monsterDropCoin = false;
-                GameEngine.lastCoinNumber = currentPlayer.getCoin();
-            } else if(GameEngine.monsterDropHP) {
+                engine.monsterDropCoin = false;
+                engine.lastCoinNumber = currentPlayer.getCoin();
+            } else if(engine.monsterDropHP) {
                 g.drawString("Monster had health potion!", 806, 480);
-                GameEngine.monsterDropHP = false;
-            } else if(GameEngine.shopHPBuy) {
+                engine.monsterDropHP = false;
+            } else if(engine.shopHPBuy) {
                 g.drawString("Health potion bought", 806, 480);
-                GameEngine.shopHPBuy = false;
-                GameEngine.lastCoinNumber = currentPlayer.getCoin();
-            } else if(GameEngine.shopARBuy) {
-                g.drawString("30 of armour bought", 806, 480);
-                GameEngine.shopARBuy = false;
-                GameEngine.lastCoinNumber = currentPlayer.getCoin();
-            } else if(GameEngine.shopNotEnough) {
+                engine.shopHPBuy = false;
+                engine.lastCoinNumber = currentPlayer.getCoin();
+            } else if(engine.shopARBuy) {
+                g.drawString(amount(engine.lootAmount) + " of armour bought", 806, 480);
+                engine.shopARBuy = false;
+                engine.lastCoinNumber = currentPlayer.getCoin();
+            } else if(engine.shopNotEnough) {
                 g.drawString("Not enough of coins", 806, 480);
-                GameEngine.shopNotEnough = false;
+                engine.shopNotEnough = false;
             }
         }
-        else if(GameEngine.playerClass != 0) { // Prints information when player is dead
+        else if(engine.playerClass != 0) { // Prints information when player is dead
             g.setColor(Color.black);
-            g.setFont(new Font("TimesRoman", Font.BOLD, 24));
+            g.setFont(LARGE_FONT);
             g.drawString("You are dead", 350, 150);
-            g.drawString("Score: " + Integer.toString(GameEngine.score) , 370, 190);
-            g.drawString("Monsters killed: " + Integer.toString(GameEngine.monstersKilled), 330, 230);
-            g.drawString("Depth level reached: " + Integer.toString(GameEngine.depth), 310, 270);
-            g.drawString("Press any button to exit", 290, 310);
+            g.drawString("Score: " + Integer.toString(engine.score) , 370, 190);
+            g.drawString("Monsters killed: " + Integer.toString(engine.monstersKilled), 330, 230);
+            g.drawString("Depth level reached: " + Integer.toString(engine.depth), 310, 270);
+            if (engine.bestScore > 0) {
+                g.drawString("Best " + engine.playerClassName + " score: " + Integer.toString(engine.bestScore), 310, 310);
+            }
+            g.drawString("Press any button to exit", 290, 350);
         }
     }
    
@@ -435,14 +507,18 @@ class Canvas extends JPanel {
      */
     private void drawHealthBar(Graphics2D g2, Entity e) {
         double remainingHealth = e.getHealth() / e.getMaxHealth();
-        if(GameEngine.immortality && e.getType() == Entity.EntityType.PLAYER) { // checks if player is immortal
+        double x = camera.screenX(e.getX());
+        double y = camera.screenY(e.getY()) + 29 * camera.scale();
+        double width = camera.tileSize();
+        double height = GameGUI.HEALTH_BAR_HEIGHT * camera.scale();
+        if(engine.immortality && e.getType() == Entity.EntityType.PLAYER) { // checks if player is immortal
             g2.setColor(Color.YELLOW);
-            g2.fill(new Rectangle2D.Double(e.getX() * GameGUI.TILE_WIDTH, e.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH, GameGUI.HEALTH_BAR_HEIGHT));   
+            g2.fill(new Rectangle2D.Double(x, y, width, height));   
         } else {
             g2.setColor(Color.RED);
-            g2.fill(new Rectangle2D.Double(e.getX() * GameGUI.TILE_WIDTH, e.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH, GameGUI.HEALTH_BAR_HEIGHT));
+            g2.fill(new Rectangle2D.Double(x, y, width, height));
             g2.setColor(Color.GREEN);
-            g2.fill(new Rectangle2D.Double(e.getX() * GameGUI.TILE_WIDTH, e.getY() * GameGUI.TILE_HEIGHT + 29, GameGUI.TILE_WIDTH * remainingHealth, GameGUI.HEALTH_BAR_HEIGHT));
+            g2.fill(new Rectangle2D.Double(x, y, width * remainingHealth, height));
         }
     }
     
@@ -455,14 +531,18 @@ class Canvas extends JPanel {
      */
     private void drawArmourBar(Graphics2D g2, PlayerUtilities e) {
         double remainingArmour = (double) e.getArmour() / (double) e.getMaxArmour();
-        if (GameEngine.immortality) { // checks if player is immortal
+        double x = camera.screenX(e.getX());
+        double y = camera.screenY(e.getY()) + 35 * camera.scale();
+        double width = camera.tileSize();
+        double height = GameGUI.HEALTH_BAR_HEIGHT * camera.scale();
+        if (engine.immortality) { // checks if player is immortal
             g2.setColor(Color.YELLOW);
-            g2.fill(new Rectangle2D.Double(e.getX() * GameGUI.TILE_WIDTH, e.getY() * GameGUI.TILE_HEIGHT + 35, GameGUI.TILE_WIDTH, GameGUI.HEALTH_BAR_HEIGHT));
+            g2.fill(new Rectangle2D.Double(x, y, width, height));
         } else {
             g2.setColor(Color.RED);
-            g2.fill(new Rectangle2D.Double(e.getX() * GameGUI.TILE_WIDTH, e.getY() * GameGUI.TILE_HEIGHT + 35, GameGUI.TILE_WIDTH, GameGUI.HEALTH_BAR_HEIGHT));
+            g2.fill(new Rectangle2D.Double(x, y, width, height));
             g2.setColor(Color.WHITE);
-            g2.fill(new Rectangle2D.Double(e.getX() * GameGUI.TILE_WIDTH, e.getY() * GameGUI.TILE_HEIGHT + 35, GameGUI.TILE_WIDTH * remainingArmour, GameGUI.HEALTH_BAR_HEIGHT));
+            g2.fill(new Rectangle2D.Double(x, y, width * remainingArmour, height));
         }
     }
 }
@@ -0,0 +1,155 @@
+package uk.ac.bradford.dungeongame;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The GameMetrics class holds the latency histograms of the engine phases and of
+ * drawing, and publishes them together with a few gauges as a JMX MXBean named
+ * uk.ac.bradford.dungeongame:type=GameMetrics. Gauges are calculated when they
+ * are read, on the JMX thread, so they cost nothing during a turn.
+ * @author sberk
+ */
+public class GameMetrics implements GameMetricsMXBean {
+
+    static final LatencyHistogram DO_TURN = new LatencyHistogram("doTurn");
+    static final LatencyHistogram GENERATE_LEVEL = new LatencyHistogram("generateLevel");
+    static final LatencyHistogram GET_SPAWNS = new LatencyHistogram("getSpawns");
+    static final LatencyHistogram SPAWN_MONSTERS = new LatencyHistogram("spawnMonsters");
+    static final LatencyHistogram MOVE_MONSTERS = new LatencyHistogram("moveMonsters");
+    static final LatencyHistogram PAINT_COMPONENT = new LatencyHistogram("paintComponent");
+    static final LatencyHistogram FIELD_OF_VIEW = new LatencyHistogram("fieldOfView");
+
+    /**
+     * Name the MXBean is registered under
+     */
+    public static final String OBJECT_NAME = "uk.ac.bradford.dungeongame:type=GameMetrics";
+
+    /**
+     * The engine the gauges are read from
+     */
+    private final GameEngine engine;
+
+    /**
+     * Creates the metrics view of an engine
+     * @param engine the engine the gauges are read from, null when there is no
+     * single engine, as in GameServer, which makes the gauges read 0
+     */
+    GameMetrics(GameEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Registers the metrics of an engine with the platform MBean server. Errors
+     * are reported on the console and do not stop the game.
+     * @param engine the engine the gauges are read from
+     */
+    static void register(GameEngine engine) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new GameMetrics(engine), name);
+        } catch (JMException e) {
+            System.out.println("Exception registering metrics: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public LatencySummary getDoTurn() {
+        return LatencySummary.of(DO_TURN);
+    }
+
+    @Override
+    public LatencySummary getGenerateLevel() {
+        return LatencySummary.of(GENERATE_LEVEL);
+    }
+
+    @Override
+    public LatencySummary getGetSpawns() {
+        return LatencySummary.of(GET_SPAWNS);
+    }
+
+    @Override
+    public LatencySummary getSpawnMonsters() {
+        return LatencySummary.of(SPAWN_MONSTERS);
+    }
+
+    @Override
+    public LatencySummary getMoveMonsters() {
+        return LatencySummary.of(MOVE_MONSTERS);
+    }
+
+    @Override
+    public LatencySummary getPaintComponent() {
+        return LatencySummary.of(PAINT_COMPONENT);
+    }
+
+    @Override
+    public LatencySummary getFieldOfView() {
+        return LatencySummary.of(FIELD_OF_VIEW);
+    }
+
+    @Override
+    public LatencySummary getAutosaveCapture() {
+        return LatencySummary.of(Autosaver.CAPTURE);
+    }
+
+    @Override
+    public LatencySummary getAutosaveWrite() {
+        return LatencySummary.of(Autosaver.WRITE);
+    }
+
+    @Override
+    public LatencySummary getServerCommand() {
+        return LatencySummary.of(GameServer.COMMAND);
+    }
+
+    @Override
+    public int getLiveMonsters() {
+        return engine != null ? engine.countLiveMonsters() : 0;
+    }
+
+    @Override
+    public int getDepth() {
+        return engine != null ? engine.depth : 0;
+    }
+
+    @Override
+    public int getFreeCells() {
+        return engine != null ? engine.countFreeCells() : 0;
+    }
+
+    @Override
+    public int getStoredFloors() {
+        return engine != null ? engine.floors.getFloorCount() : 0;
+    }
+
+    @Override
+    public long getStoredFloorBytes() {
+        return engine != null ? engine.floors.getBytes() : 0;
+    }
+
+    @Override
+    public void reset() {
+        DO_TURN.reset();
+        GENERATE_LEVEL.reset();
+        GET_SPAWNS.reset();
+        SPAWN_MONSTERS.reset();
+        MOVE_MONSTERS.reset();
+        PAINT_COMPONENT.reset();
+        FIELD_OF_VIEW.reset();
+        Autosaver.CAPTURE.reset();
+        Autosaver.WRITE.reset();
+        GameServer.COMMAND.reset();
+    }
+
+    @Override
+    public String reloadLootTables() {
+        return LootTables.reload();
+    }
+}
@@ -0,0 +1,80 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * Management interface of the game metrics published over JMX, for example to
+ * JConsole or VisualVM during long test runs. Latencies are summaries of
+ * histograms recorded since the start of the game or the last reset.
+ * @author sberk
+ */
+public interface GameMetricsMXBean {
+
+    LatencySummary getDoTurn();
+
+    LatencySummary getGenerateLevel();
+
+    LatencySummary getGetSpawns();
+
+    LatencySummary getSpawnMonsters();
+
+    LatencySummary getMoveMonsters();
+
+    LatencySummary getPaintComponent();
+
+    /**
+     * @return time spent working out what the player can see after a turn
+     */
+    LatencySummary getFieldOfView();
+
+    /**
+     * @return time spent on the game thread capturing autosave snapshots
+     */
+    LatencySummary getAutosaveCapture();
+
+    /**
+     * @return time spent by the background thread writing autosaves
+     */
+    LatencySummary getAutosaveWrite();
+
+    /**
+     * @return time GameServer spends applying one command of a session
+     */
+    LatencySummary getServerCommand();
+
+    /**
+     * @return number of monsters alive on the current level
+     */
+    int getLiveMonsters();
+
+    /**
+     * @return current depth of the dungeon
+     */
+    int getDepth();
+
+    /**
+     * @return number of floor tiles not taken by the player or a monster
+     */
+    int getFreeCells();
+
+    /**
+     * @return number of floors the player has left, kept packed in memory
+     */
+    int getStoredFloors();
+
+    /**
+     * @return bytes taken by the packed floors, divided by getStoredFloors()
+     * for the memory of one floor
+     */
+    long getStoredFloorBytes();
+
+    /**
+     * Sets all histograms back to zero
+     */
+    void reset();
+
+    /**
+     * Reads the loot file again, so chests, drops and shops can be changed
+     * without restarting the game
+     * @return the number of entries read, or why the file was not used
+     */
+    String reloadLootTables();
+}
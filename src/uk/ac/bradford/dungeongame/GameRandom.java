@@ -0,0 +1,69 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Random;
+
+/**
+ * The GameRandom class is a random number generator producing exactly the same
+ * numbers as java.util.Random for the same seed, but whose internal state can be
+ * read and restored. This lets a saved game continue with the same random
+ * numbers it would have got without saving.
+ * @author sberk
+ */
+public class GameRandom extends Random {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    /**
+     * state holds the 48 bit state of the generator. It has no initialiser on
+     * purpose: the Random constructor sets it through setSeed before the fields
+     * of this class would be initialised.
+     */
+    private long state;
+
+    /**
+     * Creates a generator with a seed that is different for every game
+     */
+    public GameRandom() {
+        this(System.nanoTime() ^ 0x2545F4914F6CDD1DL);
+    }
+
+    /**
+     * Creates a generator with a fixed seed
+     * @param seed the seed, the same seed gives the same numbers as new Random(seed)
+     */
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = (seed ^ MULTIPLIER) & MASK;
+        super.setSeed(seed);
+    }
+
+    @Override
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    /**
+     * Returns the internal state, to be stored in a save file
+     * @return the current state of the generator
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Restores a state returned by getState
+     * @param state the state to continue from
+     */
+    public void setState(long state) {
+        this.state = state & MASK;
+    }
+}
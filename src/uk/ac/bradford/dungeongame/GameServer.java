@@ -0,0 +1,409 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The GameServer class hosts many game sessions in one process. Every
+ * connection gets its own engine without a window. Connections are shared
+ * between a fixed number of event loops, each a thread with a non-blocking NIO
+ * selector, so one loop serves thousands of sessions and a session never waits
+ * for another one.
+ *
+ * Protocol (big-endian): the client sends commands as single bytes, using the
+ * command values of InputJournal (1 - 3 choose a class, 4 - 7 move left, right,
+ * up and down, 8 uses a potion). The server sends messages made of a type byte,
+ * a length int and a payload. On connect it sends SNAPSHOT, holding the game in
+ * the SaveGame format, and then exactly one STATE for every command, in order.
+ * After the STREAM command the session also gets the changes of its game
+ * before every STATE, as keyframes and deltas written by ChangeLog, enough for
+ * a spectator or remote renderer to keep a copy of the game.
+ *
+ * Usage: GameServer [port] [event-loops]
+ * @author sberk
+ */
+public class GameServer {
+
+    /**
+     * Port used when none is given
+     */
+    public static final int DEFAULT_PORT = 7777;
+
+    /**
+     * Message types sent by the server
+     */
+    static final byte SNAPSHOT = 1;
+    static final byte STATE = 2;
+
+    /**
+     * Command that subscribes a session to the changes of its game
+     */
+    static final byte STREAM = 16;
+
+    /**
+     * Length of the payload of a STATE message: turns, depth, score, kills,
+     * health, x, y, coins, potions, armour, live monsters and player alive
+     */
+    static final int STATE_BYTES = 4 * 4 + 8 + 4 * 5 + 2 + 1;
+
+    /**
+     * A session stops reading commands while this many bytes wait to be sent
+     * to it, so a client that does not read cannot make the server buffer
+     * without limit
+     */
+    private static final int MAX_PENDING_OUTPUT = 64 * 1024;
+
+    /**
+     * Time spent applying one command to the engine of a session
+     */
+    static final LatencyHistogram COMMAND = new LatencyHistogram("serverCommand");
+
+    private final ServerSocketChannel server;
+    private final Loop[] loops;
+    private final Thread acceptor;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final AtomicInteger commands = new AtomicInteger();
+    private volatile boolean running = true;
+
+    /**
+     * Binds the server to a port on the loopback interface and starts its
+     * threads
+     * @param port the port, 0 for any free port
+     * @param loopCount number of event loop threads
+     * @throws IOException if the port cannot be bound
+     */
+    public GameServer(int port, int loopCount) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        loops = new Loop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new Loop(i);
+        }
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        }, "server-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    /**
+     * @return number of sessions currently connected
+     */
+    public int getSessions() {
+        return sessions.get();
+    }
+
+    /**
+     * @return number of commands handled since the server started
+     */
+    public int getCommands() {
+        return commands.get();
+    }
+
+    /**
+     * @return number of event loop threads
+     */
+    public int getLoops() {
+        return loops.length;
+    }
+
+    /**
+     * Returns the CPU time used by the event loops, which do all the game work
+     * @return CPU time of all event loop threads in nanoseconds, or -1 if the
+     * JVM does not measure thread CPU time
+     */
+    public long getCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Loop loop : loops) {
+            long nanos = threads.getThreadCpuTime(loop.thread.getId());
+            if (nanos < 0) {
+                return -1;
+            }
+            total += nanos;
+        }
+        return total;
+    }
+
+    /**
+     * Stops accepting connections and closes all sessions
+     */
+    public void close() {
+        running = false;
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.out.println("Exception closing server: " + e.getMessage());
+        }
+        for (Loop loop : loops) {
+            loop.close();
+        }
+    }
+
+    /**
+     * Accepts connections and hands them to the event loops in turn
+     */
+    private void accept() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                loops[next].add(channel);
+                next = (next + 1) % loops.length;
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Exception accepting connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a STATE message with the current game values of an engine
+     * @param engine the engine of the session
+     * @param out buffer to append the message to
+     */
+    static void writeState(GameEngine engine, ByteBuffer out) {
+        PlayerUtilities p = engine.player;
+        out.put(STATE);
+        out.putInt(STATE_BYTES);
+        out.putInt(engine.turns);
+        out.putInt(engine.depth);
+        out.putInt(engine.score);
+        out.putInt(engine.monstersKilled);
+        out.putDouble(p != null ? p.getHealth() : 0);
+        out.putInt(p != null ? p.getX() : -1);
+        out.putInt(p != null ? p.getY() : -1);
+        out.putInt(p != null ? p.getCoin() : 0);
+        out.putInt(p != null ? p.getPotionsNumber() : 0);
+        out.putInt(p != null ? p.getArmour() : 0);
+        out.putShort((short) engine.countLiveMonsters());
+        out.put((byte) (p != null || engine.playerClass == 0 ? 1 : 0));
+    }
+
+    /**
+     * An event loop: one thread with a selector serving many sessions
+     */
+    private class Loop implements Runnable {
+
+        private final Selector selector;
+        private final Thread thread;
+        private final ConcurrentLinkedQueue<SocketChannel> added = new ConcurrentLinkedQueue<SocketChannel>();
+
+        Loop(int number) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "server-loop-" + number);
+            thread.start();
+        }
+
+        /**
+         * Hands a new connection to this loop
+         */
+        void add(SocketChannel channel) {
+            added.add(channel);
+            selector.wakeup();
+        }
+
+        void close() {
+            try {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            } catch (IOException | ClosedSelectorException e) {
+                System.out.println("Exception closing event loop: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = added.poll()) != null) {
+                        register(channel);
+                    }
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Session session = (Session) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                session.read();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                session.write();
+                            }
+                        } catch (IOException e) {
+                            session.close();
+                        }
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    System.out.println("Exception in event loop: " + e.getMessage());
+                }
+            }
+        }
+
+        private void register(SocketChannel channel) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                Session session = new Session(channel, key);
+                key.attach(session);
+                session.write();
+            } catch (IOException e) {
+                System.out.println("Exception starting session: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    System.out.println("Exception closing connection: " + ex.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * One connected client and its game
+     */
+    private class Session {
+
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final GameEngine engine;
+
+        /**
+         * Changes of the game sent to the client, null until it asks for them
+         */
+        private ChangeLog changes;
+        private final ByteBuffer in = ByteBuffer.allocate(256);
+        private ByteBuffer out = ByteBuffer.allocate(4096);
+
+        Session(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+            engine = new GameEngine(null, GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT, new GameRandom());
+            sessions.incrementAndGet();
+            ByteBuffer[] snapshot = SaveGame.encode(engine);
+            int length = 0;
+            for (ByteBuffer b : snapshot) {
+                length += b.remaining();
+            }
+            reserve(1 + 4 + length);
+            out.put(SNAPSHOT);
+            out.putInt(length);
+            for (ByteBuffer b : snapshot) {
+                out.put(b);
+            }
+        }
+
+        /**
+         * Reads the commands that arrived, applies them and queues a STATE
+         * message for each
+         */
+        void read() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            in.flip();
+            while (in.hasRemaining() && out.position() < MAX_PENDING_OUTPUT) {
+                byte c = in.get();
+                if (c >= InputJournal.KNIGHT && c <= InputJournal.POTION) {
+                    long start = System.nanoTime();
+                    engine.useCurrentLoot();
+                    InputJournal.apply(engine, c);
+                    COMMAND.record(System.nanoTime() - start);
+                } else if (c == STREAM && changes == null) {
+                    changes = new ChangeLog(engine);
+                }
+                if (changes != null) {
+                    out = changes.flush(out);
+                }
+                reserve(1 + 4 + STATE_BYTES);
+                writeState(engine, out);
+                commands.incrementAndGet();
+            }
+            in.compact();
+            write();
+        }
+
+        /**
+         * Sends as much of the queued output as the socket takes and chooses
+         * what the selector waits for: writing while output is queued, reading
+         * while there is room for more output
+         */
+        void write() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            int ops = 0;
+            if (out.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            if (out.position() < MAX_PENDING_OUTPUT) {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+
+        /**
+         * Makes sure the output buffer has room for a number of bytes
+         */
+        private void reserve(int bytes) {
+            if (out.remaining() < bytes) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+        }
+
+        void close() {
+            if (channel.isOpen()) {
+                sessions.decrementAndGet();
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.out.println("Exception closing connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int loopCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        GameServer server = new GameServer(port, loopCount);
+        GameMetrics.register(null); // no single engine, so only the latencies are published
+        System.out.println("Game server listening on localhost:" + server.getPort() + " with "
+                + loopCount + " event loops");
+    }
+}
@@ -0,0 +1,283 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The InputJournal class records a game session as an append-only file. The
+ * file starts with a snapshot of the game in the SaveGame format, taken before
+ * the first key press, which holds the level, the game values and the state of
+ * the random number generator. After the snapshot every command of the player
+ * is appended as a single byte. Loading a save with F9 appends a LOAD command
+ * followed by a snapshot of the loaded game, and reloading the loot tables
+ * appends a RELOAD command followed by the new loot file, so a journal does
+ * not depend on saves or changed loot files. The header holds the schedule of
+ * level generators the game was played with, which is not part of a snapshot,
+ * so floors generated during the replay are laid out by the same generators,
+ * and the source and checksum of the loot file the game started with, which
+ * Replay checks against the file it has. Because the engine
+ * only uses its own seeded generator, applying the same commands to the
+ * snapshot gives exactly the same game again, which Replay does without a
+ * window.
+ *
+ * Layout (big-endian), version 5:
+ * magic "DGJ1", version, generator schedule, loot file id, snapshot length,
+ * snapshot, commands. A RELOAD command is followed by the source of the loot
+ * file, its length and its bytes. Strings are written as their length in
+ * UTF-8 bytes followed by the bytes. The version is also increased when the same commands would give
+ * a different game, so older journals are refused instead of replayed wrongly.
+ * Version 1 journals were recorded while monsters far from the player still
+ * moved, version 2 journals before loot was drawn from the loot tables,
+ * version 3 journals without the generator schedule and version 4 journals
+ * without the loot file.
+ * @author sberk
+ */
+public class InputJournal {
+
+    /**
+     * First four bytes of every journal file, "DGJ1"
+     */
+    static final int MAGIC = 0x44474A31;
+
+    /**
+     * Version of the layout, increased whenever the layout or the way commands
+     * are played changes
+     */
+    static final short VERSION = 5;
+
+    /**
+     * Commands stored in the journal. The class commands have the number of the
+     * class they choose.
+     */
+    static final byte KNIGHT = 1;
+    static final byte WARRIOR = 2;
+    static final byte THIEF = 3;
+    static final byte LEFT = 4;
+    static final byte RIGHT = 5;
+    static final byte UP = 6;
+    static final byte DOWN = 7;
+    static final byte POTION = 8;
+    static final byte LOAD = 9;
+    static final byte RELOAD = 10;
+
+    private final FileChannel channel;
+
+    /**
+     * One byte buffer reused for every command
+     */
+    private final ByteBuffer command = ByteBuffer.allocate(1);
+
+    private InputJournal(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a journal file, replacing it if it exists, and writes the current
+     * game of an engine as the starting snapshot
+     * @param engine the engine whose game is recorded
+     * @param file the file to write
+     * @return the journal commands are recorded to
+     * @throws IOException if the file cannot be written
+     */
+    public static InputJournal create(GameEngine engine, Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        InputJournal journal = new InputJournal(channel);
+        byte[] schedule = LevelGenerator.scheduleOf(engine.generators).getBytes(StandardCharsets.UTF_8);
+        byte[] loot = engine.lootTables.id().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(4 + 2 + 2 + schedule.length + 2 + loot.length);
+        header.putInt(MAGIC);
+        header.putShort(VERSION);
+        putString(header, schedule);
+        putString(header, loot);
+        header.flip();
+        journal.write(header);
+        journal.writeSnapshot(engine);
+        return journal;
+    }
+
+    /**
+     * Appends a command to the journal. Errors are reported on the console and
+     * stop the recording, but not the game.
+     * @param c the command, one of the command constants except LOAD and
+     * RELOAD
+     */
+    public void record(byte c) {
+        command.clear();
+        command.put(c);
+        command.flip();
+        try {
+            write(command);
+        } catch (IOException e) {
+            System.out.println("Exception recording journal: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Appends a LOAD command with a snapshot of a game that was just loaded
+     * @param engine the engine the game was loaded into
+     */
+    public void recordLoad(GameEngine engine) {
+        record(LOAD);
+        try {
+            writeSnapshot(engine);
+        } catch (IOException e) {
+            System.out.println("Exception recording journal: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Appends a RELOAD command with the loot file an engine has just started
+     * using
+     * @param tables the new tables of the engine
+     */
+    public void recordReload(LootTables tables) {
+        record(RELOAD);
+        byte[] source = tables.source.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer file = ByteBuffer.allocate(2 + source.length + 4);
+        putString(file, source);
+        file.putInt(tables.text.length);
+        file.flip();
+        try {
+            write(file);
+            write(ByteBuffer.wrap(tables.text));
+        } catch (IOException e) {
+            System.out.println("Exception recording journal: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Closes the journal file. Commands recorded afterwards are ignored.
+     */
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Exception closing journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the length of a snapshot of the engine followed by the snapshot
+     * @param engine the engine to snapshot
+     * @throws IOException if writing fails
+     */
+    private void writeSnapshot(GameEngine engine) throws IOException {
+        ByteBuffer[] snapshot = SaveGame.encode(engine);
+        int length = 0;
+        for (ByteBuffer b : snapshot) {
+            length += b.remaining();
+        }
+        ByteBuffer size = ByteBuffer.allocate(4);
+        size.putInt(length);
+        size.flip();
+        write(size);
+        for (ByteBuffer b : snapshot) {
+            write(b);
+        }
+    }
+
+    /**
+     * Writes a string as its length and its UTF-8 bytes
+     */
+    static void putString(ByteBuffer out, byte[] utf8) {
+        out.putShort((short) utf8.length);
+        out.put(utf8);
+    }
+
+    /**
+     * Reads a string written by putString
+     * @throws IOException if the string goes past the end of the buffer
+     */
+    static String getString(ByteBuffer in) throws IOException {
+        try {
+            byte[] utf8 = new byte[in.getShort() & 0xFFFF];
+            in.get(utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Journal is truncated");
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Returns the command for a key
+     * @param keyCode code of the pressed key
+     * @return the command of the key, 0 if the key is not a game command
+     */
+    static byte commandFor(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.VK_1: return KNIGHT;
+            case KeyEvent.VK_2: return WARRIOR;
+            case KeyEvent.VK_3: return THIEF;
+            case KeyEvent.VK_LEFT: return LEFT;
+            case KeyEvent.VK_RIGHT: return RIGHT;
+            case KeyEvent.VK_UP: return UP;
+            case KeyEvent.VK_DOWN: return DOWN;
+            case KeyEvent.VK_H: return POTION;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Applies a command to an engine. Used both by DungeonInputHandler while
+     * playing and by Replay, so a replayed command does exactly what the key
+     * press did. A class is only chosen when none was chosen yet, moves need a
+     * living player and a potion is only used when the player has one.
+     * @param engine the engine to change
+     * @param c the command, one of the command constants except LOAD and
+     * RELOAD
+     */
+    static void apply(GameEngine engine, byte c) {
+        switch (c) {
+            case KNIGHT:
+            case WARRIOR:
+            case THIEF:
+                if (engine.playerClass == 0) {
+                    engine.playerClass = c;
+                    engine.player = engine.spawnPlayer();
+                }
+                return;
+            default:
+        }
+        if (engine.player == null) {
+            return;
+        }
+        switch (c) {
+            case LEFT: engine.movePlayerSides(-1); engine.doTurn(); break;
+            case RIGHT: engine.movePlayerSides(+1); engine.doTurn(); break;
+            case UP: engine.movePlayerUD(-1); engine.doTurn(); break;
+            case DOWN: engine.movePlayerUD(+1); engine.doTurn(); break;
+            case POTION:
+                if (engine.player.getPotionsNumber() > 0) {
+                    engine.player.useHealthPotion();
+                    engine.increasedHealth = true;
+                    engine.doTurn();
+                }
+                break;
+            default:
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class counts durations in log-linear buckets: every power
+ * of two is split into 8 buckets, so any recorded value is off by at most 12.5%.
+ * Recording only increments atomic counters in preallocated arrays, it never
+ * locks and never allocates, so histograms can stay switched on while playing.
+ * @author sberk
+ */
+class LatencyHistogram {
+
+    /**
+     * Number of linear buckets for the smallest values and number of buckets
+     * every power of two is split into
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR = SUB_BUCKETS * 2;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Creates an empty histogram
+     * @param name name of the measured part of the game
+     */
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records one duration
+     * @param nanos duration in nanoseconds, negative values count as 0
+     */
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m = max.get();
+        while (nanos > m && !max.compareAndSet(m, nanos)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Records the time passed since start and also passes it to a performance
+     * overlay timing, which keeps it only while the overlay is shown.
+     * @param start value of System.nanoTime() taken at the start
+     * @param overlay overlay timing for the same part of the game, can be null
+     */
+    void stop(long start, RollingStats overlay) {
+        long nanos = System.nanoTime() - start;
+        record(nanos);
+        if (overlay != null) {
+            overlay.offer(nanos);
+        }
+    }
+
+    /**
+     * Returns an approximate percentile of all recorded durations
+     * @param q percentile between 0.0 and 1.0
+     * @return upper bound of the bucket holding the percentile, in nanoseconds
+     */
+    long percentile(double q) {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += buckets.get(i);
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Sets all counters back to zero
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getTotalNanos() {
+        return total.get();
+    }
+
+    long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * Finds the bucket for a value
+     * @param v a value that is 0 or bigger
+     * @return index of the bucket
+     */
+    static int bucketOf(long v) {
+        if (v < LINEAR) {
+            return (int) v;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (msb - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the biggest value that falls into a bucket
+     * @param index index of the bucket
+     * @return biggest value of the bucket
+     */
+    static long upperBoundOf(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int msb = (index - LINEAR) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long sub = (index - LINEAR) % SUB_BUCKETS;
+        long width = 1L << (msb - SUB_BUCKET_BITS);
+        return (1L << msb) + (sub + 1) * width - 1;
+    }
+}
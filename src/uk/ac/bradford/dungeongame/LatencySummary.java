@@ -0,0 +1,76 @@
+package uk.ac.bradford.dungeongame;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The LatencySummary class is a read-only copy of the state of a LatencyHistogram
+ * that is published over JMX. All durations are in microseconds.
+ * @author sberk
+ */
+public class LatencySummary {
+
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    @ConstructorProperties({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+    public LatencySummary(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    /**
+     * Takes a summary of a histogram
+     * @param h the histogram to summarise
+     * @return summary with durations converted to microseconds
+     */
+    static LatencySummary of(LatencyHistogram h) {
+        long count = h.getCount();
+        return new LatencySummary(count, count == 0 ? 0 : h.getTotalNanos() / 1000.0 / count,
+                h.percentile(0.5) / 1000.0, h.percentile(0.9) / 1000.0, h.percentile(0.99) / 1000.0,
+                h.percentile(0.999) / 1000.0, h.getMaxNanos() / 1000.0);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus",
+                count, mean, p50, p90, p99, p999, max);
+    }
+}
@@ -1,6 +1,13 @@
 package uk.ac.bradford.dungeongame;
 
 import java.awt.EventQueue;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
 /**
  * This class is the entry point for the project, containing the main method that
@@ -12,6 +19,7 @@ import java.awt.EventQueue;
 public class Launcher {
     
     public static void main(String[] args) {
+        StartupTimer.mainStarted();
         EventQueue.invokeLater(new Runnable() {
         
             /**
@@ -23,12 +31,51 @@ public class Launcher {
             public void run() {
                 GameGUI gui = new GameGUI();            //create GUI
                 gui.setVisible(true);                   //display GUI
+                long levelStart = System.nanoTime();
                 GameEngine eng = new GameEngine(gui);   //create engine
+                StartupTimer.firstLevelGenerated(System.nanoTime() - levelStart);
+                GameMetrics.register(eng);              //publishes metrics over JMX
+                eng.autosaver = new Autosaver(Paths.get("autosave.sav"));  //saves in the background
+                try {
+                    eng.scores = new ScoreStore(Paths.get("scores.dat"));   //keeps finished runs
+                } catch (IOException ex) {
+                    System.out.println("Exception opening scores: " + ex.getMessage());
+                }
                 DungeonInputHandler i = new DungeonInputHandler(eng);   //create input handler
                 gui.registerKeyHandler(i);              //registers handler with GUI
+                gui.addWindowListener(new WindowAdapter() {
+                    /**
+                     * Saves a running game when the window is closed, so it
+                     * can be loaded again with F9.
+                     */
+                    @Override
+                    public void windowClosing(WindowEvent e) {
+                        if (eng.player != null) {
+                            try {
+                                SaveGame.save(eng, SaveGame.DEFAULT_FILE);
+                            } catch (IOException ex) {
+                                System.out.println("Exception saving game: " + ex.getMessage());
+                            }
+                        }
+                    }
+                });
                 eng.startGame();                        //starts the game
+                try {
+                    i.journal = InputJournal.create(eng, journalFile());   //records the session
+                } catch (IOException ex) {
+                    System.out.println("Exception creating journal: " + ex.getMessage());
+                }
             }
         });
     }
     
+    /**
+     * Returns a new journal file for this session, named after the time the
+     * session started
+     * @return path of the file in the journals directory
+     */
+    private static Path journalFile() {
+        String name = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        return Paths.get("journals", name + ".dgj");
+    }
 }
@@ -0,0 +1,188 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The LevelGenerator interface is implemented by the algorithms that lay out
+ * a new level: its walls, floor, coins, fountain and shop. The engine places
+ * the stairs and the chest afterwards, on floor tiles of the generated level,
+ * whatever generator was used.
+ *
+ * Generators are chosen by depth from a schedule, a comma separated list of
+ * generator names used in turn: "classic,bsp,caves" lays out depth 1 with the
+ * classic generator, depth 2 with BSP rooms, depth 3 as caves, depth 4 with
+ * the classic generator again, and so on. The schedule is read from the
+ * dungeon.generators system property and is "classic" if it is not set.
+ * @author sberk
+ */
+public interface LevelGenerator {
+
+    /**
+     * System property holding the schedule of generators
+     */
+    String PROPERTY = "dungeon.generators";
+
+    /**
+     * Generates the layout of a level. Every tile is set; the outer edge of
+     * the level is wall, except for the holes the classic generator leaves.
+     * @param width width of the level in tiles
+     * @param height height of the level in tiles
+     * @param rng random number generator of the game
+     * @param wallChance chance of a wall in the current game, which grows with
+     * depth; each generator reads it in its own way
+     * @param balance chances of coins, fountains and shops
+     * @return the tiles of the level by column
+     */
+    TileType[][] generate(int width, int height, Random rng, double wallChance, Balance balance);
+
+    /**
+     * @return name of the generator as used in schedules
+     */
+    String getName();
+
+    /**
+     * Creates a generator by its name
+     * @param name classic, bsp or caves
+     * @return a new generator
+     * @throws IllegalArgumentException if there is no generator of that name
+     */
+    static LevelGenerator forName(String name) {
+        switch (name.trim()) {
+            case "classic":
+                return new ClassicGenerator();
+            case "bsp":
+                return new BspGenerator();
+            case "caves":
+                return new CaveGenerator();
+            default:
+                throw new IllegalArgumentException("Unknown level generator " + name);
+        }
+    }
+
+    /**
+     * Creates the generators of a schedule
+     * @param schedule comma separated generator names, used in turn by depth
+     * @return the generators in order
+     * @throws IllegalArgumentException if a name is unknown
+     */
+    static LevelGenerator[] schedule(String schedule) {
+        String[] names = schedule.split(",");
+        LevelGenerator[] generators = new LevelGenerator[names.length];
+        for (int i = 0; i < names.length; i++) {
+            generators[i] = forName(names[i]);
+        }
+        return generators;
+    }
+
+    /**
+     * Returns the schedule of some generators, the opposite of schedule
+     * @param generators the generators in order
+     * @return their names separated by commas
+     */
+    static String scheduleOf(LevelGenerator[] generators) {
+        StringBuilder schedule = new StringBuilder();
+        for (LevelGenerator generator : generators) {
+            if (schedule.length() > 0) {
+                schedule.append(',');
+            }
+            schedule.append(generator.getName());
+        }
+        return schedule.toString();
+    }
+
+    /**
+     * Creates the generators of the schedule in the dungeon.generators
+     * property. An unknown name is reported and the classic generator used.
+     * @return the generators in order
+     */
+    static LevelGenerator[] configured() {
+        try {
+            return schedule(System.getProperty(PROPERTY, "classic"));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Exception reading " + PROPERTY + ": " + e.getMessage());
+            return new LevelGenerator[]{new ClassicGenerator()};
+        }
+    }
+
+    /**
+     * Turns some floor tiles into coins, one fountain and one shop with the
+     * chances the classic generator uses. Used by generators that lay out only
+     * walls and floor. Big levels are done in regions in the common pool.
+     * @param level the level to change
+     * @param rng random number generator of the game
+     * @param balance chances of the items
+     */
+    static void scatterItems(TileType[][] level, Random rng, Balance balance) {
+        scatterItems(level, rng, balance, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Turns some floor tiles into coins, one fountain and one shop, doing big
+     * levels in regions in a pool
+     * @param level the level to change
+     * @param rng random number generator of the game
+     * @param balance chances of the items
+     * @param pool pool the regions of big levels are done in
+     */
+    static void scatterItems(TileType[][] level, Random rng, Balance balance, ForkJoinPool pool) {
+        if (Regions.worthSplitting(level.length, level[0].length)) {
+            Regions.fill(level, rng.nextLong(), pool, (tiles, region) -> scatterRegion(tiles, region, balance));
+            return;
+        }
+        boolean fountainSet = false;
+        boolean shopSet = false;
+        for (int i = 0; i < level.length; i++) {
+            for (int j = 0; j < level[i].length; j++) {
+                if (level[i][j] != TileType.FLOOR) {
+                    continue;
+                }
+                double f = rng.nextDouble();
+                if (f < balance.fountainChance && !fountainSet) {
+                    level[i][j] = TileType.FOUNTAIN_FULL;
+                    fountainSet = true;
+                } else if (f < balance.shopARChance && !shopSet) {
+                    level[i][j] = TileType.SHOPAR;
+                    shopSet = true;
+                } else if (f < balance.shopHPChance && !shopSet) {
+                    level[i][j] = TileType.SHOPHP;
+                    shopSet = true;
+                } else if (f < balance.coinChance) {
+                    level[i][j] = TileType.COIN;
+                }
+            }
+        }
+    }
+
+    /**
+     * Turns floor tiles of one region into items, as scatterItems does for a
+     * small level
+     * @param level the level to change
+     * @param region the region and its random number generator
+     * @param balance chances of the items
+     */
+    private static void scatterRegion(TileType[][] level, Regions.Region region, Balance balance) {
+        int height = level[0].length;
+        for (int i = region.x0; i < region.x1; i++) {
+            for (int j = region.y0; j < region.y1; j++) {
+                if (level[i][j] != TileType.FLOOR) {
+                    continue;
+                }
+                double f = region.random.nextDouble();
+                if (f < balance.fountainChance && region.fountain < 0) {
+                    level[i][j] = TileType.FOUNTAIN_FULL;
+                    region.fountain = i * height + j;
+                } else if (f < balance.shopARChance && region.shop < 0) {
+                    level[i][j] = TileType.SHOPAR;
+                    region.shop = i * height + j;
+                } else if (f < balance.shopHPChance && region.shop < 0) {
+                    level[i][j] = TileType.SHOPHP;
+                    region.shop = i * height + j;
+                } else if (f < balance.coinChance) {
+                    level[i][j] = TileType.COIN;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * The LoadTestClient class plays many sessions against a GameServer at once to
+ * measure it. Every session chooses a class, then sends a random move as soon
+ * as the answer to its previous command arrives, and starts a new session when
+ * its player dies. All sessions share one thread with a selector, so the client
+ * itself stays small next to the server.
+ *
+ * It reports the commands handled per second, the latency of a command from
+ * sending it to receiving its STATE, and, when it starts the server itself, the
+ * commands handled per second of server CPU time. Dividing that by the rate a
+ * person presses keys gives the number of sessions one core can host.
+ *
+ * Usage: LoadTestClient [-stream] [sessions] [seconds] [port]. Without a port
+ * a server with one event loop per processor is started in the same process.
+ * With -stream every session also receives the changes of its game, and the
+ * bytes received per command are reported.
+ * @author sberk
+ */
+public class LoadTestClient {
+
+    /**
+     * Commands a second sent by a person playing quickly, used to turn server
+     * throughput into sessions per core
+     */
+    static final int HUMAN_COMMANDS_PER_SECOND = 5;
+
+    /**
+     * Commands sent for moves: left, right, up and down, with an occasional
+     * potion
+     */
+    private static final byte[] MOVES = {InputJournal.LEFT, InputJournal.RIGHT, InputJournal.UP,
+            InputJournal.DOWN, InputJournal.LEFT, InputJournal.RIGHT, InputJournal.UP, InputJournal.DOWN,
+            InputJournal.POTION};
+
+    private final InetSocketAddress address;
+
+    /**
+     * Server running in the same process, null for a server elsewhere
+     */
+    private final GameServer server;
+    private final Selector selector;
+    private final Random random = new Random(1);
+    private final LatencyHistogram latency = new LatencyHistogram("command");
+    private boolean measuring;
+    private int started;
+    private int finished;
+    private long commands;
+    private long bytes;
+
+    /**
+     * Whether sessions ask for the changes of their game
+     */
+    private final boolean stream;
+
+    /**
+     * CPU time the server used while measuring, -1 if unknown
+     */
+    private long serverCpuNanos = -1;
+
+    /**
+     * Creates a client for a server
+     * @param address address of the server
+     * @param server the server if it runs in the same process, else null
+     * @param stream whether sessions ask for the changes of their game
+     */
+    LoadTestClient(InetSocketAddress address, GameServer server, boolean stream) throws IOException {
+        this.address = address;
+        this.server = server;
+        this.stream = stream;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Opens a new session. Its connection finishes in the selector loop.
+     */
+    private void connect() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.connect(address);
+        channel.register(selector, SelectionKey.OP_CONNECT, new Session(channel));
+        started++;
+    }
+
+    /**
+     * Runs the sessions for a warm up period and then for the measured period
+     * @param sessions number of sessions played at the same time
+     * @param warmupMillis time before measuring starts
+     * @param millis time measured
+     */
+    void run(int sessions, long warmupMillis, long millis) throws IOException {
+        for (int i = 0; i < sessions; i++) {
+            connect();
+        }
+        long now = System.currentTimeMillis();
+        long measureFrom = now + warmupMillis;
+        long end = measureFrom + millis;
+        long cpuAtStart = -1;
+        while (now < end) {
+            if (!measuring && now >= measureFrom) {
+                measuring = true;
+                latency.reset();
+                commands = 0;
+                bytes = 0;
+                if (server != null) {
+                    GameServer.COMMAND.reset();
+                    cpuAtStart = server.getCpuNanos();
+                }
+            }
+            selector.select(Math.max(1, (measuring ? end : measureFrom) - now));
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Session session = (Session) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        session.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        session.send(stream ? GameServer.STREAM : randomClass());
+                    } else if (key.isReadable()) {
+                        session.read();
+                    }
+                } catch (IOException e) {
+                    System.out.println("Exception in session: " + e.getMessage());
+                    session.close();
+                    connect();
+                }
+            }
+            now = System.currentTimeMillis();
+        }
+        if (server != null && cpuAtStart >= 0) {
+            serverCpuNanos = server.getCpuNanos() - cpuAtStart;
+        }
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private byte randomClass() {
+        return (byte) (InputJournal.KNIGHT + random.nextInt(3));
+    }
+
+    /**
+     * One game played over one connection
+     */
+    private class Session {
+
+        private final SocketChannel channel;
+        private final ByteBuffer in = ByteBuffer.allocate(8192);
+        private final ByteBuffer out = ByteBuffer.allocate(1);
+        private long sentAt;
+
+        /**
+         * Whether the class was chosen. With -stream it is chosen after the
+         * answer to STREAM.
+         */
+        private boolean chosen;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+            this.chosen = !stream;
+        }
+
+        /**
+         * Sends one command. A single byte always fits in the socket buffer
+         * because every session waits for the answer before sending again.
+         */
+        void send(byte c) throws IOException {
+            out.clear();
+            out.put(c);
+            out.flip();
+            sentAt = System.nanoTime();
+            channel.write(out);
+        }
+
+        /**
+         * Reads the messages that arrived and answers every STATE with the
+         * next command
+         */
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                throw new IOException("Server closed the session");
+            }
+            if (measuring) {
+                bytes += n;
+            }
+            in.flip();
+            while (in.remaining() >= 5 && in.remaining() >= 5 + in.getInt(in.position() + 1)) {
+                byte type = in.get();
+                int length = in.getInt();
+                if (type != GameServer.STATE) {
+                    in.position(in.position() + length); // the game itself is not needed to play
+                    continue;
+                }
+                long nanos = System.nanoTime() - sentAt;
+                boolean alive = in.get(in.position() + length - 1) != 0;
+                in.position(in.position() + length);
+                if (measuring) {
+                    latency.record(nanos);
+                    commands++;
+                }
+                if (!chosen) {
+                    chosen = true;
+                    send(randomClass());
+                } else if (alive) {
+                    send(MOVES[random.nextInt(MOVES.length)]);
+                } else {
+                    finished++;
+                    close();
+                    connect();
+                    break;
+                }
+            }
+            in.compact();
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean stream = args.length > 0 && args[0].equals("-stream");
+        if (stream) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        GameServer server = null;
+        int port;
+        if (args.length > 2) {
+            port = Integer.parseInt(args[2]);
+        } else {
+            server = new GameServer(0, Runtime.getRuntime().availableProcessors());
+            port = server.getPort();
+        }
+        LoadTestClient client = new LoadTestClient(new InetSocketAddress("localhost", port), server, stream);
+        client.run(sessions, Math.min(5000, seconds * 500L), seconds * 1000L);
+
+        double rate = client.commands / (double) seconds;
+        System.out.printf("%d sessions for %d s: %d commands, %.0f commands/s, %d games started, %d finished%n",
+                sessions, seconds, client.commands, rate, client.started, client.finished);
+        System.out.printf("command latency: p50 %d us, p90 %d us, p99 %d us, p99.9 %d us, max %d us%n",
+                client.latency.percentile(0.50) / 1000, client.latency.percentile(0.90) / 1000,
+                client.latency.percentile(0.99) / 1000, client.latency.percentile(0.999) / 1000,
+                client.latency.getMaxNanos() / 1000);
+        if (stream) {
+            System.out.printf("received %.1f bytes per command with changes streamed%n",
+                    client.bytes / (double) Math.max(1, client.commands));
+        }
+        if (server != null) {
+            System.out.printf("server: %d event loops, %.1f us to apply a command (p99 %d us)%n",
+                    server.getLoops(), GameServer.COMMAND.getTotalNanos() / 1000.0 / GameServer.COMMAND.getCount(),
+                    GameServer.COMMAND.percentile(0.99) / 1000);
+            if (client.serverCpuNanos > 0) {
+                double perCpuSecond = client.commands / (client.serverCpuNanos / 1e9);
+                System.out.printf("%.0f commands per server CPU second, about %.0f sessions per core at %d commands/s%n",
+                        perCpuSecond, perCpuSecond / HUMAN_COMMANDS_PER_SECOND, HUMAN_COMMANDS_PER_SECOND);
+            }
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * The LootTables class holds what chests and dying monsters give and what the
+ * shops sell, read from a text file instead of being written into the engine.
+ * Every line of the file is one entry:
+ *
+ * chest EFFECT amount weight [weight per depth]
+ * drop EFFECT amount weight [weight per depth]
+ * shop SHOPHP|SHOPAR EFFECT amount price
+ *
+ * An entry of a table is drawn with a chance of its weight divided by the
+ * weights of all entries of the table. The weight per depth is added to the
+ * weight for every level below the first, so entries can get more or less
+ * likely deeper in the dungeon; a weight never goes below zero. Empty lines
+ * and lines starting with # are ignored.
+ *
+ * Draws use alias tables (Vose's alias method): every entry gets a column with
+ * a chance of keeping it and another entry it gives the rest of the column to,
+ * so one draw is one column and one comparison however long the table is. A
+ * draw takes a single random number, as the if chains it replaced did, so the
+ * game's random number generator is used the same number of times. Alias
+ * tables of tables whose weights change with depth are built once per depth.
+ *
+ * The tables are read from the file named by the dungeon.loot property, or
+ * else from assets/loot.txt on the classpath or in the working directory.
+ * reload() reads the file again while the game runs, for example from
+ * JConsole; an engine picks up the new tables before the next command of the
+ * player, and a journal being recorded stores the new file with that command,
+ * so a replay draws from the same tables at the same time. The tables a
+ * journal starts with are only named in it, by source and checksum, so a
+ * replay needs the same loot file.
+ * @author sberk
+ */
+public class LootTables {
+
+    /**
+     * System property holding the path of the loot file
+     */
+    public static final String PROPERTY = "dungeon.loot";
+
+    /**
+     * Loot file on the classpath and in the working directory
+     */
+    static final String DEFAULT_FILE = "assets/loot.txt";
+
+    /**
+     * What an entry does to the player or the level
+     */
+    enum Effect {
+        /** amount health potions */
+        POTION,
+        /** amount coins, one point of score each */
+        COIN,
+        /** every monster of the level disappears */
+        KILL_MONSTERS,
+        /** the player kills with one hit for amount turns */
+        ONE_HIT_KILL,
+        /** the player can't be hurt for amount turns */
+        IMMORTALITY,
+        /** damage increased by amount */
+        DAMAGE,
+        /** dodge chance increased by amount */
+        DODGE,
+        /** amount armour */
+        ARMOUR,
+        /** critical damage increased by amount */
+        CRIT_DAMAGE,
+        /** critical damage chance increased by amount */
+        CRIT_CHANCE,
+        /** max health increased by amount */
+        MAX_HEALTH,
+        /** nothing happens */
+        NOTHING
+    }
+
+    /**
+     * One line of the file
+     */
+    static class Entry {
+
+        final Effect effect;
+        final double amount;
+        final double weight;
+        final double weightPerDepth;
+
+        Entry(Effect effect, double amount, double weight, double weightPerDepth) {
+            this.effect = effect;
+            this.amount = amount;
+            this.weight = weight;
+            this.weightPerDepth = weightPerDepth;
+        }
+
+        /**
+         * @return weight of the entry on a level
+         */
+        double weightAt(int depth) {
+            return Math.max(0, weight + weightPerDepth * (depth - 1));
+        }
+    }
+
+    /**
+     * Entries drawn at random, with their alias tables
+     */
+    static class Table {
+
+        final List<Entry> entries;
+
+        /**
+         * true if a weight changes with depth
+         */
+        private final boolean scaled;
+
+        /**
+         * Alias table for every depth, or only for depth 1 if no weight
+         * changes with depth. A table with a total of zero has no weight left
+         * at that depth.
+         */
+        private final ConcurrentHashMap<Integer, Alias> aliases = new ConcurrentHashMap<Integer, Alias>();
+
+        Table(List<Entry> entries) {
+            this.entries = Collections.unmodifiableList(new ArrayList<Entry>(entries));
+            boolean any = false;
+            for (Entry e : entries) {
+                any |= e.weightPerDepth != 0;
+            }
+            this.scaled = any;
+        }
+
+        /**
+         * Draws an entry
+         * @param depth current depth of the dungeon
+         * @param f random number from 0 to 1
+         * @return the entry, or null if the table is empty or every weight is
+         * zero at this depth
+         */
+        Entry draw(int depth, double f) {
+            if (entries.isEmpty()) {
+                return null;
+            }
+            Alias alias = aliases.computeIfAbsent(scaled ? depth : 1, this::build);
+            return alias.total > 0 ? entries.get(alias.draw(f)) : null;
+        }
+
+        private Alias build(int depth) {
+            double[] weights = new double[entries.size()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = entries.get(i).weightAt(depth);
+            }
+            return new Alias(weights);
+        }
+    }
+
+    /**
+     * An alias table: column i keeps entry i with chance keep[i] and gives
+     * the rest to entry alias[i]
+     */
+    static class Alias {
+
+        final double[] keep;
+        final int[] alias;
+        final double total;
+
+        /**
+         * Builds the table with Vose's method: columns holding less than the
+         * mean weight are topped up from columns holding more, one at a time
+         * @param weights weights of the entries, not all zero
+         */
+        Alias(double[] weights) {
+            int n = weights.length;
+            keep = new double[n];
+            alias = new int[n];
+            double sum = 0;
+            for (double w : weights) {
+                sum += w;
+            }
+            total = sum;
+            if (sum <= 0) {
+                return;
+            }
+            double[] scaled = new double[n];
+            int[] small = new int[n];
+            int[] large = new int[n];
+            int smallCount = 0;
+            int largeCount = 0;
+            for (int i = 0; i < n; i++) {
+                scaled[i] = weights[i] * n / sum;
+                if (scaled[i] < 1) {
+                    small[smallCount++] = i;
+                } else {
+                    large[largeCount++] = i;
+                }
+            }
+            while (smallCount > 0 && largeCount > 0) {
+                int s = small[--smallCount];
+                int l = large[--largeCount];
+                keep[s] = scaled[s];
+                alias[s] = l;
+                scaled[l] = scaled[l] + scaled[s] - 1;
+                if (scaled[l] < 1) {
+                    small[smallCount++] = l;
+                } else {
+                    large[largeCount++] = l;
+                }
+            }
+            // what is left is full up to rounding errors
+            while (largeCount > 0) {
+                int l = large[--largeCount];
+                keep[l] = 1;
+                alias[l] = l;
+            }
+            while (smallCount > 0) {
+                int s = small[--smallCount];
+                keep[s] = 1;
+                alias[s] = s;
+            }
+        }
+
+        /**
+         * Draws an entry with one random number: its whole part picks the
+         * column and the fraction left decides between the column's entry and
+         * its alias
+         * @param f random number from 0 to 1
+         * @return index of the entry
+         */
+        int draw(double f) {
+            int n = keep.length;
+            double x = f * n;
+            int column = Math.min((int) x, n - 1);
+            return x - column < keep[column] ? column : alias[column];
+        }
+    }
+
+    /**
+     * What a shop sells
+     */
+    static class Offer {
+
+        final Effect effect;
+        final double amount;
+        final int price;
+
+        Offer(Effect effect, double amount, int price) {
+            this.effect = effect;
+            this.amount = amount;
+            this.price = price;
+        }
+    }
+
+    private static volatile LootTables current;
+
+    /**
+     * What opening a chest gives
+     */
+    final Table chest;
+
+    /**
+     * What a dying monster leaves
+     */
+    final Table drop;
+
+    /**
+     * What the potion shop and the armour shop sell, null if nothing
+     */
+    final Offer potionShop;
+    final Offer armourShop;
+
+    /**
+     * Where the tables were read from
+     */
+    final String source;
+
+    /**
+     * The whole file the tables were read from, so a journal can store it
+     */
+    final byte[] text;
+
+    /**
+     * CRC-32 of the file the tables were read from, so results that depend on
+     * the tables can tell two versions of a file apart
+     */
+    final long checksum;
+
+    LootTables(List<Entry> chest, List<Entry> drop, Offer potionShop, Offer armourShop, String source, byte[] text) {
+        this.chest = new Table(chest);
+        this.drop = new Table(drop);
+        this.potionShop = potionShop;
+        this.armourShop = armourShop;
+        this.source = source;
+        this.text = text;
+        CRC32 crc = new CRC32();
+        crc.update(text);
+        this.checksum = crc.getValue();
+    }
+
+    /**
+     * @return the source and checksum of the file, which name these tables
+     */
+    String id() {
+        return source + "@" + Long.toHexString(checksum);
+    }
+
+    /**
+     * @return the loaded tables, read the first time they are needed
+     */
+    static LootTables current() {
+        LootTables tables = current;
+        if (tables == null) {
+            synchronized (LootTables.class) {
+                if (current == null) {
+                    try {
+                        current = load();
+                    } catch (IOException e) {
+                        System.out.println("Exception loading loot tables: " + e.getMessage());
+                        current = new LootTables(new ArrayList<Entry>(), new ArrayList<Entry>(), null, null, "none", new byte[0]);
+                    }
+                }
+                tables = current;
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Reads the loot file again and uses it from the next draw on. If the file
+     * can't be read the tables in use are kept.
+     * @return a short description of the tables or of the error
+     */
+    public static String reload() {
+        try {
+            LootTables tables = load();
+            current = tables;
+            return tables.toString();
+        } catch (IOException e) {
+            System.out.println("Exception reloading loot tables: " + e.getMessage());
+            return "Tables not reloaded: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Reads the loot file from the property's path or the default places
+     * @throws IOException if there is no file or a line is wrong
+     */
+    static LootTables load() throws IOException {
+        String path = System.getProperty(PROPERTY);
+        if (path != null) {
+            try (InputStream in = new FileInputStream(path)) {
+                return parse(in, path);
+            }
+        }
+        InputStream in = LootTables.class.getResourceAsStream("/" + DEFAULT_FILE);
+        if (in == null && new File(DEFAULT_FILE).isFile()) {
+            in = new FileInputStream(DEFAULT_FILE);
+        }
+        if (in == null) {
+            throw new IOException("Missing " + DEFAULT_FILE);
+        }
+        try {
+            return parse(in, DEFAULT_FILE);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads tables in the format described above
+     * @param in the text of the file
+     * @param source name of the file, for messages
+     * @throws IOException if a line is wrong
+     */
+    static LootTables parse(InputStream in, String source) throws IOException {
+        byte[] text = in.readAllBytes();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(text),
+                StandardCharsets.UTF_8));
+        List<Entry> chest = new ArrayList<Entry>();
+        List<Entry> drop = new ArrayList<Entry>();
+        Offer potionShop = null;
+        Offer armourShop = null;
+        int number = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            try {
+                switch (words[0]) {
+                    case "chest":
+                    case "drop": {
+                        if (words.length < 4 || words.length > 5) {
+                            throw new IllegalArgumentException("expected " + words[0] + " EFFECT amount weight [weight per depth]");
+                        }
+                        double weight = Double.parseDouble(words[3]);
+                        if (weight < 0) {
+                            throw new IllegalArgumentException("negative weight");
+                        }
+                        Entry entry = new Entry(effect(words[1]), Double.parseDouble(words[2]), weight,
+                                words.length == 5 ? Double.parseDouble(words[4]) : 0);
+                        (words[0].equals("chest") ? chest : drop).add(entry);
+                        break;
+                    }
+                    case "shop": {
+                        if (words.length != 5) {
+                            throw new IllegalArgumentException("expected shop SHOPHP|SHOPAR EFFECT amount price");
+                        }
+                        Offer offer = new Offer(effect(words[2]), Double.parseDouble(words[3]),
+                                Integer.parseInt(words[4]));
+                        if (words[1].equals("SHOPHP")) {
+                            potionShop = offer;
+                        } else if (words[1].equals("SHOPAR")) {
+                            armourShop = offer;
+                        } else {
+                            throw new IllegalArgumentException("unknown shop " + words[1]);
+                        }
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("unknown table " + words[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException is an IllegalArgumentException too
+                throw new IOException(source + " line " + number + ": " + e.getMessage());
+            }
+        }
+        return new LootTables(chest, drop, potionShop, armourShop, source, text);
+    }
+
+    private static Effect effect(String name) {
+        try {
+            return Effect.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown effect " + name);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return chest.entries.size() + " chest entries, " + drop.entries.size() + " drop entries from " + source;
+    }
+}
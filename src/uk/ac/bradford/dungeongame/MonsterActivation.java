@@ -0,0 +1,260 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+
+/**
+ * The MonsterActivation class decides which monsters move in a turn. A monster
+ * is dormant until the player comes within the activation radius or it stands
+ * on a tile the player can see; from then on it is active and chases the
+ * player. It becomes dormant again only when it is out of sight and more than
+ * twice the radius away, so monsters at the edge of the radius do not switch
+ * every turn.
+ *
+ * Dormant monsters are never looked at: waking only checks the tiles around
+ * the player and the tiles in view, using a grid that stores which monster
+ * stands on every tile. The same grid answers whether a tile is taken by a
+ * monster, so a turn costs time for the active monsters only, however many
+ * monsters a level has.
+ * @author sberk
+ */
+class MonsterActivation {
+
+    private final int radius;
+
+    /**
+     * false to make every monster active, as before activation existed
+     */
+    private boolean enabled = true;
+
+    /**
+     * Monsters of the engine the grid was built for. When the engine replaces
+     * the array, for a new level or a loaded game, the grid is built again.
+     */
+    private Entity[] monsters;
+    private int width;
+    private int height;
+
+    /**
+     * Slot in the monsters array plus one of the monster that last entered a
+     * tile, by tile, column by column. An entry is only trusted while that
+     * monster is alive and still on the tile.
+     */
+    private int[] occupant = new int[0];
+
+    /**
+     * Whether the monster of a slot is active, and the active slots in
+     * increasing order, so monsters move in the same order as in the array
+     */
+    private boolean[] active = new boolean[0];
+    private int[] activeSlots = new int[0];
+    private int activeCount;
+
+    /**
+     * Creates the activation of an engine's monsters
+     * @param radius distance at which monsters wake up
+     */
+    MonsterActivation(int radius) {
+        this.radius = radius;
+    }
+
+    /**
+     * @param enabled false to make every monster active, used to compare
+     */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        monsters = null;
+    }
+
+    /**
+     * Forgets everything, used when monsters were moved without the engine
+     * knowing
+     */
+    void clear() {
+        monsters = null;
+    }
+
+    /**
+     * Wakes monsters near the player or in view, puts far away ones to sleep
+     * and returns the active slots
+     * @param engine the engine whose monsters move this turn
+     * @return number of active slots, which are the first ones of
+     * getActiveSlots()
+     */
+    int update(GameEngine engine) {
+        sync(engine);
+        PlayerUtilities p = engine.player;
+        if (p == null) {
+            return activeCount;
+        }
+        int px = p.getX();
+        int py = p.getY();
+        if (enabled) {
+            for (int x = Math.max(0, px - radius); x <= Math.min(width - 1, px + radius); x++) {
+                for (int y = Math.max(0, py - radius); y <= Math.min(height - 1, py + radius); y++) {
+                    wake(x * height + y);
+                }
+            }
+            int[] visible = engine.fov.getVisibleCells();
+            if (visible != null) {
+                for (int cell : visible) {
+                    wake(cell);
+                }
+            }
+            sleep(engine, px, py);
+        }
+        return activeCount;
+    }
+
+    /**
+     * @return active slots, valid up to the count returned by update
+     */
+    int[] getActiveSlots() {
+        return activeSlots;
+    }
+
+    /**
+     * @param engine the engine of the monsters
+     * @param slot slot in the engine's monsters array
+     * @return true if the monster of the slot is active
+     */
+    boolean isActive(GameEngine engine, int slot) {
+        sync(engine);
+        return slot < active.length && active[slot];
+    }
+
+    /**
+     * Builds the grid for the engine's monsters and makes the monsters of
+     * some slots active, as they were when the game was saved
+     * @param engine the engine whose monsters were just loaded
+     * @param flags true for every active slot
+     */
+    void restore(GameEngine engine, boolean[] flags) {
+        monsters = null;
+        sync(engine);
+        if (!enabled) {
+            return; // every monster is active already
+        }
+        for (int i = 0; i < flags.length && i < active.length; i++) {
+            if (flags[i] && monsters[i] != null) {
+                active[i] = true;
+                activeSlots[activeCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return number of monster slots that are active
+     */
+    int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * Returns the monster standing on a tile
+     * @param engine the engine of the monsters
+     * @param x X coordinate of the tile
+     * @param y Y coordinate of the tile
+     * @return the monster on the tile, null if there is none
+     */
+    Entity monsterAt(GameEngine engine, int x, int y) {
+        sync(engine);
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            return null;
+        }
+        int slot = occupant[x * height + y] - 1;
+        if (slot < 0) {
+            return null;
+        }
+        Entity m = monsters[slot];
+        return m != null && m.getX() == x && m.getY() == y ? m : null;
+    }
+
+    /**
+     * Called by the engine after a monster moved to keep the grid up to date
+     * @param m the monster that moved
+     * @param fromX X coordinate the monster came from
+     * @param fromY Y coordinate the monster came from
+     */
+    void moved(Entity m, int fromX, int fromY) {
+        int from = fromX * height + fromY;
+        int slot = occupant[from] - 1;
+        if (slot < 0 || monsters[slot] != m) {
+            clear(); // the grid was out of date, it is built again when next used
+            return;
+        }
+        occupant[from] = 0;
+        occupant[m.getX() * height + m.getY()] = slot + 1;
+    }
+
+    /**
+     * Builds the grid again when the engine has a new level or new monsters
+     */
+    private void sync(GameEngine engine) {
+        if (monsters == engine.monsters && monsters != null) {
+            return;
+        }
+        monsters = engine.monsters;
+        width = engine.dungeonWidth;
+        height = engine.dungeonHeight;
+        if (occupant.length != width * height) {
+            occupant = new int[width * height];
+        } else {
+            Arrays.fill(occupant, 0);
+        }
+        int slots = monsters == null ? 0 : monsters.length;
+        active = new boolean[slots];
+        activeSlots = new int[slots];
+        activeCount = 0;
+        for (int i = 0; i < slots; i++) {
+            Entity m = monsters[i];
+            if (m != null && m.getX() >= 0 && m.getX() < width && m.getY() >= 0 && m.getY() < height) {
+                occupant[m.getX() * height + m.getY()] = i + 1;
+                if (!enabled) {
+                    active[i] = true;
+                    activeSlots[activeCount++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Makes the monster on a tile active if it is dormant
+     */
+    private void wake(int cell) {
+        int slot = occupant[cell] - 1;
+        if (slot < 0 || active[slot]) {
+            return;
+        }
+        Entity m = monsters[slot];
+        if (m == null || m.getX() * height + m.getY() != cell) {
+            return;
+        }
+        active[slot] = true;
+        int i = activeCount++;
+        while (i > 0 && activeSlots[i - 1] > slot) { // keep the slots in order
+            activeSlots[i] = activeSlots[i - 1];
+            i--;
+        }
+        activeSlots[i] = slot;
+    }
+
+    /**
+     * Removes dead monsters from the active slots and makes monsters far away
+     * and out of sight dormant
+     */
+    private void sleep(GameEngine engine, int px, int py) {
+        int kept = 0;
+        for (int k = 0; k < activeCount; k++) {
+            int slot = activeSlots[k];
+            Entity m = monsters[slot];
+            boolean keep = m != null && (Math.max(Math.abs(m.getX() - px), Math.abs(m.getY() - py)) <= 2 * radius
+                    || engine.fov.isVisible(m.getX(), m.getY()));
+            if (keep) {
+                activeSlots[kept++] = slot;
+            } else {
+                active[slot] = false;
+            }
+        }
+        activeCount = kept;
+    }
+}
@@ -0,0 +1,156 @@
+package uk.ac.bradford.dungeongame;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * The PerformanceMonitor class measures where time goes while the game runs:
+ * frame rate, drawing time, the phases of a turn and garbage collection pauses.
+ * The results are drawn as an overlay on top of the dungeon, it is switched on
+ * and off with F3. While the overlay is hidden start() returns 0 and nothing is
+ * recorded, so the measuring points in the game cost almost nothing.
+ * @author sberk
+ */
+class PerformanceMonitor {
+
+    static final RollingStats FRAME_INTERVAL = new RollingStats("frame");
+    static final RollingStats PAINT = new RollingStats("paint");
+    static final RollingStats TURN = new RollingStats("doTurn");
+    static final RollingStats CLEAN_DEAD_MONSTERS = new RollingStats(" cleanDeadMonsters");
+    static final RollingStats MOVE_MONSTERS = new RollingStats(" moveMonsters");
+    static final RollingStats DESCEND_LEVEL = new RollingStats(" descendLevel");
+    static final RollingStats GC_PAUSE = new RollingStats("GC pause");
+
+    /**
+     * Timings shown in the overlay, in this order
+     */
+    private static final RollingStats[] SHOWN = {PAINT, TURN, CLEAN_DEAD_MONSTERS, MOVE_MONSTERS, DESCEND_LEVEL, GC_PAUSE};
+
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 180);
+
+    /**
+     * enabled stores an information if the overlay is shown and timings are recorded
+     */
+    private static volatile boolean enabled = false;
+
+    /**
+     * gcListening stores an information if the GC listener was registered
+     */
+    private static boolean gcListening = false;
+
+    private static long lastFrame = 0;
+    private static volatile long gcCount = 0;
+
+    private PerformanceMonitor() {
+    }
+
+    /**
+     * Returns the start time of a measured part of the game
+     * @return System.nanoTime() if monitoring is enabled, otherwise 0
+     */
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Shows or hides the overlay. Samples from a previous time the overlay was
+     * shown are thrown away.
+     */
+    static synchronized void toggle() {
+        enabled = !enabled;
+        if (enabled) {
+            listenForGc();
+            for (RollingStats s : SHOWN) {
+                s.clear();
+            }
+            FRAME_INTERVAL.clear();
+            lastFrame = 0;
+            gcCount = 0;
+        }
+    }
+
+    /**
+     * Records the time between two drawn frames. Called by Canvas after each paint.
+     */
+    static void frameDrawn() {
+        if (enabled) {
+            long now = System.nanoTime();
+            if (lastFrame != 0) {
+                FRAME_INTERVAL.record(now - lastFrame);
+            }
+            lastFrame = now;
+        }
+    }
+
+    /**
+     * Draws the overlay with frame rate, timing percentiles, heap use and GC
+     * pauses in the top left corner of the dungeon
+     * @param g the graphics object to draw with
+     */
+    static void draw(Graphics g) {
+        if (!enabled) {
+            return;
+        }
+        int lines = SHOWN.length + 3;
+        g.setColor(OVERLAY_BACKGROUND);
+        g.fillRect(4, 4, 360, lines * 14 + 8);
+        g.setColor(Color.white);
+        g.setFont(OVERLAY_FONT);
+        int y = 18;
+        FRAME_INTERVAL.snapshot();
+        long interval = FRAME_INTERVAL.percentile(0.5);
+        g.drawString(String.format("FPS %.1f (median frame interval %.1f ms)",
+                interval == 0 ? 0.0 : 1e9 / interval, interval / 1e6), 10, y);
+        y += 14;
+        g.drawString(String.format("%-18s %7s %7s %7s %4s", "ms", "p50", "p95", "p99", "n"), 10, y);
+        for (RollingStats s : SHOWN) {
+            y += 14;
+            int n = s.snapshot();
+            g.drawString(String.format("%-18s %7.3f %7.3f %7.3f %4d", s.getName(),
+                    s.percentile(0.5) / 1e6, s.percentile(0.95) / 1e6, s.percentile(0.99) / 1e6, n), 10, y);
+        }
+        y += 14;
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        g.drawString(String.format("heap %d / %d MB, %d GCs", heap.getUsed() >> 20,
+                heap.getMax() >> 20, gcCount), 10, y);
+    }
+
+    /**
+     * Registers a listener that records the duration of every garbage collection
+     */
+    private static void listenForGc() {
+        if (gcListening) {
+            return;
+        }
+        gcListening = true;
+        NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification n, Object handback) {
+                if (enabled && GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) {
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+                    GC_PAUSE.record(info.getGcInfo().getDuration() * 1000000L);
+                    gcCount++;
+                }
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,480 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The PerformanceSuite class plays seeded sessions without a window and fails
+ * if a turn, a level or the garbage they make got much worse, so slow paths
+ * such as a search through all spawns or all monsters for every move are
+ * found before they reach a game. The sessions are:
+ *
+ * walk: a long random walk on a normal map, with the player kept alive
+ * dense: the player in the middle of a small floor full of active monsters,
+ * then going down from a deep floor of a big map
+ * crowded: going down and back up from a deep floor of a big map that is
+ * mostly walls, where thousands of monsters take most of the free tiles
+ * descent: going down the stairs a few thousand floors in a row
+ * generate: every level generator on a normal and a big map
+ *
+ * Every session is played once to warm up the JIT and once to measure. For
+ * each session it checks percentiles of the time of a turn or of a level
+ * against an upper limit, and the bytes allocated by the thread per turn or
+ * level. The limits are far above what a normal machine needs, so only a
+ * change in how the time grows trips them; -scale multiplies every limit for
+ * slow machines.
+ *
+ * Results are written as tab separated lines of check, value, unit, limit and
+ * result to the -out file. Given the file of an earlier run with -baseline,
+ * every median and allocation that got more than -tolerance times bigger than
+ * in that run fails too, so two runs on the same machine can be compared
+ * closely. The 99th and 99.9th percentiles move with every GC pause and are
+ * only checked against their limits. The exit status is 1 if any check failed.
+ *
+ * Usage: PerformanceSuite [-out file] [-baseline file] [-tolerance t] [-scale s]
+ * @author sberk
+ */
+public class PerformanceSuite {
+
+    /**
+     * Seed of every session
+     */
+    static final long SEED = 42;
+
+    /**
+     * One measured value and its limit
+     */
+    static class Check {
+
+        final String name;
+        final double value;
+        final String unit;
+        final double limit;
+
+        /**
+         * true if the value is steady enough to be compared with a baseline
+         */
+        final boolean steady;
+
+        /**
+         * Why the check failed, null if it passed
+         */
+        String failure;
+
+        Check(String name, double value, String unit, double limit, boolean steady) {
+            this.name = name;
+            this.value = value;
+            this.unit = unit;
+            this.limit = limit;
+            this.steady = steady;
+        }
+    }
+
+    private final double scale;
+    private final List<Check> checks = new ArrayList<Check>();
+
+    /**
+     * Thread allocation counters of HotSpot, null on JVMs without them
+     */
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * @param scale factor applied to every limit
+     */
+    PerformanceSuite(double scale) {
+        this.scale = scale;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+    }
+
+    /**
+     * Plays every session, warming up before measuring
+     */
+    void run() {
+        for (int pass = 0; pass < 2; pass++) {
+            boolean measure = pass == 1;
+            walk(measure);
+            dense(measure);
+            crowded(measure);
+            descent(measure);
+            generate(measure);
+        }
+    }
+
+    /**
+     * A long random walk of a Knight on a normal map. The player can't die,
+     * so the walk covers the same number of turns on every run.
+     */
+    private void walk(boolean measure) {
+        GameEngine engine = newGame(GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT, 1);
+        SplittableRandom moves = new SplittableRandom(SEED);
+        int turns = measure ? 50000 : 20000;
+        long[] nanos = new long[turns];
+        long allocated = allocated();
+        for (int i = 0; i < turns; i++) {
+            byte c = (byte) (InputJournal.LEFT + moves.nextInt(4));
+            long start = System.nanoTime();
+            InputJournal.apply(engine, c);
+            nanos[i] = System.nanoTime() - start;
+        }
+        allocated = allocated() - allocated;
+        if (measure) {
+            percentiles("walk.turn", nanos, 20, 500, 10000);
+            allocation("walk.allocated", allocated, turns, "bytes/turn", 8192);
+        }
+    }
+
+    /**
+     * Random moves in the middle of floor 500 of a 15 by 15 map, where every
+     * floor tile holds a monster and all of them are within the activation
+     * radius, so nearly every monster is active and work done for every active
+     * monster against every other monster or every tile shows at once. Then
+     * going down from floor 500 of a 100 by 100 map, which finds spawns among
+     * thousands of floor tiles.
+     */
+    private void dense(boolean measure) {
+        GameEngine engine = newGame(15, 15, 500);
+        crowd(engine);
+        SplittableRandom moves = new SplittableRandom(SEED);
+        int turns = measure ? 5000 : 2000;
+        long[] nanos = new long[turns];
+        long active = 0;
+        long alive = 0;
+        long allocated = allocated();
+        for (int i = 0; i < turns; i++) {
+            byte c = (byte) (InputJournal.LEFT + moves.nextInt(4));
+            long start = System.nanoTime();
+            InputJournal.apply(engine, c);
+            nanos[i] = System.nanoTime() - start;
+            active += engine.activation.getActiveCount();
+            for (Entity m : engine.monsters) {
+                if (m != null) {
+                    alive++;
+                }
+            }
+        }
+        allocated = allocated() - allocated;
+        engine = newGame(100, 100, 500);
+        int floors = measure ? 200 : 50;
+        long[] levelNanos = new long[floors];
+        for (int i = 0; i < floors; i++) {
+            Point stairs = engine.findTile(TileType.STAIRS);
+            engine.player.setPosition(stairs.x, stairs.y);
+            long start = System.nanoTime();
+            engine.doTurn();
+            levelNanos[i] = System.nanoTime() - start;
+        }
+        if (measure) {
+            percentiles("dense.turn", nanos, 200, 5000, 50000);
+            allocation("dense.allocated", allocated, turns, "bytes/turn", 65536);
+            // a session where most monsters sleep would not test them at all
+            check("dense.dormant", 1 - active / (double) alive, "share", 0.25, false);
+            percentiles("dense.level", levelNanos, 2000, 20000, 50000);
+        }
+    }
+
+    /**
+     * Floor 10000 of a 200 by 200 map where 6 of every 10 tiles are walls,
+     * so the monsters take most of the free tiles. Going down to a new floor
+     * draws random tiles until one is free for the player, and going back to
+     * a floor that was left finds the tiles no monster stands on; both have
+     * to stay fast however few tiles are free. Each pass goes down, up and
+     * down again, and new and restored floors are timed apart. Monsters
+     * sometimes break the up stairs, so turns that stay on the floor are
+     * not timed.
+     */
+    private void crowded(boolean measure) {
+        GameEngine engine = new GameEngine(null, 200, 200, new GameRandom(SEED));
+        engine.generators = new LevelGenerator[]{LevelGenerator.forName("classic")};
+        engine.wallChance = 0.6; // above the most the game reaches, so it stays
+        engine.depth = 10000;
+        engine.startGame();
+        InputJournal.apply(engine, InputJournal.KNIGHT);
+        engine.immortality = true;
+        engine.immortalityTurns = Integer.MAX_VALUE;
+        int passes = measure ? 30 : 10;
+        TileType[] ways = {TileType.STAIRS, TileType.STAIRS_UP, TileType.STAIRS};
+        long[] generated = new long[passes * ways.length];
+        long[] restored = new long[passes * ways.length];
+        int generatedCount = 0;
+        int restoredCount = 0;
+        for (int i = 0; i < passes * ways.length; i++) {
+            Point stairs = engine.findTile(ways[i % ways.length]);
+            if (stairs == null) {
+                continue;
+            }
+            engine.player.setPosition(stairs.x, stairs.y);
+            int depth = engine.depth;
+            int stored = engine.floors.getFloorCount(); // a restored floor leaves the store
+            long start = System.nanoTime();
+            engine.doTurn();
+            long time = System.nanoTime() - start;
+            if (engine.depth != depth && engine.floors.getFloorCount() > stored) {
+                generated[generatedCount++] = time;
+            } else if (engine.depth != depth) {
+                restored[restoredCount++] = time;
+            }
+        }
+        if (measure) {
+            percentiles("crowded.level", Arrays.copyOf(generated, generatedCount), 50000, 100000, 100000);
+            percentiles("crowded.return", Arrays.copyOf(restored, restoredCount), 20000, 100000, 100000);
+        }
+    }
+
+    /**
+     * Walks onto the stairs of every floor down to floor 3000, timing the
+     * turns that go down, which generate, fill and store a floor
+     */
+    private void descent(boolean measure) {
+        GameEngine engine = newGame(GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT, 1);
+        int floors = measure ? 3000 : 1000;
+        long[] nanos = new long[floors - 1];
+        long allocated = allocated();
+        for (int i = 0; i < nanos.length; i++) {
+            Point stairs = engine.findTile(TileType.STAIRS);
+            engine.player.setPosition(stairs.x, stairs.y);
+            long start = System.nanoTime();
+            engine.doTurn();
+            nanos[i] = System.nanoTime() - start;
+        }
+        allocated = allocated() - allocated;
+        if (measure) {
+            percentiles("descent.level", nanos, 500, 10000, 50000);
+            allocation("descent.allocated", allocated, nanos.length, "bytes/level", 262144);
+        }
+    }
+
+    /**
+     * Generates levels with every generator, on a normal map and on a 512 by
+     * 512 map, which is generated in regions
+     */
+    private void generate(boolean measure) {
+        Balance balance = new Balance();
+        for (String name : new String[]{"classic", "bsp", "caves"}) {
+            LevelGenerator generator = LevelGenerator.forName(name);
+            GameRandom rng = new GameRandom(SEED);
+            int small = measure ? 2000 : 1000;
+            long[] nanos = new long[small];
+            for (int i = 0; i < small; i++) {
+                long start = System.nanoTime();
+                generator.generate(GameEngine.DUNGEON_WIDTH, GameEngine.DUNGEON_HEIGHT, rng, balance.wallChance, balance);
+                nanos[i] = System.nanoTime() - start;
+            }
+            int big = measure ? 20 : 5;
+            long[] bigNanos = new long[big];
+            long allocated = allocated();
+            for (int i = 0; i < big; i++) {
+                long start = System.nanoTime();
+                generator.generate(512, 512, rng, balance.wallChance, balance);
+                bigNanos[i] = System.nanoTime() - start;
+            }
+            allocated = allocated() - allocated;
+            if (measure) {
+                percentiles("generate." + name + ".small", nanos, 200, 10000, 50000);
+                Arrays.sort(bigNanos);
+                check("generate." + name + ".big.p50", bigNanos[big / 2] / 1e6, "ms", 200 * scale, true);
+                allocation("generate." + name + ".big.allocated", allocated, big, "bytes/level", 16 << 20);
+            }
+        }
+    }
+
+    /**
+     * Starts a seeded game with an immortal Knight on a given floor
+     */
+    private static GameEngine newGame(int width, int height, int depth) {
+        GameEngine engine = new GameEngine(null, width, height, new GameRandom(SEED));
+        if (depth != 1) {
+            engine.depth = depth;
+            engine.startGame();
+        }
+        InputJournal.apply(engine, InputJournal.KNIGHT);
+        engine.immortality = true;
+        engine.immortalityTurns = Integer.MAX_VALUE;
+        return engine;
+    }
+
+    /**
+     * Moves the player to the floor tile nearest the middle of the map,
+     * swapping places with the monster standing there
+     */
+    private static void crowd(GameEngine engine) {
+        int middleX = engine.dungeonWidth / 2;
+        int middleY = engine.dungeonHeight / 2;
+        Point best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int x = 0; x < engine.dungeonWidth; x++) {
+            for (int y = 0; y < engine.dungeonHeight; y++) {
+                int distance = Math.max(Math.abs(x - middleX), Math.abs(y - middleY));
+                if (engine.tiles[x][y] == TileType.FLOOR && distance < bestDistance) {
+                    best = new Point(x, y);
+                    bestDistance = distance;
+                }
+            }
+        }
+        Entity monster = engine.activation.monsterAt(engine, best.x, best.y);
+        if (monster != null) {
+            monster.setPosition(engine.player.getX(), engine.player.getY());
+        }
+        engine.player.setPosition(best.x, best.y);
+        engine.activation.clear(); // the monster moved without the engine knowing
+    }
+
+    /**
+     * @return bytes allocated by this thread so far, 0 if not known
+     */
+    private long allocated() {
+        return threads == null ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Adds checks of the 50th, 99th and 99.9th percentile of durations
+     * @param name prefix of the check names
+     * @param nanos the durations, sorted by this method
+     * @param p50 p99 p999 limits in microseconds before scaling
+     */
+    private void percentiles(String name, long[] nanos, double p50, double p99, double p999) {
+        Arrays.sort(nanos);
+        check(name + ".p50", percentile(nanos, 0.50) / 1e3, "us", p50 * scale, true);
+        check(name + ".p99", percentile(nanos, 0.99) / 1e3, "us", p99 * scale, false);
+        check(name + ".p999", percentile(nanos, 0.999) / 1e3, "us", p999 * scale, false);
+    }
+
+    private static long percentile(long[] sorted, double q) {
+        return sorted[Math.min(sorted.length - 1, (int) (q * sorted.length))];
+    }
+
+    /**
+     * Adds a check of the bytes allocated per turn or level, unless the JVM
+     * can't count them
+     */
+    private void allocation(String name, long bytes, int count, String unit, double limit) {
+        if (threads != null) {
+            check(name, bytes / (double) count, unit, limit * scale, true);
+        }
+    }
+
+    /**
+     * Adds a check that fails if the value is above the limit
+     * @param steady true if the value can be compared with a baseline
+     */
+    private void check(String name, double value, String unit, double limit, boolean steady) {
+        Check check = new Check(name, value, unit, limit, steady);
+        if (value > limit) {
+            check.failure = "above limit";
+        }
+        checks.add(check);
+    }
+
+    /**
+     * Fails every steady check that got more than tolerance times bigger than
+     * in an earlier run
+     * @param baseline values of the earlier run by check name
+     * @param tolerance factor a value may grow by
+     */
+    void compare(Map<String, Double> baseline, double tolerance) {
+        for (Check check : checks) {
+            Double before = baseline.get(check.name);
+            if (check.steady && check.failure == null && before != null && check.value > before * tolerance) {
+                check.failure = String.format(Locale.ROOT, "%.2fx baseline %.3f", check.value / before, before);
+            }
+        }
+    }
+
+    /**
+     * Reads the values of a results file
+     * @param file a file written by write
+     * @return values by check name
+     * @throws IOException if the file can't be read
+     */
+    static Map<String, Double> read(Path file) throws IOException {
+        Map<String, Double> values = new HashMap<String, Double>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] words = line.split("\t");
+                if (!line.startsWith("#") && words.length >= 2) {
+                    values.put(words[0], Double.parseDouble(words[1]));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Writes the results as tab separated lines, one per check
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    void write(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("# check\tvalue\tunit\tlimit\tresult");
+            for (Check check : checks) {
+                out.printf(Locale.ROOT, "%s\t%.3f\t%s\t%.3f\t%s%n", check.name, check.value, check.unit, check.limit,
+                        check.failure == null ? "ok" : "FAIL " + check.failure);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path out = Paths.get("performance.tsv");
+        Path baseline = null;
+        double tolerance = 1.5;
+        double scale = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-out": out = Paths.get(args[++i]); break;
+                case "-baseline": baseline = Paths.get(args[++i]); break;
+                case "-tolerance": tolerance = Double.parseDouble(args[++i]); break;
+                case "-scale": scale = Double.parseDouble(args[++i]); break;
+                default:
+                    System.out.println("Usage: PerformanceSuite [-out file] [-baseline file] [-tolerance t] [-scale s]");
+                    return;
+            }
+        }
+        // read first, the results may be written over the baseline
+        Map<String, Double> before = baseline == null ? null : read(baseline);
+
+        PerformanceSuite suite = new PerformanceSuite(scale);
+        long start = System.nanoTime();
+        suite.run();
+        if (before != null) {
+            suite.compare(before, tolerance);
+        }
+        suite.write(out);
+
+        int failed = 0;
+        for (Check check : suite.checks) {
+            System.out.printf(Locale.ROOT, "%-32s %12.3f %-12s limit %12.3f  %s%n", check.name, check.value, check.unit,
+                    check.limit, check.failure == null ? "ok" : "FAIL " + check.failure);
+            if (check.failure != null) {
+                failed++;
+            }
+        }
+        System.out.printf("%d checks, %d failed, in %.1f s; results written to %s%n",
+                suite.checks.size(), failed, (System.nanoTime() - start) / 1e9, out);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+}
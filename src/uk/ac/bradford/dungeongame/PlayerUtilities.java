@@ -146,7 +146,6 @@ public class PlayerUtilities extends Entity {
      * Adds coin to player's inventory
      */
     public void addCoin() {
-        GameEngine.score += 1;
         coin += 1;
     }
     
@@ -158,6 +157,22 @@ public class PlayerUtilities extends Entity {
         coin -= coins;
     }
     
+    /**
+     * Sets the amount of coins, used when a saved game is loaded
+     * @param coin amount of coins
+     */
+    void setCoin(int coin) {
+        this.coin = coin;
+    }
+    
+    /**
+     * Sets the number of potions, used when a saved game is loaded
+     * @param potionsNumber number of health potions
+     */
+    void setPotionsNumber(int potionsNumber) {
+        this.potionsNumber = potionsNumber;
+    }
+    
     /**
      * Increases number of potions that player has
      */
@@ -172,7 +187,6 @@ public class PlayerUtilities extends Entity {
         if(potionsNumber > 0) {
             potionsNumber--;
             changeHealth(30);
-            GameEngine.increasedHealth = true;
         }
     }
     
@@ -0,0 +1,255 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The Recording class reads a recording written by RecordingWriter and moves an
+ * engine to any step of it. Seeking finds the last keyframe at or before the
+ * step with a binary search of the keyframe index, then applies the deltas up
+ * to the step, at most keyframe interval - 1 of them, and decodes the result
+ * into the engine once. Moving forward inside the same keyframe interval
+ * continues from the current step instead, so playing a recording step by step
+ * costs one delta per step. The file is memory mapped.
+ *
+ * Usage: Recording journal-file recording-file [keyframe-interval] replays a
+ * journal into a recording and reports its size and seek times.
+ * @author sberk
+ */
+public class Recording {
+
+    /**
+     * Default number of steps between two keyframes
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+
+    private final ByteBuffer file;
+    private final int keyframeInterval;
+    private final int[] keySteps;
+    private final int[] keyPositions;
+
+    /**
+     * Position of the index, which is also the end of the last frame
+     */
+    private final int end;
+
+    private final int steps;
+
+    /**
+     * Encoding of the current step and the position of the next frame
+     */
+    private byte[] state;
+    private int currentStep = -1;
+    private int nextPosition;
+
+    /**
+     * Read position of readVarint
+     */
+    private int cursor;
+
+    /**
+     * Opens a recording file
+     * @param path the file to read
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public Recording(Path path) throws IOException {
+        this(map(path));
+    }
+
+    /**
+     * Reads the header and the keyframe index of a recording
+     * @param file the whole recording
+     * @throws IOException if the buffer is not a recording of a known version
+     */
+    Recording(ByteBuffer file) throws IOException {
+        this.file = file;
+        int size = file.limit();
+        if (size < 4 + 2 + 4 + 4 + 8 + 4 || file.getInt(0) != RecordingWriter.MAGIC
+                || file.getInt(size - 4) != RecordingWriter.MAGIC) {
+            throw new IOException("Not a recording file or not closed");
+        }
+        short version = file.getShort(4);
+        if (version != RecordingWriter.VERSION) {
+            throw new IOException("Unsupported recording version " + version);
+        }
+        keyframeInterval = file.getInt(6);
+        end = (int) file.getLong(size - 12);
+        int count = file.getInt(end);
+        keySteps = new int[count];
+        keyPositions = new int[count];
+        for (int i = 0; i < count; i++) {
+            keySteps[i] = file.getInt(end + 4 + i * 12);
+            keyPositions[i] = (int) file.getLong(end + 8 + i * 12);
+        }
+        if (count == 0) {
+            steps = 0;
+        } else {
+            // steps after the last keyframe are counted once, frames only go forward
+            int n = keySteps[count - 1];
+            int position = skip(keyPositions[count - 1]);
+            while (position < end) {
+                position = skip(position);
+                n++;
+            }
+            steps = n + 1;
+        }
+    }
+
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * @return number of steps in the recording
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    /**
+     * @return number of keyframes in the recording
+     */
+    public int getKeyframes() {
+        return keySteps.length;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    /**
+     * Moves an engine to a step of the recording
+     * @param engine the engine to load the step into, of the recorded size
+     * @param step the step, from 0 to getSteps() - 1
+     * @throws IOException if the recording is damaged or the engine has a
+     * different size
+     */
+    public void seek(GameEngine engine, int step) throws IOException {
+        if (step < 0 || step >= steps) {
+            throw new IOException("Step " + step + " is not in the recording");
+        }
+        int key = Arrays.binarySearch(keySteps, step);
+        if (key < 0) {
+            key = -key - 2; // last keyframe before the step
+        }
+        if (currentStep > step || currentStep < keySteps[key]) {
+            nextPosition = keyPositions[key];
+            currentStep = keySteps[key] - 1;
+        }
+        while (currentStep < step) {
+            nextPosition = apply(nextPosition);
+            currentStep++;
+        }
+        SaveGame.decode(engine, ByteBuffer.wrap(state));
+    }
+
+    /**
+     * Applies the frame at a position to the current state
+     * @param position position of the frame
+     * @return position of the next frame
+     */
+    private int apply(int position) throws IOException {
+        byte type = file.get(position++);
+        if (type == RecordingWriter.KEY) {
+            int length = file.getInt(position);
+            position += 4;
+            if (state == null || state.length != length) {
+                state = new byte[length];
+            }
+            ByteBuffer b = file.duplicate();
+            b.position(position);
+            b.get(state);
+            return position + length;
+        }
+        if (type != RecordingWriter.DELTA || state == null) {
+            throw new IOException("Recording is damaged at " + (position - 1));
+        }
+        cursor = position;
+        int runs = readVarint();
+        int offset = 0;
+        ByteBuffer b = file.duplicate();
+        for (int i = 0; i < runs; i++) {
+            offset += readVarint();
+            int length = readVarint();
+            b.position(cursor);
+            b.get(state, offset, length);
+            cursor += length;
+            offset += length;
+        }
+        return cursor;
+    }
+
+    /**
+     * Skips the frame at a position without applying it
+     * @param position position of the frame
+     * @return position of the next frame
+     */
+    private int skip(int position) {
+        byte type = file.get(position++);
+        if (type == RecordingWriter.KEY) {
+            return position + 4 + file.getInt(position);
+        }
+        cursor = position;
+        int runs = readVarint();
+        for (int i = 0; i < runs; i++) {
+            readVarint();
+            int length = readVarint();
+            cursor += length;
+        }
+        return cursor;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = file.get(cursor++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: Recording journal-file recording-file [keyframe-interval]");
+            return;
+        }
+        Path recordingFile = Paths.get(args[1]);
+        int interval = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_KEYFRAME_INTERVAL;
+        Replay replay = new Replay(ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0]))));
+        RecordingWriter writer = new RecordingWriter(recordingFile, interval);
+        long start = System.nanoTime();
+        replay.run(writer);
+        writer.close();
+        long nanos = System.nanoTime() - start;
+        long size = Files.size(recordingFile);
+        System.out.printf("Recorded %d steps in %.2f ms: %d bytes, %.1f bytes/step%n",
+                writer.getSteps(), nanos / 1e6, size, (double) size / writer.getSteps());
+
+        Recording recording = new Recording(recordingFile);
+        Random random = new Random(1);
+        int seeks = 10000;
+        long[] times = new long[seeks];
+        for (int i = 0; i < seeks; i++) {
+            int step = random.nextInt(recording.getSteps());
+            long seekStart = System.nanoTime();
+            recording.seek(replay.engine, step);
+            times[i] = System.nanoTime() - seekStart;
+        }
+        Arrays.sort(times);
+        System.out.printf("%d keyframes, random seek p50 %.1f us, p99 %.1f us, max %.1f us%n",
+                recording.getKeyframes(), times[seeks / 2] / 1e3, times[seeks * 99 / 100] / 1e3,
+                times[seeks - 1] / 1e3);
+    }
+}
@@ -0,0 +1,206 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The RecordingWriter class writes a seekable recording of a game, read back by
+ * the Recording class. After every step the state of the engine is encoded in
+ * the SaveGame format and written either as a keyframe, the whole encoding, or
+ * as a delta, the byte ranges that changed since the previous step: moved
+ * monsters, changed tiles and changed game values all show up as a few short
+ * ranges. A keyframe is written every keyframeInterval steps and whenever the
+ * length of the encoding changes, which happens on a new level or a load.
+ * Closing the writer appends an index of all keyframes. The floors the player
+ * has left are not recorded, so a step costs the same at any depth; an engine
+ * moved to a step by Recording has no stored floors.
+ *
+ * Layout (big-endian), version 1:
+ * magic "DGR1", version, keyframe interval, frames, keyframe count, keyframe
+ * step and file position pairs, position of the index, magic.
+ * A keyframe is KEY, length and the encoding. A delta is DELTA, the number of
+ * changed ranges, and for each range the distance from the end of the
+ * previous range, its length and the new bytes, all numbers as varints.
+ * @author sberk
+ */
+public class RecordingWriter {
+
+    static final int MAGIC = 0x44475231;
+    static final short VERSION = 1;
+
+    static final byte KEY = 1;
+    static final byte DELTA = 2;
+
+    /**
+     * Unchanged gaps up to this length are written as part of the surrounding
+     * ranges, because starting a new range costs about as much
+     */
+    private static final int MAX_GAP = 2;
+
+    private final DataOutputStream out;
+    private final int keyframeInterval;
+
+    /**
+     * Encoding of the previous step, null before the first step
+     */
+    private byte[] previous;
+    private byte[] current;
+
+    private int steps;
+
+    /**
+     * Steps and file positions of the keyframes
+     */
+    private int[] keySteps = new int[16];
+    private long[] keyPositions = new long[16];
+    private int keyCount;
+
+    /**
+     * Creates a recording file, replacing it if it exists
+     * @param file the file to write
+     * @param keyframeInterval number of steps between two keyframes
+     * @throws IOException if the file cannot be written
+     */
+    public RecordingWriter(Path file, int keyframeInterval) throws IOException {
+        this.keyframeInterval = keyframeInterval;
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(keyframeInterval);
+    }
+
+    /**
+     * Records the current state of an engine as the next step
+     * @param engine the engine to record
+     * @throws IOException if writing fails
+     */
+    public void step(GameEngine engine) throws IOException {
+        current = encode(engine, current);
+        if (previous == null || previous.length != current.length || steps % keyframeInterval == 0) {
+            writeKey();
+        } else {
+            writeDelta();
+        }
+        byte[] swap = previous;
+        previous = current;
+        current = swap;
+        steps++;
+    }
+
+    /**
+     * Writes the keyframe index and closes the file
+     * @throws IOException if writing fails
+     */
+    public void close() throws IOException {
+        long indexPosition = out.size() & 0xFFFFFFFFL;
+        out.writeInt(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            out.writeInt(keySteps[i]);
+            out.writeLong(keyPositions[i]);
+        }
+        out.writeLong(indexPosition);
+        out.writeInt(MAGIC);
+        out.close();
+    }
+
+    /**
+     * @return number of steps recorded so far
+     */
+    public int getSteps() {
+        return steps;
+    }
+
+    private void writeKey() throws IOException {
+        if (keyCount == keySteps.length) {
+            keySteps = Arrays.copyOf(keySteps, keyCount * 2);
+            keyPositions = Arrays.copyOf(keyPositions, keyCount * 2);
+        }
+        keySteps[keyCount] = steps;
+        keyPositions[keyCount] = out.size() & 0xFFFFFFFFL;
+        keyCount++;
+        out.writeByte(KEY);
+        out.writeInt(current.length);
+        out.write(current);
+    }
+
+    private void writeDelta() throws IOException {
+        int runs = 0;
+        for (int i = nextChange(0); i < current.length; i = nextChange(runEnd(i))) {
+            runs++;
+        }
+        out.writeByte(DELTA);
+        writeVarint(runs);
+        int last = 0;
+        for (int i = nextChange(0); i < current.length; i = nextChange(last)) {
+            int end = runEnd(i);
+            writeVarint(i - last);
+            writeVarint(end - i);
+            out.write(current, i, end - i);
+            last = end;
+        }
+    }
+
+    /**
+     * @return first position from start on whose byte changed, or the length
+     * of the encoding if none did
+     */
+    private int nextChange(int start) {
+        int i = start;
+        while (i < current.length && current[i] == previous[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @return end of the changed range starting at start, joining ranges
+     * separated by at most MAX_GAP unchanged bytes
+     */
+    private int runEnd(int start) {
+        int end = start;
+        int i = start;
+        while (i < current.length && i - end <= MAX_GAP) {
+            if (current[i] != previous[i]) {
+                end = i + 1;
+            }
+            i++;
+        }
+        return end;
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Encodes an engine in the SaveGame format, without the stored floors, into
+     * a single array
+     * @param engine the engine to encode
+     * @param reuse array to fill if it has the right length, may be null
+     * @return the encoding
+     */
+    static byte[] encode(GameEngine engine, byte[] reuse) {
+        ByteBuffer[] buffers = SaveGame.encode(engine, false);
+        int length = 0;
+        for (ByteBuffer b : buffers) {
+            length += b.remaining();
+        }
+        byte[] bytes = reuse != null && reuse.length == length ? reuse : new byte[length];
+        int offset = 0;
+        for (ByteBuffer b : buffers) {
+            int n = b.remaining();
+            b.get(bytes, offset, n);
+            offset += n;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,178 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The Regions class generates the tiles of a big level in square regions at
+ * once. The map is cut into regions of SIZE by SIZE tiles, whatever the number
+ * of threads, and every region draws its tiles from its own random number
+ * generator, seeded from one value of the game's random number generator and
+ * the number of the region. The regions are filled in a fork-join pool and
+ * then stitched: a level has only one fountain and one shop, so the one of
+ * the first region that placed it is kept and the others are turned back into
+ * floor. A level therefore depends only on the seed, not on the threads that
+ * filled it. Small levels are left to the generators' serial loops, so they
+ * come out as they always did.
+ * @author sberk
+ */
+class Regions {
+
+    /**
+     * Width and height of a region in tiles
+     */
+    static final int SIZE = 128;
+
+    /**
+     * Smallest number of tiles a level needs to be generated in regions
+     */
+    static final int MIN_TILES = 256 * 256;
+
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Fills the tiles of one region
+     */
+    interface Filler {
+
+        /**
+         * Sets the tiles of a region, placing at most one fountain and one shop
+         * and recording where they are in the region
+         * @param level the level being generated
+         * @param region part of the level to fill and its random number
+         * generator
+         */
+        void fill(TileType[][] level, Region region);
+    }
+
+    /**
+     * A part of the level, from x0, y0 up to but not including x1, y1
+     */
+    static class Region {
+
+        final int x0;
+        final int y0;
+        final int x1;
+        final int y1;
+        final SplittableRandom random;
+
+        /**
+         * Position of the fountain the region placed, as x * height + y, or -1
+         */
+        int fountain = -1;
+
+        /**
+         * Position of the shop the region placed, as x * height + y, or -1
+         */
+        int shop = -1;
+
+        Region(int x0, int y0, int x1, int y1, SplittableRandom random) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+            this.random = random;
+        }
+    }
+
+    /**
+     * @return true if a level this big is generated in regions
+     */
+    static boolean worthSplitting(int width, int height) {
+        return (long) width * height >= MIN_TILES;
+    }
+
+    /**
+     * Seed of one of the random number generators drawn from a single seed.
+     * Seeds one GOLDEN apart would give generators whose numbers are the
+     * same, shifted by one, so the sum is scrambled.
+     * @param seed seed drawn from the game's random number generator
+     * @param stream number of the region, row or other part
+     * @return seed for the part
+     */
+    static long streamSeed(long seed, long stream) {
+        long z = seed + stream * GOLDEN;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Fills a level region by region and stitches the regions
+     * @param level the level to fill
+     * @param seed seed drawn from the game's random number generator
+     * @param pool pool the regions are filled in
+     * @param filler what fills a region
+     */
+    static void fill(TileType[][] level, long seed, ForkJoinPool pool, Filler filler) {
+        int width = level.length;
+        int height = level[0].length;
+        // regions in column order, as the serial loops go through the tiles
+        ArrayList<Region> regions = new ArrayList<Region>();
+        for (int x = 0; x < width; x += SIZE) {
+            for (int y = 0; y < height; y += SIZE) {
+                regions.add(new Region(x, y, Math.min(x + SIZE, width), Math.min(y + SIZE, height),
+                        new SplittableRandom(streamSeed(seed, regions.size()))));
+            }
+        }
+        pool.invoke(new Task(level, regions, 0, regions.size(), filler));
+        int fountain = -1;
+        int shop = -1;
+        for (Region region : regions) {
+            fountain = keepFirst(level, fountain, region.fountain);
+            shop = keepFirst(level, shop, region.shop);
+        }
+    }
+
+    /**
+     * Turns an item back into floor if an earlier region already has one
+     * @return position of the item that is kept
+     */
+    private static int keepFirst(TileType[][] level, int kept, int found) {
+        if (found < 0) {
+            return kept;
+        }
+        if (kept < 0) {
+            return found;
+        }
+        int height = level[0].length;
+        level[found / height][found % height] = TileType.FLOOR;
+        return kept;
+    }
+
+    /**
+     * Some regions, filled in one task or split in two
+     */
+    private static class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TileType[][] level;
+        private final ArrayList<Region> regions;
+        private final int from;
+        private final int to;
+        private final Filler filler;
+
+        Task(TileType[][] level, ArrayList<Region> regions, int from, int to, Filler filler) {
+            this.level = level;
+            this.regions = regions;
+            this.from = from;
+            this.to = to;
+            this.filler = filler;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Task(level, regions, from, middle, filler),
+                        new Task(level, regions, middle, to, filler));
+                return;
+            }
+            filler.fill(level, regions.get(from));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+
+/**
+ * The Replay class plays a journal written by InputJournal again on an engine
+ * without a window, as fast as the engine can go. It is used to reproduce bugs
+ * from real games and as a benchmark workload: it reports how many turns per
+ * second were replayed and a checksum of the final game, which is the same on
+ * every replay of the same journal. The engine lays out new floors with the
+ * generator schedule stored in the journal, whatever dungeon.generators says.
+ * The loot file loaded here must be the one the journal was recorded with;
+ * loot files reloaded during the game are read from the journal.
+ *
+ * Usage: Replay journal-file [repeats]
+ * @author sberk
+ */
+public class Replay {
+
+    /**
+     * The whole journal file
+     */
+    private final ByteBuffer journal;
+
+    /**
+     * Position of the length of the starting snapshot, right after the header
+     */
+    private final int firstSnapshot;
+
+    /**
+     * Position of the first command, right after the starting snapshot
+     */
+    private final int firstCommand;
+
+    /**
+     * The headless engine the journal is replayed on
+     */
+    final GameEngine engine;
+
+    /**
+     * The loot tables the journal starts with
+     */
+    private final LootTables loot;
+
+    private int commands;
+    private int turns;
+
+    /**
+     * Reads the header of a journal and creates an engine of the size and with
+     * the level generators the journal was recorded with
+     * @param journal the whole journal file
+     * @throws IOException if the buffer is not a journal of a known version,
+     * its generator schedule can't be used or it was recorded with another loot
+     * file
+     */
+    Replay(ByteBuffer journal) throws IOException {
+        this.journal = journal;
+        if (journal.remaining() < 4 + 2 + 2 || journal.getInt(0) != InputJournal.MAGIC) {
+            throw new IOException("Not a journal file");
+        }
+        short version = journal.getShort(4);
+        if (version != InputJournal.VERSION) {
+            throw new IOException("Unsupported journal version " + version);
+        }
+        ByteBuffer header = journal.duplicate();
+        header.position(6);
+        String schedule = InputJournal.getString(header);
+        LevelGenerator[] generators;
+        try {
+            generators = LevelGenerator.schedule(schedule);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Journal was recorded with generators \"" + schedule + "\": " + e.getMessage());
+        }
+        String lootId = InputJournal.getString(header);
+        loot = LootTables.current();
+        if (!lootId.equals(loot.id())) {
+            throw new IOException("Journal was recorded with loot file " + lootId + ", not " + loot.id()
+                    + "; set " + LootTables.PROPERTY + " to that file");
+        }
+        firstSnapshot = header.position();
+        if (header.remaining() < 4 + 6 + 8) {
+            throw new IOException("Journal is truncated");
+        }
+        int snapshotLength = journal.getInt(firstSnapshot);
+        firstCommand = firstSnapshot + 4 + snapshotLength;
+        // the snapshot starts with magic and version, followed by the size of the dungeon
+        int width = journal.getInt(firstSnapshot + 4 + 6);
+        int height = journal.getInt(firstSnapshot + 4 + 10);
+        engine = new GameEngine(null, width, height, new GameRandom(0));
+        engine.generators = generators;
+    }
+
+    /**
+     * Loads the starting snapshot and applies every command of the journal
+     * @param writer records every step of the replay, may be null
+     * @throws IOException if the journal is damaged or writing the recording
+     * fails
+     */
+    void run(RecordingWriter writer) throws IOException {
+        commands = 0;
+        turns = 0;
+        engine.lootTables = loot;
+        SaveGame.decode(engine, snapshot(firstSnapshot));
+        if (writer != null) {
+            writer.step(engine);
+        }
+        int position = firstCommand;
+        int end = journal.limit();
+        while (position < end) {
+            byte c = journal.get(position++);
+            if (c == InputJournal.LOAD) {
+                SaveGame.decode(engine, snapshot(position));
+                position += 4 + journal.getInt(position);
+            } else if (c == InputJournal.RELOAD) {
+                position = reload(position);
+            } else {
+                int before = engine.turns;
+                InputJournal.apply(engine, c);
+                turns += engine.turns - before;
+            }
+            commands++;
+            if (writer != null) {
+                writer.step(engine);
+            }
+        }
+    }
+
+    /**
+     * Returns the snapshot whose length is stored at a position of the journal
+     * @param position position of the length of the snapshot
+     * @return buffer holding just the snapshot
+     * @throws IOException if the snapshot goes past the end of the journal
+     */
+    private ByteBuffer snapshot(int position) throws IOException {
+        int length = journal.getInt(position);
+        if (position + 4 + length > journal.limit()) {
+            throw new IOException("Journal is truncated");
+        }
+        ByteBuffer b = journal.duplicate();
+        b.position(position + 4);
+        b.limit(position + 4 + length);
+        return b.slice();
+    }
+
+    /**
+     * Makes the engine use the loot file stored after a RELOAD command
+     * @param position position of the source of the file
+     * @return position of the next command
+     * @throws IOException if the file is truncated or not valid loot tables
+     */
+    private int reload(int position) throws IOException {
+        ByteBuffer b = journal.duplicate();
+        b.position(position);
+        String source = InputJournal.getString(b);
+        if (b.remaining() < 4 || b.getInt(b.position()) < 0 || b.getInt(b.position()) > b.remaining() - 4) {
+            throw new IOException("Journal is truncated");
+        }
+        byte[] text = new byte[b.getInt()];
+        b.get(text);
+        engine.lootTables = LootTables.parse(new ByteArrayInputStream(text), source);
+        return b.position();
+    }
+
+    /**
+     * Calculates a checksum of the current game, used to check that two
+     * replays ended in the same state
+     * @return CRC32 of the game encoded in the SaveGame format
+     */
+    long checksum() {
+        CRC32 crc = new CRC32();
+        for (ByteBuffer b : SaveGame.encode(engine)) {
+            crc.update(b);
+        }
+        return crc.getValue();
+    }
+
+    int getCommands() {
+        return commands;
+    }
+
+    int getTurns() {
+        return turns;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: Replay journal-file [repeats]");
+            return;
+        }
+        int repeats = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        Replay replay = new Replay(ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0]))));
+        for (int i = 1; i <= repeats; i++) {
+            long start = System.nanoTime();
+            replay.run(null);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("Run %d: %d commands, %d turns in %.2f ms, %.0f turns/s%n", i,
+                    replay.getCommands(), replay.getTurns(), nanos / 1e6, replay.getTurns() * 1e9 / nanos);
+        }
+        System.out.printf("Depth %d, score %d, monsters killed %d, player %s, checksum %08x%n",
+                replay.engine.depth, replay.engine.score, replay.engine.monstersKilled,
+                replay.engine.player != null ? "alive" : "dead", replay.checksum());
+    }
+}
@@ -0,0 +1,107 @@
+package uk.ac.bradford.dungeongame;
+
+import java.util.Arrays;
+
+/**
+ * The RollingStats class keeps the last few hundred duration samples of one
+ * measured part of the game and calculates percentiles over them. Samples are
+ * stored in a fixed size ring buffer, so recording never allocates.
+ * @author sberk
+ */
+class RollingStats {
+
+    /**
+     * Number of samples kept, older samples are overwritten
+     */
+    static final int CAPACITY = 256;
+
+    /**
+     * name is shown in the performance overlay
+     */
+    private final String name;
+
+    private final long[] samples = new long[CAPACITY];
+    private final long[] sorted = new long[CAPACITY];
+    private int next = 0;
+    private int count = 0;
+    private int sortedCount = 0;
+
+    /**
+     * Creates an empty set of samples
+     * @param name name of the measured part of the game
+     */
+    RollingStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the time passed since start, if start was taken while monitoring
+     * was enabled
+     * @param start value returned by PerformanceMonitor.start()
+     */
+    void stop(long start) {
+        if (start != 0) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a duration measured elsewhere, but only while monitoring is enabled
+     * @param nanos duration in nanoseconds
+     */
+    void offer(long nanos) {
+        if (PerformanceMonitor.isEnabled()) {
+            record(nanos);
+        }
+    }
+
+    /**
+     * Adds a sample to the ring buffer
+     * @param nanos duration in nanoseconds
+     */
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % CAPACITY;
+        if (count < CAPACITY) {
+            count++;
+        }
+    }
+
+    /**
+     * Sorts the current samples so percentile() can be called for them. Only
+     * used when the overlay is drawn.
+     * @return number of samples available
+     */
+    synchronized int snapshot() {
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        sortedCount = count;
+        return sortedCount;
+    }
+
+    /**
+     * Returns a percentile of the samples taken by the last snapshot() call
+     * @param q percentile between 0.0 and 1.0
+     * @return the sample at the percentile in nanoseconds, 0 if there are no samples
+     */
+    synchronized long percentile(double q) {
+        if (sortedCount == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(q * sortedCount) - 1;
+        return sorted[Math.max(0, Math.min(sortedCount - 1, i))];
+    }
+
+    /**
+     * Removes all samples
+     */
+    synchronized void clear() {
+        next = 0;
+        count = 0;
+        sortedCount = 0;
+    }
+
+    String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,343 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import uk.ac.bradford.dungeongame.GameEngine.TileType;
+
+/**
+ * The SaveGame class writes a whole game session to a binary file and reads it
+ * back. A save file starts with a fixed size header holding the game values,
+ * the player and the monsters, followed by one byte per tile. Files are written
+ * and read with NIO channels in a single call; big files are memory mapped when
+ * loaded so loading scales with very large maps.
+ *
+ * Layout (big-endian), version 5:
+ * magic "DG2D", version, width, height, depth, score, monsters killed, turns,
+ * player class, wall chance, monster damage, monster max health, immortality and its
+ * turns, health before immortality, one hit kill and its turns, last coin
+ * number, random generator state, seed of the run, player record, monster
+ * records, tiles by column, the floors the player has left as packed by
+ * FloorStore. A monster record starts with a byte whose lowest bit says the
+ * slot holds a monster and whose second bit says the monster is active, so
+ * monsters chasing the player keep chasing after a load. Version 1 files,
+ * which had no turn counter, version 2 files, which had no stored floors,
+ * version 3 files, which had no active monsters, and version 4 files, which
+ * had no seed, can still be loaded. Loading a file older than version 5
+ * keeps the engine's seed.
+ * @author sberk
+ */
+public class SaveGame {
+
+    /**
+     * First four bytes of every save file, "DG2D"
+     */
+    static final int MAGIC = 0x44473244;
+
+    /**
+     * Version of the layout, increased whenever the layout changes
+     */
+    static final short VERSION = 5;
+
+    /**
+     * File used by the quick save and quick load keys
+     */
+    public static final Path DEFAULT_FILE = Paths.get("dungeon.sav");
+
+    /**
+     * Size of the header, player and monster records in bytes
+     */
+    private static final int HEADER_BYTES = 4 + 2 + 4 * 2 + 4 * 5 + 8 * 3 + 1 + 4 + 8 + 1 + 4 + 4 + 8 + 8;
+    private static final int PLAYER_BYTES = 1 + 8 * 6 + 4 * 5;
+    private static final int MONSTER_BYTES = 1 + 8 * 4 + 4 * 2;
+
+    /**
+     * Files bigger than this are memory mapped instead of read into the heap
+     */
+    private static final long MAP_THRESHOLD = 1 << 20;
+
+    private static final TileType[] TILE_TYPES = TileType.values();
+
+    private SaveGame() {
+    }
+
+    /**
+     * Writes the current game of an engine to a file, replacing it if it exists
+     * @param engine the engine whose game is saved
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(GameEngine engine, Path file) throws IOException {
+        ByteBuffer[] buffers = encode(engine);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffers[buffers.length - 1].hasRemaining()) {
+                channel.write(buffers);
+            }
+        }
+    }
+
+    /**
+     * Reads a game from a file into an engine, replacing its current game
+     * @param engine the engine to load the game into
+     * @param file the file to read
+     * @throws IOException if the file cannot be read, is not a save file, has an
+     * unknown version or was saved for a dungeon of a different size
+     */
+    public static void load(GameEngine engine, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer in;
+            if (size > MAP_THRESHOLD) {
+                in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                in = ByteBuffer.allocate((int) size);
+                while (in.hasRemaining() && channel.read(in) >= 0) {
+                }
+                in.flip();
+            }
+            decode(engine, in);
+        }
+    }
+
+    /**
+     * Encodes the state of an engine. The first buffer holds the header and
+     * records, the second the tiles and the rest the stored floors, which are
+     * shared with the engine's FloorStore instead of copied.
+     * @param engine the engine to encode
+     * @return buffers ready to be written
+     */
+    static ByteBuffer[] encode(GameEngine engine) {
+        return encode(engine, true);
+    }
+
+    /**
+     * Encodes the state of an engine, with or without the floors the player
+     * has left. Without them the encoding is a valid save with no stored
+     * floors, which is all a copy of the game that is only watched needs, and
+     * its size does not grow with depth.
+     * @param engine the engine to encode
+     * @param storedFloors false to leave out the stored floors
+     * @return buffers ready to be written
+     */
+    static ByteBuffer[] encode(GameEngine engine, boolean storedFloors) {
+        Entity[] monsters = engine.monsters == null ? new Entity[0] : engine.monsters;
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + PLAYER_BYTES + 4 + monsters.length * MONSTER_BYTES);
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putInt(engine.dungeonWidth);
+        out.putInt(engine.dungeonHeight);
+        out.putInt(engine.depth);
+        out.putInt(engine.score);
+        out.putInt(engine.monstersKilled);
+        out.putInt(engine.turns);
+        out.putInt(engine.playerClass);
+        out.putDouble(engine.wallChance);
+        out.putDouble(engine.monstersDmg);
+        out.putDouble(engine.monstersMaxHealth);
+        out.put((byte) (engine.immortality ? 1 : 0));
+        out.putInt(engine.immortalityTurns);
+        out.putDouble(engine.lastHP);
+        out.put((byte) (engine.oneHitKill ? 1 : 0));
+        out.putInt(engine.oneHitKillTurns);
+        out.putInt(engine.lastCoinNumber);
+        out.putLong(engine.rng.getState());
+        out.putLong(engine.seed);
+
+        PlayerUtilities p = engine.player;
+        out.put((byte) (p != null ? 1 : 0));
+        out.putDouble(p != null ? p.getMaxHealth() : 0);
+        out.putDouble(p != null ? p.getHealth() : 0);
+        out.putDouble(p != null ? p.getDmg() : 0);
+        out.putDouble(p != null ? p.getDodgeChance() : 0);
+        out.putDouble(p != null ? p.getPlayerCritDmgChance() : 0);
+        out.putDouble(p != null ? p.getPlayerCritDmg() : 0);
+        out.putInt(p != null ? p.getArmour() : 0);
+        out.putInt(p != null ? p.getCoin() : 0);
+        out.putInt(p != null ? p.getPotionsNumber() : 0);
+        out.putInt(p != null ? p.getX() : 0);
+        out.putInt(p != null ? p.getY() : 0);
+
+        out.putInt(monsters.length);
+        for (int i = 0; i < monsters.length; i++) {
+            Entity m = monsters[i];
+            out.put((byte) (m == null ? 0 : engine.activation.isActive(engine, i) ? 3 : 1));
+            out.putDouble(m != null ? m.getMaxHealth() : 0);
+            out.putDouble(m != null ? m.getHealth() : 0);
+            out.putDouble(m != null ? m.getDmg() : 0);
+            out.putDouble(m != null ? m.getDodgeChance() : 0);
+            out.putInt(m != null ? m.getX() : 0);
+            out.putInt(m != null ? m.getY() : 0);
+        }
+        out.flip();
+
+        int width = engine.dungeonWidth;
+        int height = engine.dungeonHeight;
+        byte[] cells = new byte[width * height];
+        for (int i = 0; i < width; i++) {
+            TileType[] column = engine.tiles[i];
+            int offset = i * height;
+            for (int j = 0; j < height; j++) {
+                cells[offset + j] = (byte) column[j].ordinal();
+            }
+        }
+        ByteBuffer[] floors = storedFloors ? engine.floors.buffers() : new FloorStore().buffers();
+        ByteBuffer[] buffers = new ByteBuffer[2 + floors.length];
+        buffers[0] = out;
+        buffers[1] = ByteBuffer.wrap(cells);
+        System.arraycopy(floors, 0, buffers, 2, floors.length);
+        return buffers;
+    }
+
+    /**
+     * Decodes a save file into an engine. The whole buffer is read and checked
+     * before anything in the engine changes, so a damaged file leaves the
+     * current game as it was.
+     * @param engine the engine to load the game into
+     * @param in buffer holding the whole file
+     * @throws IOException if the buffer does not hold a valid save for this engine
+     */
+    static void decode(GameEngine engine, ByteBuffer in) throws IOException {
+        try {
+            decodeChecked(engine, in);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Save file is truncated");
+        }
+    }
+
+    private static void decodeChecked(GameEngine engine, ByteBuffer in) throws IOException {
+        if (in.remaining() < HEADER_BYTES || in.getInt() != MAGIC) {
+            throw new IOException("Not a save file");
+        }
+        short version = in.getShort();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported save file version " + version);
+        }
+        int width = in.getInt();
+        int height = in.getInt();
+        if (width != engine.dungeonWidth || height != engine.dungeonHeight) {
+            throw new IOException("Save file is for a " + width + "x" + height + " dungeon");
+        }
+        int depth = in.getInt();
+        int score = in.getInt();
+        int monstersKilled = in.getInt();
+        int turns = version >= 2 ? in.getInt() : 0;
+        int playerClass = in.getInt();
+        double wallChance = in.getDouble();
+        double monstersDmg = in.getDouble();
+        double monstersMaxHealth = in.getDouble();
+        boolean immortality = in.get() != 0;
+        int immortalityTurns = in.getInt();
+        double lastHP = in.getDouble();
+        boolean oneHitKill = in.get() != 0;
+        int oneHitKillTurns = in.getInt();
+        int lastCoinNumber = in.getInt();
+        long rngState = in.getLong();
+        long seed = version >= 5 ? in.getLong() : engine.seed;
+
+        boolean hasPlayer = in.get() != 0;
+        double maxHealth = in.getDouble();
+        double health = in.getDouble();
+        double dmg = in.getDouble();
+        double dodge = in.getDouble();
+        double critChance = in.getDouble();
+        double crit = in.getDouble();
+        int armour = in.getInt();
+        int coin = in.getInt();
+        int potions = in.getInt();
+        int x = in.getInt();
+        int y = in.getInt();
+        PlayerUtilities player = null;
+        if (hasPlayer) {
+            checkPosition("Player", x, y, width, height);
+            player = new PlayerUtilities(maxHealth, armour, dmg, dodge, critChance, crit, x, y, Entity.EntityType.PLAYER);
+            player.setHealth(health);
+            player.setCoin(coin);
+            player.setPotionsNumber(potions);
+        }
+
+        int count = in.getInt();
+        if (count < 0 || count > in.remaining() / MONSTER_BYTES) {
+            throw new IOException("Save file has a bad monster count " + count);
+        }
+        Entity[] monsters = new Entity[count];
+        boolean[] active = new boolean[count];
+        for (int i = 0; i < monsters.length; i++) {
+            byte flags = in.get();
+            boolean present = (flags & 1) != 0;
+            active[i] = present && version >= 4 && (flags & 2) != 0;
+            maxHealth = in.getDouble();
+            health = in.getDouble();
+            dmg = in.getDouble();
+            dodge = in.getDouble();
+            x = in.getInt();
+            y = in.getInt();
+            if (present) {
+                checkPosition("Monster " + i, x, y, width, height);
+                monsters[i] = new Entity(maxHealth, dmg, dodge, x, y, Entity.EntityType.MONSTER);
+                monsters[i].setHealth(health);
+            }
+        }
+
+        if (in.remaining() < width * height) {
+            throw new IOException("Save file is truncated");
+        }
+        TileType[][] tiles = new TileType[width][height];
+        byte[] column = new byte[height];
+        for (int i = 0; i < width; i++) {
+            in.get(column);
+            for (int j = 0; j < height; j++) {
+                if (column[j] < 0 || column[j] >= TILE_TYPES.length) {
+                    throw new IOException("Save file has an unknown tile " + column[j] + " at " + i + "," + j);
+                }
+                tiles[i][j] = TILE_TYPES[column[j]];
+            }
+        }
+
+        FloorStore floors = new FloorStore();
+        if (version >= 3) {
+            floors.read(in);
+        }
+
+        // nothing below can fail, the engine only changes once the whole file is read
+        engine.depth = depth;
+        engine.score = score;
+        engine.monstersKilled = monstersKilled;
+        engine.turns = turns;
+        engine.playerClass = playerClass;
+        engine.playerClassName = GameEngine.className(playerClass);
+        engine.wallChance = wallChance;
+        engine.monstersDmg = monstersDmg;
+        engine.monstersMaxHealth = monstersMaxHealth;
+        engine.immortality = immortality;
+        engine.immortalityTurns = immortalityTurns;
+        engine.lastHP = lastHP;
+        engine.oneHitKill = oneHitKill;
+        engine.oneHitKillTurns = oneHitKillTurns;
+        engine.lastCoinNumber = lastCoinNumber;
+        engine.rng.setState(rngState);
+        engine.seed = seed;
+        engine.floors.replace(floors);
+        engine.tiles = tiles;
+        engine.monsters = monsters;
+        engine.player = player;
+        engine.activation.restore(engine, active);
+        // positions taken by the player and monsters are not free for spawning,
+        // as in a level that was just generated
+        engine.spawns = engine.freeSpawns();
+        engine.updateDisplay(player);
+    }
+
+    /**
+     * @throws IOException if a position is outside the dungeon
+     */
+    private static void checkPosition(String name, int x, int y, int width, int height) throws IOException {
+        if (x < 0 || x >= width || y < 0 || y >= height) {
+            throw new IOException(name + " of the save file is outside the dungeon at " + x + "," + y);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package uk.ac.bradford.dungeongame;
+
+/**
+ * The ScoreRecord class holds the result of one finished run, as stored in a
+ * ScoreStore.
+ * @author sberk
+ */
+public class ScoreRecord {
+
+    private final int playerClass;
+    private final long seed;
+    private final int score;
+    private final int depth;
+    private final int kills;
+    private final int turns;
+
+    /**
+     * Creates a record of a finished run
+     * @param playerClass class of the player, 1 - Knight, 2 - Warrior, 3 - Thief
+     * @param seed state of the random number generator the run started with
+     * @param score score reached
+     * @param depth depth level reached
+     * @param kills number of monsters killed
+     * @param turns number of turns played
+     */
+    public ScoreRecord(int playerClass, long seed, int score, int depth, int kills, int turns) {
+        this.playerClass = playerClass;
+        this.seed = seed;
+        this.score = score;
+        this.depth = depth;
+        this.kills = kills;
+        this.turns = turns;
+    }
+
+    public int getPlayerClass() {
+        return playerClass;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getKills() {
+        return kills;
+    }
+
+    public int getTurns() {
+        return turns;
+    }
+
+    @Override
+    public String toString() {
+        return GameEngine.className(playerClass) + " score " + score + ", depth " + depth + ", kills "
+                + kills + ", turns " + turns + ", seed " + Long.toHexString(seed);
+    }
+}
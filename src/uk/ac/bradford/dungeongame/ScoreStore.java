@@ -0,0 +1,311 @@
+package uk.ac.bradford.dungeongame;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The ScoreStore class keeps the results of all finished runs. Runs are
+ * appended to a data file as fixed size records and never changed. Next to it
+ * a memory mapped index file keeps, for all classes together and for every
+ * class, the best INDEX_CAPACITY runs sorted by score, so leaderboards are read
+ * straight from the index however many runs there are. Adding a run only
+ * touches the end of the data file and, if the run is good enough, the index.
+ * The index is brought up to date from the data file when it is opened, so it
+ * can be deleted at any time. Asking for more runs than the index holds scans
+ * the data file instead. Only one process may add runs at a time.
+ *
+ * Data file layout (big-endian): magic "DGS1", version, record size, then
+ * records of seed, score, depth, kills, turns, class and three unused bytes.
+ * Index file layout: magic "DGI1", version, unused, capacity, number of
+ * records indexed, then for every leaderboard a count and capacity pairs of
+ * score and record number, best first, earlier runs first on equal scores.
+ * @author sberk
+ */
+public class ScoreStore {
+
+    /**
+     * Number of runs kept in every leaderboard of the index
+     */
+    public static final int INDEX_CAPACITY = 1024;
+
+    /**
+     * Number of leaderboards: all classes together, then Knight, Warrior, Thief
+     */
+    static final int BOARDS = 4;
+
+    static final int DATA_MAGIC = 0x44475331;
+    static final int INDEX_MAGIC = 0x44474931;
+    static final short VERSION = 1;
+
+    static final int RECORD_BYTES = 8 + 4 * 4 + 1 + 3;
+    private static final int DATA_HEADER = 4 + 2 + 2;
+    private static final int INDEX_HEADER = 4 + 2 + 2 + 4 + 8;
+    private static final int BOARD_BYTES = 4 + INDEX_CAPACITY * 8;
+    private static final int INDEX_BYTES = INDEX_HEADER + BOARDS * BOARD_BYTES;
+
+    private final FileChannel data;
+    private final FileChannel indexChannel;
+    private final MappedByteBuffer index;
+
+    /**
+     * Number of complete records in the data file
+     */
+    private long records;
+
+    /**
+     * Buffer reused for writing and reading single records
+     */
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+
+    /**
+     * Opens a score store, creating its files if they do not exist. The index
+     * file is the data file name followed by .idx.
+     * @param file the data file
+     * @throws IOException if the files cannot be opened or the data file is not
+     * a score store
+     */
+    public ScoreStore(Path file) throws IOException {
+        data = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (data.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER);
+            header.putInt(DATA_MAGIC).putShort(VERSION).putShort((short) RECORD_BYTES).flip();
+            writeFully(header, 0);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(DATA_HEADER);
+            readFully(header, 0);
+            if (header.getInt(0) != DATA_MAGIC || header.getShort(4) != VERSION
+                    || header.getShort(6) != RECORD_BYTES) {
+                data.close();
+                throw new IOException("Not a score store or unsupported version");
+            }
+        }
+        // a record cut short by a crash is ignored and overwritten by the next run
+        records = (data.size() - DATA_HEADER) / RECORD_BYTES;
+
+        Path indexFile = file.resolveSibling(file.getFileName() + ".idx");
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_BYTES);
+        if (index.getInt(0) != INDEX_MAGIC || index.getShort(4) != VERSION
+                || index.getInt(8) != INDEX_CAPACITY || index.getLong(12) > records) {
+            clearIndex();
+        }
+        catchUp();
+    }
+
+    /**
+     * Appends a finished run and adds it to the leaderboards it gets into
+     * @param run the run to add
+     * @throws IOException if the data file cannot be written
+     */
+    public synchronized void add(ScoreRecord run) throws IOException {
+        record.clear();
+        record.putLong(run.getSeed());
+        record.putInt(run.getScore());
+        record.putInt(run.getDepth());
+        record.putInt(run.getKills());
+        record.putInt(run.getTurns());
+        record.put((byte) run.getPlayerClass());
+        record.put((byte) 0).put((byte) 0).put((byte) 0);
+        record.flip();
+        writeFully(record, DATA_HEADER + records * RECORD_BYTES);
+        index(records, run.getPlayerClass(), run.getScore());
+        records++;
+        index.putLong(12, records);
+    }
+
+    /**
+     * Returns the best runs, best first
+     * @param playerClass class to return runs of, 1 - Knight, 2 - Warrior,
+     * 3 - Thief, 0 for all classes
+     * @param k maximum number of runs to return
+     * @return up to k runs, sorted by score, earlier runs first on equal scores
+     * @throws IOException if the data file cannot be read
+     */
+    public synchronized List<ScoreRecord> top(int playerClass, int k) throws IOException {
+        int board = board(playerClass);
+        int count = index.getInt(boardOffset(board));
+        List<ScoreRecord> result = new ArrayList<ScoreRecord>(Math.min(k, count));
+        if (k <= count || count < INDEX_CAPACITY) {
+            // the index holds the answer: either enough runs, or every run there is
+            int entry = boardOffset(board) + 4;
+            for (int i = 0; i < Math.min(k, count); i++) {
+                result.add(read(index.getInt(entry + i * 8 + 4)));
+            }
+            return result;
+        }
+        return scan(playerClass, k);
+    }
+
+    /**
+     * @return number of runs in the store
+     */
+    public synchronized long size() {
+        return records;
+    }
+
+    /**
+     * Writes everything to disk and closes the files
+     * @throws IOException if closing fails
+     */
+    public synchronized void close() throws IOException {
+        index.force();
+        data.force(false);
+        data.close();
+        indexChannel.close();
+    }
+
+    /**
+     * Finds the best runs by reading every record of the data file, keeping
+     * the k best in a heap
+     */
+    private List<ScoreRecord> scan(int playerClass, int k) throws IOException {
+        // worst run at the head: lowest score, latest run on equal scores
+        PriorityQueue<long[]> best = new PriorityQueue<long[]>(k + 1, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]);
+            }
+        });
+        MappedByteBuffer all = data.map(FileChannel.MapMode.READ_ONLY, 0, DATA_HEADER + records * RECORD_BYTES);
+        for (long i = 0; i < records; i++) {
+            int position = (int) (DATA_HEADER + i * RECORD_BYTES);
+            if (playerClass != 0 && all.get(position + 24) != playerClass) {
+                continue;
+            }
+            int score = all.getInt(position + 8);
+            if (best.size() < k) {
+                best.add(new long[]{score, i});
+            } else if (score > best.peek()[0]) {
+                best.poll();
+                best.add(new long[]{score, i});
+            }
+        }
+        ScoreRecord[] sorted = new ScoreRecord[best.size()];
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            sorted[i] = read(best.poll()[1]);
+        }
+        List<ScoreRecord> result = new ArrayList<ScoreRecord>(sorted.length);
+        for (ScoreRecord r : sorted) {
+            result.add(r);
+        }
+        return result;
+    }
+
+    /**
+     * Adds a record to the overall leaderboard and to the one of its class
+     */
+    private void index(long recordNumber, int playerClass, int score) {
+        insert(0, recordNumber, score);
+        if (playerClass >= 1 && playerClass < BOARDS) {
+            insert(playerClass, recordNumber, score);
+        }
+    }
+
+    /**
+     * Inserts a record into a leaderboard after all runs with the same or a
+     * better score, dropping the last run if the leaderboard is full
+     */
+    private void insert(int board, long recordNumber, int score) {
+        int offset = boardOffset(board);
+        int count = index.getInt(offset);
+        int entries = offset + 4;
+        int low = 0;
+        int high = count;
+        while (low < high) { // first entry with a lower score
+            int middle = (low + high) >>> 1;
+            if (index.getInt(entries + middle * 8) >= score) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low == INDEX_CAPACITY) {
+            return;
+        }
+        int last = Math.min(count, INDEX_CAPACITY - 1);
+        for (int i = last; i > low; i--) {
+            index.putLong(entries + i * 8, index.getLong(entries + (i - 1) * 8));
+        }
+        index.putInt(entries + low * 8, score);
+        index.putInt(entries + low * 8 + 4, (int) recordNumber);
+        if (count < INDEX_CAPACITY) {
+            index.putInt(offset, count + 1);
+        }
+    }
+
+    /**
+     * Empties the index so it is rebuilt from the data file
+     */
+    private void clearIndex() {
+        index.putInt(0, INDEX_MAGIC);
+        index.putShort(4, VERSION);
+        index.putShort(6, (short) 0);
+        index.putInt(8, INDEX_CAPACITY);
+        index.putLong(12, 0);
+        for (int board = 0; board < BOARDS; board++) {
+            index.putInt(boardOffset(board), 0);
+        }
+    }
+
+    /**
+     * Indexes the records added since the index was last written
+     */
+    private void catchUp() throws IOException {
+        long indexed = index.getLong(12);
+        if (indexed == records) {
+            return;
+        }
+        MappedByteBuffer all = data.map(FileChannel.MapMode.READ_ONLY, 0, DATA_HEADER + records * RECORD_BYTES);
+        for (long i = indexed; i < records; i++) {
+            int position = (int) (DATA_HEADER + i * RECORD_BYTES);
+            index(i, all.get(position + 24), all.getInt(position + 8));
+        }
+        index.putLong(12, records);
+    }
+
+    private ScoreRecord read(long recordNumber) throws IOException {
+        record.clear();
+        readFully(record, DATA_HEADER + recordNumber * RECORD_BYTES);
+        record.flip();
+        long seed = record.getLong();
+        int score = record.getInt();
+        int depth = record.getInt();
+        int kills = record.getInt();
+        int turns = record.getInt();
+        int playerClass = record.get();
+        return new ScoreRecord(playerClass, seed, score, depth, kills, turns);
+    }
+
+    private static int board(int playerClass) {
+        return playerClass >= 1 && playerClass < BOARDS ? playerClass : 0;
+    }
+
+    private static int boardOffset(int board) {
+        return INDEX_HEADER + board * BOARD_BYTES;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += data.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = data.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Score store is truncated");
+            }
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package uk.ac.bradford.dungeongame;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * The StartupTimer class records how long the different parts of starting the
+ * game take: starting the JVM, loading assets, generating the first level and
+ * drawing the first frame. The breakdown is printed once to the console when
+ * all parts have finished and can also be read with the getter methods.
+ * @author sberk
+ */
+public class StartupTimer {
+
+    /**
+     * Time from JVM start until the main method was entered, in milliseconds
+     */
+    private static long jvmMillis = -1;
+
+    /**
+     * nanoTime value taken when the main method was entered
+     */
+    private static long mainStart;
+
+    private static long assetsNanos = -1;
+    private static long firstLevelNanos = -1;
+    private static long firstFrameNanos = -1;
+
+    /**
+     * reported stores an information if the breakdown was already printed
+     */
+    private static boolean reported = false;
+
+    private StartupTimer() {
+    }
+
+    /**
+     * Marks the start of the main method. Everything else is measured relative
+     * to this point.
+     */
+    public static synchronized void mainStarted() {
+        mainStart = System.nanoTime();
+        jvmMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+
+    /**
+     * Records how long loading of all assets took.
+     * @param nanos duration of asset loading in nanoseconds
+     */
+    static synchronized void assetsLoaded(long nanos) {
+        assetsNanos = nanos;
+        reportIfDone();
+    }
+
+    /**
+     * Records how long generating the first level took.
+     * @param nanos duration of level generation in nanoseconds
+     */
+    static synchronized void firstLevelGenerated(long nanos) {
+        firstLevelNanos = nanos;
+        reportIfDone();
+    }
+
+    /**
+     * Records the first frame drawn with all assets. Only the first call counts.
+     */
+    static synchronized void frameDrawn() {
+        if (firstFrameNanos < 0 && assetsNanos >= 0 && mainStart != 0) {
+            firstFrameNanos = System.nanoTime() - mainStart;
+            reportIfDone();
+        }
+    }
+
+    /**
+     * Returns the startup breakdown as a single line of text
+     * @return text with the duration of every startup phase in milliseconds
+     */
+    public static synchronized String report() {
+        return "Startup: JVM " + jvmMillis + " ms, assets " + millis(assetsNanos)
+                + " ms, first level " + millis(firstLevelNanos)
+                + " ms, first frame " + millis(firstFrameNanos) + " ms after main";
+    }
+
+    public static synchronized long getJvmMillis() {
+        return jvmMillis;
+    }
+
+    public static synchronized double getAssetsMillis() {
+        return millis(assetsNanos);
+    }
+
+    public static synchronized double getFirstLevelMillis() {
+        return millis(firstLevelNanos);
+    }
+
+    public static synchronized double getFirstFrameMillis() {
+        return millis(firstFrameNanos);
+    }
+
+    private static double millis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 10000 / 100.0;
+    }
+
+    private static void reportIfDone() {
+        if (!reported && jvmMillis >= 0 && assetsNanos >= 0 && firstLevelNanos >= 0 && firstFrameNanos >= 0) {
+            reported = true;
+            System.out.println(report());
+        }
+    }
+}
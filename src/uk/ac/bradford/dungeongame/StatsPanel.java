@@ -0,0 +1,165 @@
+package uk.ac.bradford.dungeongame;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The StatsPanel class draws the sidebar with the background and the player's
+ * statistics. The sidebar is rendered once to an image and that image is only
+ * rebuilt when one of the displayed values changes, so on most frames drawing
+ * the sidebar is a single image copy.
+ * @author sberk
+ */
+class StatsPanel {
+
+    /**
+     * X position of the sidebar on the canvas
+     */
+    static final int X = 800;
+
+    /**
+     * Size of the sidebar, it matches the size of the background image
+     */
+    static final int WIDTH = 220;
+    static final int HEIGHT = 615;
+
+    /**
+     * Font used for all text in the sidebar
+     */
+    static final Font STATS_FONT = new Font("TimesRoman", Font.BOLD, 13);
+
+    /**
+     * The sidebar rendered with the last displayed values
+     */
+    private final BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+
+    /**
+     * Displayed values of the last rebuild and of the current frame. The two
+     * arrays are swapped instead of allocated so checking for changes is free
+     * of garbage.
+     */
+    private double[] shown = new double[17];
+    private double[] current = new double[17];
+
+    /**
+     * The background image used for the last rebuild
+     */
+    private BufferedImage shownBackground;
+
+    /**
+     * rebuilds counts how many times the sidebar image had to be redrawn
+     */
+    private long rebuilds;
+
+    /**
+     * valid stores an information if image holds anything yet
+     */
+    private boolean valid = false;
+
+    /**
+     * Draws the sidebar, redrawing the cached image first if any displayed value
+     * changed since the last call.
+     * @param g the graphics object to draw the sidebar with
+     * @param background the background image of the sidebar, can be null while
+     * assets are loading
+     * @param engine the engine whose game values are shown
+     * @param p the current player, null if there is no player to show statistics for
+     */
+    void draw(Graphics g, BufferedImage background, GameEngine engine, PlayerUtilities p) {
+        fillValues(engine, p);
+        if (!valid || background != shownBackground || !Arrays.equals(current, shown)) {
+            rebuild(background, engine, p);
+            double[] swap = shown;
+            shown = current;
+            current = swap;
+            shownBackground = background;
+            valid = true;
+        }
+        g.drawImage(image, X, 0, null);
+    }
+
+    /**
+     * Returns how many times the sidebar image was redrawn
+     * @return number of rebuilds
+     */
+    long getRebuilds() {
+        return rebuilds;
+    }
+
+    /**
+     * Copies every value shown in the sidebar to the current array
+     * @param engine the engine whose game values are shown
+     * @param p the current player or null
+     */
+    private void fillValues(GameEngine engine, PlayerUtilities p) {
+        if (p == null) {
+            Arrays.fill(current, 0);
+            current[0] = -1;
+            return;
+        }
+        current[0] = engine.playerClass;
+        current[1] = p.getHealth();
+        current[2] = p.getMaxHealth();
+        current[3] = p.getArmour();
+        current[4] = p.getMaxArmour();
+        current[5] = p.getDmg();
+        current[6] = p.getDodgeChance();
+        current[7] = p.getPlayerCritDmgChance();
+        current[8] = p.getPlayerCritDmg();
+        current[9] = p.getCoin();
+        current[10] = p.getPotionsNumber();
+        current[11] = engine.score;
+        current[12] = engine.depth;
+        current[13] = engine.monstersKilled;
+        current[14] = engine.wallChance;
+        current[15] = engine.monstersMaxHealth;
+        current[16] = engine.monstersDmg;
+    }
+
+    /**
+     * Redraws the sidebar image with the background and the player's statistics
+     * @param background the background image or null
+     * @param engine the engine whose game values are shown
+     * @param p the current player or null
+     */
+    private void rebuild(BufferedImage background, GameEngine engine, PlayerUtilities p) {
+        rebuilds++;
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setBackground(new Color(0, 0, 0, 0));
+            g.clearRect(0, 0, WIDTH, HEIGHT);
+            if (background != null) {
+                g.drawImage(background, 0, 0, null);
+            }
+            if (p != null) {
+                int x = 6;
+                g.setColor(Color.white);
+                g.setFont(STATS_FONT);
+                g.drawString("Player status", x, 15);
+                g.drawString("Class: " + engine.playerClassName, x, 30);
+                g.drawString("Health: " + p.getHealth() + "/" + p.getMaxHealth(), x, 45);
+                g.drawString("Armour: " + p.getArmour() + "/" + p.getMaxArmour(), x, 60);
+                g.drawString("Attack damage: " + p.getDmg(), x, 75);
+                g.drawString("Attributes", x, 105);
+                g.drawString("Dodge chance: " + (int) (p.getDodgeChance() * 100) + "%", x, 120);
+                g.drawString("Critical dmg chance: " + (int) (p.getPlayerCritDmgChance() * 100) + "%", x, 135);
+                g.drawString("Critical damage: " + p.getPlayerCritDmg(), x, 150);
+                g.drawString("Inventory", x, 180);
+                g.drawString("Coins: " + p.getCoin(), x, 195);
+                g.drawString("Health potions: " + p.getPotionsNumber() + " Use H", x, 210);
+                g.drawString("Score: " + Integer.toString(engine.score), x, 240);
+                g.drawString("Level: " + engine.depth, x, 255);
+                g.drawString("Monsters killed: " + engine.monstersKilled, x, 270);
+                g.drawString("Wall chance: " + (engine.wallChance * 100) + "%", x, 285);
+                g.drawString("Monster's maxhealth: " + engine.monstersMaxHealth, x, 300);
+                g.drawString("Monster's damage: " + engine.monstersDmg, x, 315);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+}